@@ -24,6 +24,7 @@
 
 package com.apex;
 
+import org.telegram.telegrambots.bots.DefaultBotOptions;
 import org.telegram.telegrambots.bots.TelegramLongPollingBot;
 import org.telegram.telegrambots.meta.api.objects.Update;
 
@@ -37,6 +38,12 @@ public abstract class ATelegramBot extends TelegramLongPollingBot {
         this.botname = botname;
     }
 
+    public ATelegramBot(final String token, final String botname, final DefaultBotOptions options){
+        super(options);
+        this.token = token;
+        this.botname = botname;
+    }
+
     @Override
     public abstract void onUpdateReceived(Update update);
 
@@ -1,9 +1,16 @@
 package com.apex;
 
+import com.apex.bot.ActionOutbox;
+import com.apex.bot.ActionScheduler;
 import com.apex.bot.TelegramSessionManager;
+import com.apex.bot.UpdateDispatcher;
+import com.apex.bot.WebhookServer;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.nio.file.Paths;
+
 @Configuration
 public class BotConfiguration {
 
@@ -12,4 +19,30 @@ public class BotConfiguration {
         return new TelegramSessionManager();
     }
 
+    @Bean
+    public UpdateDispatcher getUpdateDispatcher(@Value("${bot.dispatch.threads}") int threads,
+                                                @Value("${bot.dispatch.queue}") int queueDepth){
+        return new UpdateDispatcher(threads, queueDepth);
+    }
+
+    @Bean
+    public ActionScheduler getActionScheduler(@Value("${bot.outbound.global-rate}") double globalPerSecond,
+                                              @Value("${bot.outbound.chat-rate}") double chatPerMinute,
+                                              @Value("${bot.outbound.retries}") int maxRetries,
+                                              @Value("${bot.outbound.outbox}") String outboxFile,
+                                              @Value("${cluster.nodes}") int nodes){
+        final ActionOutbox outbox = outboxFile.isEmpty() ? null : new ActionOutbox(Paths.get(outboxFile));
+        // the workers of a cluster send with the same bot and share its global limit
+        return new ActionScheduler(globalPerSecond / Math.max(1, nodes), chatPerMinute, maxRetries, outbox);
+    }
+
+    @Bean
+    public WebhookServer getWebhookServer(@Value("${bot.webhook.bind}") String bind,
+                                          @Value("${bot.webhook.port}") int port,
+                                          @Value("${bot.webhook.path}") String path,
+                                          @Value("${bot.webhook.threads}") int threads,
+                                          @Value("${bot.webhook.secret}") String secret){
+        return new WebhookServer(bind, port, path, threads, secret);
+    }
+
 }
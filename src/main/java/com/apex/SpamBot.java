@@ -24,14 +24,29 @@
 
 package com.apex;
 
-import com.apex.bot.TelegramMessageHandler;
+import com.apex.bot.ActionScheduler;
+import com.apex.bot.BotTenant;
+import com.apex.bot.ReviewDigest;
+import com.apex.bot.BacklogDrainer;
 import com.apex.bot.TelegramSessionManager;
+import com.apex.bot.TenantRegistry;
+import com.apex.bot.UpdateDispatcher;
+import com.apex.bot.UpdateWatermark;
+import com.apex.bot.WebhookServer;
+import com.apex.cache.StateSnapshot;
+import com.apex.cluster.ClusterReplicator;
+import com.apex.media.DocumentFingerprinter;
+import com.apex.repository.FeedbackSweeper;
+import com.apex.rules.RuleEngine;
+import com.apex.store.IModerationStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.ContextClosedEvent;
 import org.springframework.context.event.EventListener;
 
 @SpringBootApplication
@@ -41,7 +56,49 @@ public class SpamBot {
     private TelegramSessionManager telegramSessionManager;
 
     @Autowired
-    private TelegramMessageHandler telegramMessageHandler;
+    private TenantRegistry tenantRegistry;
+
+    @Autowired
+    private UpdateDispatcher updateDispatcher;
+
+    @Autowired
+    private ActionScheduler actionScheduler;
+
+    @Autowired
+    private ReviewDigest reviewDigest;
+
+    @Autowired
+    private WebhookServer webhookServer;
+
+    @Autowired
+    private UpdateWatermark updateWatermark;
+
+    @Autowired
+    private BacklogDrainer backlogDrainer;
+
+    @Autowired
+    private IModerationStore moderationStore;
+
+    @Autowired
+    private FeedbackSweeper feedbackSweeper;
+
+    @Autowired
+    private StateSnapshot stateSnapshot;
+
+    @Autowired
+    private DocumentFingerprinter documentFingerprinter;
+
+    @Autowired
+    private RuleEngine ruleEngine;
+
+    @Autowired
+    private ClusterReplicator clusterReplicator;
+
+    @Value("${bot.mode}")
+    private String mode;
+
+    @Value("${bot.webhook.url}")
+    private String webhookUrl;
 
     private final Logger log = LoggerFactory.getLogger(this.getClass());
 
@@ -51,9 +108,47 @@ public class SpamBot {
 
     @EventListener(ApplicationReadyEvent.class)
     public void runTelegramBot(){
-        telegramSessionManager.addPollingBot(telegramMessageHandler);
+        moderationStore.start();
+        stateSnapshot.restore();
+        stateSnapshot.start();
+        feedbackSweeper.start();
+        documentFingerprinter.start();
+        ruleEngine.start();
+        actionScheduler.start();
+        reviewDigest.start();
+        clusterReplicator.start();
+        updateWatermark.start();
+        updateDispatcher.start();
+        if ("webhook".equalsIgnoreCase(mode)) {
+            for (BotTenant tenant : tenantRegistry.getTenants()) {
+                final String suffix = tenant.isPrimary() ? "" : "/" + tenant.getKey();
+                telegramSessionManager.addWebhookBot(tenantRegistry.getBot(tenant), webhookServer, suffix,
+                        webhookUrl == null || webhookUrl.isEmpty() ? webhookUrl : webhookUrl + suffix);
+            }
+        } else {
+            backlogDrainer.drain();
+            for (BotTenant tenant : tenantRegistry.getTenants()) {
+                telegramSessionManager.addPollingBot(tenantRegistry.getBot(tenant));
+            }
+        }
         telegramSessionManager.start();
         log.info("Bot started");
     }
 
+    @EventListener(ContextClosedEvent.class)
+    public void stopTelegramBot(){
+        telegramSessionManager.stop();
+        updateDispatcher.stop();
+        documentFingerprinter.stop();
+        ruleEngine.stop();
+        reviewDigest.stop();
+        clusterReplicator.stop();
+        actionScheduler.stop();
+        updateWatermark.stop();
+        stateSnapshot.stop();
+        feedbackSweeper.stop();
+        moderationStore.stop();
+        log.info("Bot stopped");
+    }
+
 }
@@ -0,0 +1,51 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.addition;
+
+import org.telegram.telegrambots.meta.api.methods.groupadministration.KickChatMember;
+
+/**
+ * Builds the bans the strategies and the review send.
+ */
+public class Bans {
+
+    private Bans() {}
+
+    /**
+     * Bans the user until the given epoch second, 0 bans for good.
+     */
+    public static KickChatMember ban(final int userId, final long chatId, final int untilDate) {
+        final KickChatMember ban = new KickChatMember();
+        ban.setUserId(userId);
+        ban.setChatId(chatId);
+        ban.setUntilDate(untilDate);
+        return ban;
+    }
+
+    public static KickChatMember banForGood(final int userId, final long chatId) {
+        return ban(userId, chatId, 0);
+    }
+
+}
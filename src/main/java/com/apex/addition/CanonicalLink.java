@@ -0,0 +1,189 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.addition;
+
+import java.net.IDN;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A link reduced to what identifies its target: lower case ASCII host without www, the path segments
+ * without empty or dot segments, and the query parameters sorted and without tracking parameters.
+ * Scheme, user info, port and fragment are dropped.
+ */
+public class CanonicalLink {
+
+    private static final Pattern SCHEME = Pattern.compile("^([a-zA-Z][a-zA-Z0-9+.-]*):(//)?");
+
+    private final List<String> labels;
+    private final List<String> segments;
+
+    private CanonicalLink(final List<String> labels, final List<String> segments) {
+        this.labels = labels;
+        this.segments = segments;
+    }
+
+    /**
+     * Parses a link as written in a message, returns null if it has no http(s) host.
+     */
+    public static CanonicalLink parse(final String raw) {
+        String rest = raw.trim();
+        final Matcher scheme = SCHEME.matcher(rest);
+        if (scheme.find()) {
+            final String name = scheme.group(1).toLowerCase(Locale.ROOT);
+            if (!name.equals("http") && !name.equals("https")) return null;
+            rest = rest.substring(scheme.end());
+        } else if (rest.startsWith("//")) {
+            rest = rest.substring(2);
+        }
+        final int authorityEnd = indexOfAny(rest, "/?#");
+        String host = rest.substring(0, authorityEnd);
+        rest = rest.substring(authorityEnd);
+        host = host.substring(host.lastIndexOf('@') + 1);
+        if (host.startsWith("[")) return null;
+        final int port = host.indexOf(':');
+        if (port >= 0) host = host.substring(0, port);
+        while (host.endsWith(".")) host = host.substring(0, host.length() - 1);
+        try {
+            host = IDN.toASCII(host, IDN.ALLOW_UNASSIGNED).toLowerCase(Locale.ROOT);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (host.startsWith("www.")) host = host.substring(4);
+        if (host.isEmpty() || host.indexOf('.') < 0) return null;
+
+        final List<String> labels = new ArrayList<>(Arrays.asList(host.split("\\.")));
+        if (labels.contains("")) return null;
+        Collections.reverse(labels);
+
+        final int fragment = rest.indexOf('#');
+        if (fragment >= 0) rest = rest.substring(0, fragment);
+        final int queryStart = rest.indexOf('?');
+        final String path = queryStart >= 0 ? rest.substring(0, queryStart) : rest;
+        final List<String> segments = new ArrayList<>();
+        for (String segment : path.split("/")) {
+            if (segment.isEmpty() || segment.equals(".")) continue;
+            if (segment.equals("..")) {
+                if (!segments.isEmpty()) segments.remove(segments.size() - 1);
+                continue;
+            }
+            segments.add(segment);
+        }
+        if (queryStart >= 0) {
+            Arrays.stream(rest.substring(queryStart + 1).split("&"))
+                    .filter(parameter -> !parameter.isEmpty() && !isTracking(parameter))
+                    .sorted()
+                    .distinct()
+                    .forEach(parameter -> segments.add("?" + parameter));
+        }
+        return new CanonicalLink(labels, segments);
+    }
+
+    /**
+     * Host labels from the top level domain down.
+     */
+    public List<String> getLabels() {
+        return Collections.unmodifiableList(labels);
+    }
+
+    /**
+     * Path segments, followed by one segment per query parameter starting with '?'.
+     */
+    public List<String> getSegments() {
+        return Collections.unmodifiableList(segments);
+    }
+
+    public String getHost() {
+        final List<String> host = new ArrayList<>(labels);
+        Collections.reverse(host);
+        return String.join(".", host);
+    }
+
+    /**
+     * What a ban of this link blacklists: its host, or on a shared host (e.g. t.me, sub-domains included)
+     * at least two path segments of it. Null if the path on a shared host is shorter, such links are only banned exactly.
+     */
+    public CanonicalLink blacklistRule(final Collection<String> sharedHosts) {
+        if (!isShared(sharedHosts)) return new CanonicalLink(labels, Collections.emptyList());
+        // t.me/c/<id> and youtube.com/c/<name> name a channel, the segments after it a post
+        if (segments.size() > 2 && segments.get(0).equals("c")) return new CanonicalLink(labels, segments.subList(0, 2));
+        int keep = segments.size();
+        while (keep > 2 && isNumeric(segments.get(keep - 1))) keep--;
+        return keep < 2 ? null : new CanonicalLink(labels, segments.subList(0, keep));
+    }
+
+    private boolean isShared(final Collection<String> sharedHosts) {
+        final String host = getHost();
+        for (String shared : sharedHosts) {
+            if (host.equals(shared) || host.endsWith("." + shared)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Inverse of {@link #toString()} for links that were canonical already.
+     */
+    public static CanonicalLink fromString(final String canonical) {
+        return parse("http://" + canonical);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder link = new StringBuilder(getHost());
+        boolean query = false;
+        for (String segment : segments) {
+            if (!segment.startsWith("?")) {
+                link.append('/').append(segment);
+            } else {
+                link.append(query ? '&' : '?').append(segment, 1, segment.length());
+                query = true;
+            }
+        }
+        return link.toString();
+    }
+
+    private static boolean isNumeric(final String segment) {
+        return !segment.isEmpty() && segment.chars().allMatch(Character::isDigit);
+    }
+
+    private static boolean isTracking(final String parameter) {
+        final String name = parameter.toLowerCase(Locale.ROOT);
+        return name.startsWith("utm_") || name.startsWith("fbclid=") || name.startsWith("gclid=");
+    }
+
+    private static int indexOfAny(final String value, final String chars) {
+        for (int i = 0; i < value.length(); i++) {
+            if (chars.indexOf(value.charAt(i)) >= 0) return i;
+        }
+        return value.length();
+    }
+
+}
@@ -1,7 +1,7 @@
 package com.apex.addition;
 
 import com.apex.entities.Feedback;
-import com.apex.repository.IFeedbackRepository;
+import com.apex.store.IModerationStore;
 import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
@@ -11,7 +11,7 @@ import java.util.*;
 
 public class FeedbackKeyboard {
 
-    private final IFeedbackRepository feedbackRepository;
+    private final IModerationStore moderationStore;
 
     private final int userId;
 
@@ -22,26 +22,21 @@ public class FeedbackKeyboard {
     private final String data;
 
     public FeedbackKeyboard(final int userId, final long chatId, final long verification,
-                            final String data, final IFeedbackRepository feedbackRepository){
-        this.feedbackRepository = feedbackRepository;
+                            final String data, final IModerationStore moderationStore){
+        this.moderationStore = moderationStore;
         this.userId = userId;
         this.chatId = chatId;
         this.verification = verification;
         this.data = data;
     }
 
-    public BotApiMethod getBanKeyboard() {
+    public BotApiMethod getBanKeyboard(final String preview) {
         SendMessage message = new SendMessage();
         message.setChatId(verification);
-        message.setText("This Post was shared");
-
-        final Feedback f = new Feedback(userId, chatId, data);
-        feedbackRepository.save(f);
-        final Optional<Feedback> feedbackOpt = feedbackRepository.findFirstByUserId(userId);
-        long id = 0L;
-        if(feedbackOpt.isPresent()){
-            id = feedbackOpt.get().getFeedbackId();
-        }
+        message.setText("This Post was shared: " + preview);
+
+        final Feedback f = moderationStore.createFeedback(userId, chatId, data);
+        final long id = f.getFeedbackId();
 
         InlineKeyboardMarkup inlineKeyboardMarkup = new InlineKeyboardMarkup();
         List<List<InlineKeyboardButton>> keyboard = new ArrayList<>();
@@ -0,0 +1,59 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.addition;
+
+import java.util.Locale;
+
+/**
+ * 64 bit SimHash of a text over its shingles of three characters. Similar texts get hashes within a small
+ * Hamming distance of each other.
+ */
+public class SimHash {
+
+    private static final int SHINGLE = 3;
+
+    /**
+     * The text in lower case, with punctuation and runs of whitespace replaced by a single space.
+     */
+    public static String normalize(final String text) {
+        return text.toLowerCase(Locale.ROOT).replaceAll("[^\\p{L}\\p{N}]+", " ").trim();
+    }
+
+    /**
+     * Hash of a normalized text.
+     */
+    public static long of(final String normalized) {
+        final int[] weights = new int[64];
+        final int shingles = Math.max(1, normalized.length() - SHINGLE + 1);
+        for (int i = 0; i < shingles; i++) {
+            final long hash = Fingerprint.of(normalized.substring(i, Math.min(normalized.length(), i + SHINGLE)));
+            for (int bit = 0; bit < 64; bit++) weights[bit] += ((hash >>> bit) & 1L) != 0 ? 1 : -1;
+        }
+        long simHash = 0;
+        for (int bit = 0; bit < 64; bit++) if (weights[bit] > 0) simHash |= 1L << bit;
+        return simHash;
+    }
+
+}
@@ -0,0 +1,250 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.bot;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append-only JSON lines journal of the actions handed to the {@link ActionScheduler}, replayed on start.
+ * Appends are synced, done records are not, so an action may be sent twice after a crash.
+ */
+public class ActionOutbox {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Path path;
+
+    // guarded by this
+    private FileChannel channel;
+    private long nextId = 1;
+    private long pending;
+
+    private final Object syncLock = new Object();
+    private long synced;
+
+    public ActionOutbox(final Path path) {
+        this.path = path;
+    }
+
+    /**
+     * An action read back from the outbox.
+     */
+    public static final class Entry {
+
+        private final long id;
+        private final long origin;
+        private final Integer subject;
+        private final BotApiMethod<?> method;
+
+        private Entry(final long id, final long origin, final Integer subject, final BotApiMethod<?> method) {
+            this.id = id;
+            this.origin = origin;
+            this.subject = subject;
+            this.method = method;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public long getOrigin() {
+            return origin;
+        }
+
+        public Integer getSubject() {
+            return subject;
+        }
+
+        public BotApiMethod<?> getMethod() {
+            return method;
+        }
+
+    }
+
+    /**
+     * Opens the outbox and returns the actions that were not done yet, in the order they were appended.
+     */
+    public synchronized List<Entry> open() throws IOException {
+        final Map<Long, Entry> entries = new LinkedHashMap<>();
+        if (Files.isRegularFile(path)) {
+            try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isEmpty()) continue;
+                    try {
+                        read(mapper.readTree(line), entries);
+                    } catch (IOException | ClassNotFoundException | RuntimeException e) {
+                        // the last line may be torn by a crash, anything else is skipped with a warning
+                        log.warn("Skip unreadable outbox record: " + e.getMessage());
+                    }
+                }
+            }
+        }
+        final Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (Entry entry : entries.values()) write(out, record(entry.id, entry.origin, entry.subject, entry.method));
+            out.force(true);
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        synced = channel.size();
+        pending = entries.size();
+        for (Entry entry : entries.values()) nextId = Math.max(nextId, entry.id + 1);
+        if (!entries.isEmpty()) log.info("Replaying " + entries.size() + " actions from the outbox");
+        return new ArrayList<>(entries.values());
+    }
+
+    /**
+     * Appends the actions and returns their ids once they are on disk.
+     */
+    public long[] append(final long origin, final Integer subject, final List<? extends BotApiMethod<?>> methods)
+            throws IOException {
+        final long[] origins = new long[methods.size()];
+        Arrays.fill(origins, origin);
+        return append(origins, Collections.nCopies(methods.size(), subject), methods);
+    }
+
+    /**
+     * Appends actions with an origin and subject each and returns their ids once they are on disk.
+     */
+    public long[] append(final long[] origins, final List<Integer> subjects,
+                         final List<? extends BotApiMethod<?>> methods) throws IOException {
+        final long[] ids = new long[methods.size()];
+        final long end;
+        synchronized (this) {
+            if (channel == null) throw new IOException("Outbox is closed");
+            final StringBuilder records = new StringBuilder();
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = nextId++;
+                records.append(record(ids[i], origins[i], subjects.get(i), methods.get(i)));
+            }
+            write(channel, records.toString());
+            pending += ids.length;
+            end = channel.position();
+        }
+        sync(end);
+        return ids;
+    }
+
+    /**
+     * Marks an action as done, it will not be replayed.
+     */
+    public synchronized void done(final long id) {
+        if (channel == null) return;
+        try {
+            if (--pending <= 0) {
+                pending = 0;
+                channel.truncate(0);
+                synchronized (syncLock) {
+                    synced = 0;
+                }
+            } else {
+                write(channel, "{\"done\":" + id + "}\n");
+            }
+        } catch (IOException e) {
+            log.error("Could not mark action " + id + " done in the outbox", e);
+        }
+    }
+
+    public synchronized void close() {
+        if (channel == null) return;
+        try {
+            channel.force(true);
+            channel.close();
+        } catch (IOException e) {
+            log.error("Could not close the outbox", e);
+        }
+        channel = null;
+    }
+
+    /**
+     * Syncs the file up to the given position, unless another caller did so already.
+     */
+    private void sync(final long end) throws IOException {
+        synchronized (syncLock) {
+            if (synced >= end) return;
+            final FileChannel current;
+            synchronized (this) {
+                current = channel;
+            }
+            if (current == null) throw new IOException("Outbox is closed");
+            final long position = current.size();
+            current.force(false);
+            synced = position;
+        }
+    }
+
+    private void read(final JsonNode node, final Map<Long, Entry> entries) throws IOException, ClassNotFoundException {
+        if (node.has("done")) {
+            entries.remove(node.get("done").asLong());
+            return;
+        }
+        final Class<?> type = Class.forName(node.get("type").asText());
+        if (!BotApiMethod.class.isAssignableFrom(type)) throw new IOException("Not an API method: " + type.getName());
+        final BotApiMethod<?> method = (BotApiMethod<?>) mapper.treeToValue(node.get("method"), type);
+        final Integer subject = node.hasNonNull("subject") ? node.get("subject").asInt() : null;
+        final long id = node.get("id").asLong();
+        entries.put(id, new Entry(id, node.get("origin").asLong(), subject, method));
+    }
+
+    private String record(final long id, final long origin, final Integer subject, final BotApiMethod<?> method) {
+        final ObjectNode node = mapper.createObjectNode();
+        node.put("id", id);
+        node.put("origin", origin);
+        if (subject != null) node.put("subject", subject);
+        node.put("type", method.getClass().getName());
+        node.set("method", mapper.valueToTree(method));
+        return node.toString() + "\n";
+    }
+
+    private static void write(final FileChannel target, final String records) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(records.getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) target.write(buffer);
+    }
+
+}
@@ -0,0 +1,544 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.bot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.methods.groupadministration.KickChatMember;
+import org.telegram.telegrambots.meta.bots.AbsSender;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+import org.telegram.telegrambots.meta.updateshandlers.SentCallback;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Sends the actions decided by the strategies, one at a time per origin chat and by {@link OutboundAction.Priority},
+ * within the global and per chat rate limits. Redundant bans, deletes and reviews are dropped on submit.
+ */
+public class ActionScheduler implements IRunWithOwnThread {
+
+    private static final long DRAIN_TIMEOUT = TimeUnit.SECONDS.toNanos(10);
+    private static final long BAN_MEMORY = TimeUnit.MINUTES.toNanos(1);
+    private static final long IDLE_WAIT = TimeUnit.MILLISECONDS.toNanos(500);
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private final double globalPerSecond;
+    private final double chatPerMinute;
+    private final int maxRetries;
+    private final ActionOutbox outbox;
+
+    // all fields below are guarded by the lock of lanes
+    private final Map<Long, Lane> lanes = new HashMap<>();
+    private final PriorityQueue<Lane> ready = new PriorityQueue<>(
+            Comparator.comparingInt((Lane lane) -> lane.rank).thenComparingLong(lane -> lane.sequence));
+    private final PriorityQueue<Lane> delayed = new PriorityQueue<>(Comparator.comparingLong((Lane lane) -> lane.due));
+    private final Map<String, OutboundAction> pending = new HashMap<>();
+    private final LinkedHashMap<String, SentBan> recentBans = new LinkedHashMap<>();
+    private long sequence;
+    private long coalesced;
+    private long independentLanes;
+
+    private final Map<String, TokenBucket> chatBuckets = new ConcurrentHashMap<>();
+    private TokenBucket global;
+
+    private volatile Function<String, ? extends AbsSender> senders;
+    private volatile BiConsumer<BotApiMethod<?>, Serializable> sentListener;
+    private volatile boolean running;
+    private volatile long drainDeadline;
+    private Thread worker;
+
+    public ActionScheduler(final double globalPerSecond, final double chatPerMinute, final int maxRetries,
+                           final ActionOutbox outbox) {
+        this.globalPerSecond = globalPerSecond;
+        this.chatPerMinute = chatPerMinute;
+        this.maxRetries = maxRetries;
+        this.outbox = outbox;
+    }
+
+    public void setSender(final AbsSender sender) {
+        this.senders = chatId -> sender;
+    }
+
+    /**
+     * Sends every action with the bot returned for its target chat.
+     */
+    public void setSender(final Function<String, ? extends AbsSender> senders) {
+        this.senders = senders;
+    }
+
+    /**
+     * Called with every action Telegram accepted and its response, on the thread of the sender.
+     */
+    public void setSentListener(final BiConsumer<BotApiMethod<?>, Serializable> sentListener) {
+        this.sentListener = sentListener;
+    }
+
+    public void submit(final long origin, final List<? extends BotApiMethod> methods) {
+        submit(origin, null, methods);
+    }
+
+    /**
+     * Queues the actions decided for a message of the subject, which may be null if there is none.
+     */
+    @SuppressWarnings("unchecked")
+    public void submit(final long origin, final Integer subject, final List<? extends BotApiMethod> methods) {
+        if (methods.isEmpty()) return;
+        long[] ids = null;
+        if (outbox != null) {
+            try {
+                ids = outbox.append(origin, subject, (List<? extends BotApiMethod<?>>) methods);
+            } catch (IOException e) {
+                log.error("Could not write " + methods.size() + " actions to the outbox", e);
+            }
+        }
+        enqueue(origin, subject, methods, ids);
+    }
+
+    /**
+     * Queues actions that may be sent in any order and in parallel, each in a lane of its own.
+     * The subjects are the users the actions are decided for, in the same order.
+     */
+    @SuppressWarnings("unchecked")
+    public void submitIndependent(final List<? extends BotApiMethod> methods, final List<Integer> subjects) {
+        if (methods.isEmpty()) return;
+        final long[] origins = new long[methods.size()];
+        synchronized (lanes) {
+            // below any chat id, so the lanes are never shared with a chat
+            for (int i = 0; i < origins.length; i++) origins[i] = Long.MIN_VALUE + independentLanes++;
+        }
+        long[] ids = null;
+        if (outbox != null) {
+            try {
+                ids = outbox.append(origins, subjects, (List<? extends BotApiMethod<?>>) methods);
+            } catch (IOException e) {
+                log.error("Could not write " + methods.size() + " actions to the outbox", e);
+            }
+        }
+        for (int i = 0; i < origins.length; i++) {
+            enqueue(origins[i], subjects.get(i), Collections.singletonList(methods.get(i)),
+                    ids == null ? null : new long[]{ids[i]});
+        }
+    }
+
+    /**
+     * Queues actions under the given outbox ids, null if they are not in the outbox.
+     */
+    private void enqueue(final long origin, final Integer subject, final List<? extends BotApiMethod> methods,
+                         final long[] ids) {
+        synchronized (lanes) {
+            final long now = System.nanoTime();
+            final Lane lane = lanes.computeIfAbsent(origin, Lane::new);
+            for (int i = 0; i < methods.size(); i++) {
+                final BotApiMethod<?> method = methods.get(i);
+                final OutboundAction action = new OutboundAction(method, origin, subject, ++sequence, ids == null ? 0 : ids[i]);
+                if (isRedundant(action, origin, now)) {
+                    coalesced++;
+                    done(action);
+                    continue;
+                }
+                if (action.getKey() != null) pending.put(action.getKey(), action);
+                if (action.isBan()) dropReviews(action);
+                lane.actions.add(action);
+            }
+            if (lane.actions.isEmpty() && lane.inFlight == null) {
+                lanes.remove(origin);
+                return;
+            }
+            schedule(lane, now);
+            lanes.notifyAll();
+        }
+    }
+
+    @Override
+    public synchronized void start() {
+        if (running) return;
+        global = new TokenBucket(globalPerSecond, globalPerSecond, System.nanoTime());
+        if (outbox != null) replay();
+        running = true;
+        worker = new Thread(this::run, "action-scheduler");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (!running) return;
+        drainDeadline = System.nanoTime() + DRAIN_TIMEOUT;
+        running = false;
+        synchronized (lanes) {
+            lanes.notifyAll();
+        }
+        try {
+            worker.join(TimeUnit.NANOSECONDS.toMillis(DRAIN_TIMEOUT) + 1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (lanes) {
+            final int left = lanes.values().stream().mapToInt(lane -> lane.actions.size()).sum();
+            if (left > 0) log.warn("Action scheduler stopped with " + left + " unsent actions");
+            if (coalesced > 0) log.info("Action scheduler dropped " + coalesced + " redundant actions");
+        }
+        if (outbox != null) outbox.close();
+    }
+
+    /**
+     * Queues the actions left in the outbox by the previous run.
+     */
+    private void replay() {
+        final List<ActionOutbox.Entry> entries;
+        try {
+            entries = outbox.open();
+        } catch (IOException e) {
+            log.error("Could not open the outbox, actions are not journaled", e);
+            return;
+        }
+        final long now = Instant.now().getEpochSecond();
+        for (ActionOutbox.Entry entry : entries) {
+            // a mute that ended while the bot was down would become permanent
+            if (OutboundAction.isExpired(entry.getMethod(), now)) {
+                log.info("Not replaying " + entry.getMethod().getMethod() + " that has run out while the bot was down");
+                outbox.done(entry.getId());
+                continue;
+            }
+            enqueue(entry.getOrigin(), entry.getSubject(), Collections.singletonList(entry.getMethod()),
+                    new long[]{entry.getId()});
+        }
+    }
+
+    private void run() {
+        while (running || (hasPending() && System.nanoTime() < drainDeadline)) {
+            try {
+                final Lane lane;
+                final OutboundAction action;
+                synchronized (lanes) {
+                    final long now = System.nanoTime();
+                    while (!delayed.isEmpty() && delayed.peek().due <= now) {
+                        final Lane due = delayed.poll();
+                        due.queued = false;
+                        schedule(due, now);
+                    }
+                    final long wait = ready.isEmpty() ? nextDue(now) : global.delay(now);
+                    if (wait > 0) {
+                        TimeUnit.NANOSECONDS.timedWait(lanes, wait);
+                        continue;
+                    }
+                    lane = ready.poll();
+                    lane.queued = false;
+                    action = select(lane, now);
+                    if (action == null) {
+                        schedule(lane, now, lane.due);
+                        continue;
+                    }
+                    global.take(now);
+                    if (action.isChatLimited()) chatBucket(action.getChatId(), now).take(now);
+                    lane.inFlight = action;
+                }
+                send(lane, action);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("Error in action scheduler", e);
+            }
+        }
+    }
+
+    /**
+     * The most urgent action of the lane that may be sent now. If there is none, null is returned and the
+     * due time of the lane is set to when the earliest of its actions may be sent.
+     */
+    private OutboundAction select(final Lane lane, final long now) {
+        OutboundAction best = null;
+        long due = Long.MAX_VALUE;
+        for (int i = 0; i < lane.actions.size(); i++) {
+            final OutboundAction action = lane.actions.get(i);
+            if (best != null && action.getPriority().compareTo(best.getPriority()) >= 0) continue;
+            long wait = action.getNotBefore() - now;
+            if (action.isChatLimited()) wait = Math.max(wait, chatBucket(action.getChatId(), now).delay(now));
+            if (wait > 0) {
+                due = Math.min(due, now + wait);
+                continue;
+            }
+            best = action;
+        }
+        if (best == null) lane.due = due;
+        return best;
+    }
+
+    private void schedule(final Lane lane, final long now) {
+        schedule(lane, now, 0L);
+    }
+
+    /**
+     * Puts a lane that has no action in flight in the ready or the delayed queue, ranked by its most
+     * urgent action. It is delayed until notBefore, or until the first of its actions may be retried.
+     */
+    private void schedule(final Lane lane, final long now, final long notBefore) {
+        if (lane.inFlight != null) return;
+        if (lane.actions.isEmpty()) {
+            if (lane.queued) (lane.delayedQueued ? delayed : ready).remove(lane);
+            lane.queued = false;
+            lanes.remove(lane.origin);
+            return;
+        }
+        if (lane.queued) (lane.delayedQueued ? delayed : ready).remove(lane);
+        int rank = Integer.MAX_VALUE;
+        long due = Long.MAX_VALUE;
+        for (OutboundAction action : lane.actions) {
+            rank = Math.min(rank, action.getPriority().ordinal());
+            due = Math.min(due, action.getNotBefore());
+        }
+        lane.rank = rank;
+        lane.sequence = ++sequence;
+        lane.queued = true;
+        lane.due = Math.max(due, notBefore);
+        lane.delayedQueued = lane.due > now;
+        if (lane.delayedQueued) {
+            delayed.add(lane);
+        } else {
+            ready.add(lane);
+        }
+    }
+
+    private long nextDue(final long now) {
+        return delayed.isEmpty() ? IDLE_WAIT : Math.max(1L, Math.min(IDLE_WAIT, delayed.peek().due - now));
+    }
+
+    private boolean isRedundant(final OutboundAction action, final long origin, final long now) {
+        final OutboundAction kept = action.getKey() == null ? null : pending.get(action.getKey());
+        if (kept != null) {
+            if (OutboundAction.covers(kept.getMethod(), action.getMethod())) return true;
+            withdraw(kept);
+        }
+        if (action.isBan()) {
+            final SentBan sent = recentBans.get(action.getKey());
+            if (sent != null && now - sent.at < BAN_MEMORY &&
+                    OutboundAction.covers(sent.method, action.getMethod())) return true;
+        }
+        if (action.getPriority() == OutboundAction.Priority.REVIEW && action.getSubject() != null) {
+            final String ban = OutboundAction.banKey(String.valueOf(origin), action.getSubject());
+            final SentBan sent = recentBans.get(ban);
+            return pending.containsKey(ban) || (sent != null && now - sent.at < BAN_MEMORY);
+        }
+        return false;
+    }
+
+    /**
+     * Drops a pending action that a newer one replaces, unless it is being sent already.
+     */
+    private void withdraw(final OutboundAction action) {
+        pending.remove(action.getKey(), action);
+        final Lane lane = lanes.get(action.getOrigin());
+        if (lane == null || lane.inFlight == action) return;
+        if (lane.actions.remove(action)) {
+            coalesced++;
+            done(action);
+        }
+    }
+
+    /**
+     * Drops the reviews still waiting for the user the ban is for.
+     */
+    private void dropReviews(final OutboundAction ban) {
+        final Lane lane;
+        try {
+            lane = lanes.get(Long.parseLong(ban.getChatId()));
+        } catch (NumberFormatException e) {
+            return;
+        }
+        if (lane == null) return;
+        final Integer userId = ((KickChatMember) ban.getMethod()).getUserId();
+        for (Iterator<OutboundAction> it = lane.actions.iterator(); it.hasNext(); ) {
+            final OutboundAction action = it.next();
+            if (action != lane.inFlight && action.getPriority() == OutboundAction.Priority.REVIEW &&
+                    userId != null && userId.equals(action.getSubject())) {
+                it.remove();
+                coalesced++;
+                done(action);
+            }
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void send(final Lane lane, final OutboundAction action) {
+        action.attempted();
+        final AbsSender sender = senders.apply(action.getChatId());
+        if (sender == null) {
+            log.warn("No bot sends into chat " + action.getChatId() + ", dropping " + action.getMethod().getMethod());
+            complete(lane, action, true);
+            return;
+        }
+        if (OutboundAction.isExpired(action.getMethod(), Instant.now().getEpochSecond())) {
+            log.info("Dropping " + action.getMethod().getMethod() + " in chat " + action.getChatId() + " that has run out");
+            complete(lane, action, true);
+            return;
+        }
+        try {
+            sender.executeAsync((BotApiMethod) action.getMethod(), new SentCallback() {
+                @Override
+                public void onResult(BotApiMethod method, Serializable response) {
+                    final BiConsumer<BotApiMethod<?>, Serializable> listener = sentListener;
+                    if (listener != null) listener.accept(method, response);
+                    complete(lane, action, true);
+                }
+
+                @Override
+                public void onError(BotApiMethod method, TelegramApiRequestException e) {
+                    handleError(lane, action, e);
+                }
+
+                @Override
+                public void onException(BotApiMethod method, Exception e) {
+                    retryOrDrop(lane, action, e);
+                }
+            });
+        } catch (TelegramApiException e) {
+            log.info("Telegram API Exception on execute " + action.getMethod().getMethod() + ": " + e.getMessage());
+            complete(lane, action, true);
+        }
+    }
+
+    private void handleError(final Lane lane, final OutboundAction action, final TelegramApiRequestException e) {
+        if (e.getErrorCode() != null && e.getErrorCode() == 429) {
+            final int retryAfter = e.getParameters() != null && e.getParameters().getRetryAfter() != null ?
+                    e.getParameters().getRetryAfter() : 1;
+            final long until = System.nanoTime() + TimeUnit.SECONDS.toNanos(retryAfter);
+            if (action.isChatLimited()) chatBucket(action.getChatId(), System.nanoTime()).block(until);
+            else global.block(until);
+            log.info("Rate limited on " + action.getMethod().getMethod() + ", retry after " + retryAfter + "s");
+            retryAt(lane, action, until);
+        } else {
+            log.info("Telegram API Exception on execute " + action.getMethod().getMethod() + ": " + e.getApiResponse());
+            complete(lane, action, true);
+        }
+    }
+
+    private void retryOrDrop(final Lane lane, final OutboundAction action, final Exception e) {
+        if (action.getAttempts() <= maxRetries) {
+            final long backoff = TimeUnit.SECONDS.toNanos(1L << Math.min(action.getAttempts() - 1, 5));
+            retryAt(lane, action, System.nanoTime() + backoff);
+        } else {
+            log.info("Dropping " + action.getMethod().getMethod() + " after " + action.getAttempts() +
+                    " attempts: " + e.getMessage());
+            complete(lane, action, false);
+        }
+    }
+
+    private void retryAt(final Lane lane, final OutboundAction action, final long notBefore) {
+        synchronized (lanes) {
+            action.setNotBefore(notBefore);
+            lane.inFlight = null;
+            schedule(lane, System.nanoTime());
+            lanes.notifyAll();
+        }
+    }
+
+    /**
+     * Removes a sent or failed action from its lane, done tells whether it may be removed from the outbox.
+     */
+    private void complete(final Lane lane, final OutboundAction action, final boolean done) {
+        if (done) done(action);
+        synchronized (lanes) {
+            final long now = System.nanoTime();
+            lane.actions.remove(action);
+            lane.inFlight = null;
+            if (action.getKey() != null) pending.remove(action.getKey(), action);
+            if (action.isBan()) rememberBan(action, now);
+            schedule(lane, now);
+            lanes.notifyAll();
+        }
+    }
+
+    private void done(final OutboundAction action) {
+        if (outbox != null && action.getOutboxId() != 0) outbox.done(action.getOutboxId());
+    }
+
+    private void rememberBan(final OutboundAction ban, final long now) {
+        recentBans.remove(ban.getKey());
+        recentBans.put(ban.getKey(), new SentBan(now, ban.getMethod()));
+        for (Iterator<SentBan> it = recentBans.values().iterator(); it.hasNext(); ) {
+            if (now - it.next().at < BAN_MEMORY) break;
+            it.remove();
+        }
+    }
+
+    private TokenBucket chatBucket(final String chatId, final long now) {
+        return chatBuckets.computeIfAbsent(chatId, id -> new TokenBucket(chatPerMinute, chatPerMinute / 60d, now));
+    }
+
+    private boolean hasPending() {
+        synchronized (lanes) {
+            return !lanes.isEmpty();
+        }
+    }
+
+    private static final class SentBan {
+
+        private final long at;
+        private final BotApiMethod<?> method;
+
+        private SentBan(final long at, final BotApiMethod<?> method) {
+            this.at = at;
+            this.method = method;
+        }
+
+    }
+
+    private static final class Lane {
+
+        private final long origin;
+        private final List<OutboundAction> actions = new ArrayList<>();
+        private OutboundAction inFlight;
+        private boolean queued;
+        private boolean delayedQueued;
+        private int rank;
+        private long due;
+        private long sequence;
+
+        private Lane(final long origin) {
+            this.origin = origin;
+        }
+
+    }
+
+}
@@ -0,0 +1,141 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.bot;
+
+import com.apex.ATelegramBot;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.methods.updates.GetUpdates;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Catch-up mode run before polling starts: drains the updates Telegram kept while the bot was down and
+ * submits the resulting actions at once, with duplicate bans and deletes removed.
+ */
+@Component
+public class BacklogDrainer {
+
+    private static final int BATCH_SIZE = 100;
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    @Autowired
+    private TelegramMessageHandler telegramMessageHandler;
+
+    @Autowired
+    private ActionScheduler actionScheduler;
+
+    @Autowired
+    private UpdateWatermark updateWatermark;
+
+    @Autowired
+    private TenantRegistry tenantRegistry;
+
+    @Value("${bot.catchup.enabled}")
+    private boolean enabled;
+
+    private final Map<String, BotApiMethod> done = new HashMap<>();
+
+    public void drain() {
+        if (!enabled) return;
+        final Map<Long, List<BotApiMethod>> lanes = new LinkedHashMap<>();
+        int updates = 0;
+        for (BotTenant tenant : tenantRegistry.getTenants()) updates += drain(tenant, lanes);
+        int actions = 0;
+        synchronized (done) {
+            for (Map.Entry<Long, List<BotApiMethod>> lane : lanes.entrySet()) {
+                final List<BotApiMethod> coalesced = coalesce(lane.getValue(), done);
+                actions += coalesced.size();
+                actionScheduler.submit(lane.getKey(), coalesced);
+            }
+        }
+        log.info("Catch-up processed " + updates + " updates into " + actions + " actions");
+    }
+
+    /**
+     * Actions decided after their update was drained, e.g. once a file is fingerprinted, are coalesced
+     * with the rest of the catch-up as well.
+     */
+    private void followUp(final long chatId, final List<BotApiMethod> actions) {
+        synchronized (done) {
+            actionScheduler.submit(chatId, coalesce(actions, done));
+        }
+    }
+
+    private int drain(final BotTenant tenant, final Map<Long, List<BotApiMethod>> lanes) {
+        final ATelegramBot bot = tenantRegistry.getBot(tenant);
+        final Set<Integer> seen = new HashSet<>();
+        Integer offset = null;
+        int updates = 0;
+        try {
+            while (true) {
+                final List<Update> batch = bot.execute(
+                        new GetUpdates().setOffset(offset).setLimit(BATCH_SIZE).setTimeout(0));
+                if (batch == null || batch.isEmpty()) break;
+                for (Update update : batch) {
+                    offset = offset == null ? update.getUpdateId() + 1 : Math.max(offset, update.getUpdateId() + 1);
+                    if (updateWatermark.isHandled(tenant.getName(), update.getUpdateId()) ||
+                            !seen.add(update.getUpdateId())) continue;
+                    final long chatId = UpdateDispatcher.chatIdOf(update);
+                    lanes.computeIfAbsent(chatId, chat -> new ArrayList<>()).addAll(telegramMessageHandler
+                            .collectActions(tenant, update, true, actions -> followUp(chatId, actions)));
+                    updateWatermark.advance(tenant.getName(), update.getUpdateId());
+                    updates++;
+                }
+            }
+        } catch (TelegramApiException e) {
+            log.error("Catch-up of " + tenant.getName() + " stopped early: " + e.getMessage());
+        }
+        return updates;
+    }
+
+    private static List<BotApiMethod> coalesce(final List<BotApiMethod> actions, final Map<String, BotApiMethod> done) {
+        final List<BotApiMethod> result = new ArrayList<>(actions.size());
+        for (BotApiMethod action : actions) {
+            final String key = OutboundAction.keyOf(action);
+            if (key != null) {
+                final BotApiMethod earlier = done.get(key);
+                if (earlier != null && OutboundAction.covers(earlier, action)) continue;
+                done.put(key, action);
+            }
+            result.add(action);
+        }
+        return result;
+    }
+
+}
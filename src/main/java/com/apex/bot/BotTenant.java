@@ -0,0 +1,85 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.bot;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One of the bots served by this process, with the chats it moderates and its verification chat.
+ * The tenant configured with the bot.* properties has an empty key.
+ */
+public class BotTenant {
+
+    private final String key;
+    private final String name;
+    private final String token;
+    private final List<Long> chats;
+    private final long verification;
+    private final List<Integer> whitelist;
+
+    public BotTenant(final String key, final String name, final String token, final List<Long> chats,
+                     final long verification, final List<Integer> whitelist) {
+        this.key = key;
+        this.name = name;
+        this.token = token;
+        this.chats = Collections.unmodifiableList(chats);
+        this.verification = verification;
+        this.whitelist = Collections.unmodifiableList(whitelist);
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public boolean isPrimary() {
+        return key.isEmpty();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public List<Long> getChats() {
+        return chats;
+    }
+
+    public boolean isMonitored(final long chatId) {
+        return chats.contains(chatId);
+    }
+
+    public long getVerification() {
+        return verification;
+    }
+
+    public boolean isWhitelisted(final int userId) {
+        return whitelist.contains(userId);
+    }
+
+}
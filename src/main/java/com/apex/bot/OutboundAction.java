@@ -0,0 +1,213 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.bot;
+
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.methods.ForwardMessage;
+import org.telegram.telegrambots.meta.api.methods.groupadministration.KickChatMember;
+import org.telegram.telegrambots.meta.api.methods.groupadministration.RestrictChatMember;
+import org.telegram.telegrambots.meta.api.methods.groupadministration.UnbanChatMember;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.DeleteMessage;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageText;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
+
+/**
+ * A {@link BotApiMethod} waiting in the {@link ActionScheduler}.
+ */
+class OutboundAction {
+
+    /**
+     * Classes in the order they are sent in: actions that stop an offender, removing content, review
+     * requests and everything else.
+     */
+    enum Priority { PROTECT, REMOVE, REVIEW, NOTICE }
+
+    private static final long MIN_UNTIL_AHEAD = 30;
+
+    private final BotApiMethod<?> method;
+    private final long origin;
+    private final String chatId;
+    private final Integer subject;
+    private final Priority priority;
+    private final String key;
+    private final long sequence;
+    private final long outboxId;
+    private int attempts;
+    private long notBefore;
+
+    OutboundAction(final BotApiMethod<?> method, final long origin, final Integer subject, final long sequence,
+                   final long outboxId) {
+        this.method = method;
+        this.origin = origin;
+        this.chatId = chatIdOf(method);
+        this.subject = subject;
+        this.priority = priorityOf(method);
+        this.key = keyOf(method);
+        this.sequence = sequence;
+        this.outboxId = outboxId;
+    }
+
+    BotApiMethod<?> getMethod() {
+        return method;
+    }
+
+    /**
+     * The id of the action in the {@link ActionOutbox}, 0 if it is not journaled.
+     */
+    long getOutboxId() {
+        return outboxId;
+    }
+
+    /**
+     * The lane the action is queued in.
+     */
+    long getOrigin() {
+        return origin;
+    }
+
+    String getChatId() {
+        return chatId;
+    }
+
+    /**
+     * The user whose message the action was decided for, null if unknown.
+     */
+    Integer getSubject() {
+        return subject;
+    }
+
+    Priority getPriority() {
+        return priority;
+    }
+
+    /**
+     * Identifies bans and deletes, two actions with the same key have the same effect as long as the
+     * kept one {@link #covers} the other. Null for others.
+     */
+    String getKey() {
+        return key;
+    }
+
+    long getSequence() {
+        return sequence;
+    }
+
+    boolean isBan() {
+        return method instanceof KickChatMember;
+    }
+
+    /**
+     * Only messages posted into a chat count against Telegram's per chat limit.
+     */
+    boolean isChatLimited() {
+        return chatId != null && (method instanceof SendMessage || method instanceof ForwardMessage);
+    }
+
+    int getAttempts() {
+        return attempts;
+    }
+
+    void attempted() {
+        attempts++;
+    }
+
+    /**
+     * Nano time before which the action is not sent again, after a failure.
+     */
+    long getNotBefore() {
+        return notBefore;
+    }
+
+    void setNotBefore(final long notBefore) {
+        this.notBefore = notBefore;
+    }
+
+    /**
+     * Telegram treats an until date less than 30 seconds ahead as forever, so a ban or restriction whose
+     * end is that close is not sent anymore.
+     */
+    static boolean isExpired(final BotApiMethod<?> method, final long nowSeconds) {
+        final Integer until = untilDateOf(method);
+        return until != null && until > 0 && until < nowSeconds + MIN_UNTIL_AHEAD;
+    }
+
+    static Integer untilDateOf(final BotApiMethod<?> method) {
+        if (method instanceof KickChatMember) return ((KickChatMember) method).getUntilDate();
+        if (method instanceof RestrictChatMember) return ((RestrictChatMember) method).getUntilDate();
+        return null;
+    }
+
+    /**
+     * Whether the kept action has at least the effect of the other one with the same key: a ban lasts
+     * at least as long, no until date or 0 being forever.
+     */
+    static boolean covers(final BotApiMethod<?> kept, final BotApiMethod<?> other) {
+        if (!(kept instanceof KickChatMember) || !(other instanceof KickChatMember)) return true;
+        final Integer keptUntil = untilDateOf(kept);
+        final Integer otherUntil = untilDateOf(other);
+        if (keptUntil == null || keptUntil == 0) return true;
+        return otherUntil != null && otherUntil != 0 && keptUntil >= otherUntil;
+    }
+
+    static String banKey(final String chatId, final Integer userId) {
+        return "ban:" + chatId + ":" + userId;
+    }
+
+    static String chatIdOf(final BotApiMethod<?> method) {
+        if (method instanceof SendMessage) return ((SendMessage) method).getChatId();
+        if (method instanceof ForwardMessage) return ((ForwardMessage) method).getChatId();
+        if (method instanceof DeleteMessage) return ((DeleteMessage) method).getChatId();
+        if (method instanceof KickChatMember) return ((KickChatMember) method).getChatId();
+        if (method instanceof RestrictChatMember) return ((RestrictChatMember) method).getChatId();
+        if (method instanceof UnbanChatMember) return ((UnbanChatMember) method).getChatId();
+        if (method instanceof EditMessageText) return ((EditMessageText) method).getChatId();
+        return null;
+    }
+
+    private static Priority priorityOf(final BotApiMethod<?> method) {
+        if (method instanceof KickChatMember) return Priority.PROTECT;
+        if (method instanceof RestrictChatMember &&
+                Boolean.FALSE.equals(((RestrictChatMember) method).getCanSendMessages())) return Priority.PROTECT;
+        if (method instanceof DeleteMessage) return Priority.REMOVE;
+        if (method instanceof ForwardMessage) return Priority.REVIEW;
+        if (method instanceof SendMessage &&
+                ((SendMessage) method).getReplyMarkup() instanceof InlineKeyboardMarkup) return Priority.REVIEW;
+        return Priority.NOTICE;
+    }
+
+    static String keyOf(final BotApiMethod<?> method) {
+        if (method instanceof KickChatMember) {
+            final KickChatMember ban = (KickChatMember) method;
+            return banKey(ban.getChatId(), ban.getUserId());
+        }
+        if (method instanceof DeleteMessage) {
+            final DeleteMessage delete = (DeleteMessage) method;
+            return "delete:" + delete.getChatId() + ":" + delete.getMessageId();
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,474 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.bot;
+
+import com.apex.addition.FeedbackAction;
+import com.apex.addition.FeedbackKeyboard;
+import com.apex.entities.Feedback;
+import com.apex.store.IModerationStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.DeleteMessage;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageText;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
+
+import javax.annotation.PostConstruct;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Puts posts up for review in the verification chat of their bot, one by one or collected into a paged
+ * digest per review.digest-window.
+ */
+@Component
+public class ReviewDigest implements IRunWithOwnThread {
+
+    /**
+     * Callback suffix that applies an action to the group of the given feedback.
+     */
+    public static final String GROUP = "all";
+    public static final String PAGE = "page";
+
+    private static final int MAX_DIGESTS = 256;
+    private static final int MAX_KEYBOARDS = 4096;
+    private static final int ITEMS_SHOWN = 3;
+    private static final int PREVIEW_LENGTH = 60;
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    @Autowired
+    private IModerationStore moderationStore;
+
+    @Autowired
+    private ActionScheduler actionScheduler;
+
+    @Autowired
+    private TenantRegistry tenantRegistry;
+
+    @Value("${review.digest.window}")
+    private long window;
+
+    @Value("${review.digest.page-size}")
+    private int pageSize;
+
+    // all fields below are guarded by this
+    private List<Item> collected = new ArrayList<>();
+    private final Map<Long, Item> items = new HashMap<>();
+    private final LinkedHashMap<Long, Digest> digests = new LinkedHashMap<>();
+    private final Map<String, Digest> byMessage = new HashMap<>();
+    private final Map<SendMessage, Digest> sending = new IdentityHashMap<>();
+    private final LinkedHashMap<Long, DeleteMessage> keyboards = new LinkedHashMap<Long, DeleteMessage>() {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Long, DeleteMessage> eldest) {
+            return size() > MAX_KEYBOARDS;
+        }
+    };
+    private long nextDigest = 1;
+
+    private ScheduledExecutorService flusher;
+
+    private static final class Item {
+
+        private final long feedbackId;
+        private final int userId;
+        private final long chatId;
+        private final long verification;
+        private final String data;
+        private final String preview;
+        private Group group;
+
+        private Item(final Feedback feedback, final long verification, final String preview) {
+            this.feedbackId = feedback.getFeedbackId();
+            this.userId = feedback.getUserId();
+            this.chatId = feedback.getChatId();
+            this.verification = verification;
+            this.data = feedback.getData();
+            this.preview = preview;
+        }
+
+    }
+
+    private static final class Group {
+
+        private final Digest digest;
+        private final List<Item> items = new ArrayList<>();
+
+        private Group(final Digest digest) {
+            this.digest = digest;
+        }
+
+    }
+
+    private static final class Digest {
+
+        private final long id;
+        private final long verification;
+        private final List<Group> groups = new ArrayList<>();
+        private Integer messageId;
+
+        private Digest(final long id, final long verification) {
+            this.id = id;
+            this.verification = verification;
+        }
+
+        private int pages(final int pageSize) {
+            return Math.max(1, (groups.size() + pageSize - 1) / pageSize);
+        }
+
+    }
+
+    @PostConstruct
+    public void listen() {
+        actionScheduler.setSentListener(this::sent);
+    }
+
+    public boolean isEnabled() {
+        return window > 0;
+    }
+
+    /**
+     * Adds the message that puts a post up for review with its preview to the result, or collects it for the
+     * next digest. It is reviewed in the verification chat of the bot of the chat it was posted in. The post
+     * is not forwarded, so deleting it never waits for the verification chat.
+     */
+    public void review(final int userId, final long chatId, final String data, final String preview,
+                       final List<BotApiMethod> result) {
+        final long verification = tenantRegistry.forChat(chatId).getVerification();
+        if (!isEnabled()) {
+            result.add(new FeedbackKeyboard(userId, chatId, verification, data, moderationStore).getBanKeyboard(preview));
+            return;
+        }
+        final Item item = new Item(moderationStore.createFeedback(userId, chatId, data), verification, preview);
+        synchronized (this) {
+            collected.add(item);
+        }
+    }
+
+    /**
+     * A short description of the message for the digest.
+     */
+    public static String preview(final Message message) {
+        String preview = message.hasText() ? message.getText() : message.getCaption();
+        if (preview == null || preview.trim().isEmpty()) {
+            if (message.hasDocument()) preview = "document " + message.getDocument().getFileName();
+            else if (message.hasPhoto()) preview = "photo";
+            else preview = "message";
+        }
+        preview = preview.replaceAll("\\s+", " ").trim();
+        return preview.length() > PREVIEW_LENGTH ? preview.substring(0, PREVIEW_LENGTH - 1) + "\u2026" : preview;
+    }
+
+    /**
+     * The ids of the feedback in the digest group of the given one, just that id if it is in no digest.
+     */
+    public synchronized List<Long> group(final long feedbackId) {
+        final Item item = items.get(feedbackId);
+        if (item == null) return Collections.singletonList(feedbackId);
+        final List<Long> ids = new ArrayList<>();
+        for (Item member : item.group.items) ids.add(member.feedbackId);
+        return ids;
+    }
+
+    /**
+     * Removes answered feedback from the review messages, the message the answer came from first. Adds the
+     * edits of the digests and the deletes of the keyboards to the result. Returns false if the message
+     * the answer came from is no digest or nothing is left in it, it should be deleted then.
+     */
+    public synchronized boolean answered(final long verification, final int messageId,
+                                         final Collection<Long> feedbackIds, final List<BotApiMethod> result) {
+        final Set<Digest> changed = new LinkedHashSet<>();
+        Digest current = byMessage.get(messageKey(verification, messageId));
+        for (Long feedbackId : feedbackIds) {
+            final DeleteMessage keyboard = keyboards.remove(feedbackId);
+            if (keyboard != null && !(keyboard.getMessageId() == messageId &&
+                    String.valueOf(verification).equals(keyboard.getChatId()))) result.add(keyboard);
+            final Item item = items.remove(feedbackId);
+            if (item == null) continue;
+            final Digest digest = item.group.digest;
+            // the first answered feedback is the one whose button was pressed
+            if (current == null && digest.messageId == null && changed.isEmpty() &&
+                    digest.verification == verification) current = digest;
+            item.group.items.remove(item);
+            if (item.group.items.isEmpty()) digest.groups.remove(item.group);
+            changed.add(digest);
+        }
+        // feedback answered before, e.g. by another moderator, leaves the digest of the message as it is
+        if (current != null) changed.add(current);
+        boolean kept = false;
+        for (Digest digest : changed) {
+            final Integer target = digest == current ? Integer.valueOf(messageId) : digest.messageId;
+            if (digest.groups.isEmpty()) {
+                remove(digest);
+                if (target != null && digest != current) result.add(new DeleteMessage(digest.verification, target));
+            } else if (target != null) {
+                result.add(edit(digest, target, 0));
+                kept |= digest == current;
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * Removes expired feedback from the review messages and sends the edits and deletes.
+     */
+    public void expired(final Collection<Long> feedbackIds) {
+        final List<BotApiMethod> result = new ArrayList<>();
+        // no chat has the id 0, so none of the messages is taken for the one an answer came from
+        answered(0, 0, feedbackIds, result);
+        actionScheduler.submitIndependent(result, Collections.nCopies(result.size(), null));
+    }
+
+    /**
+     * Adds the edit showing another page of the digest to the result. Returns false if the digest is
+     * not known anymore.
+     */
+    public synchronized boolean page(final long digestId, final int page, final long verification,
+                                     final int messageId, final List<BotApiMethod> result) {
+        final Digest digest = digests.get(digestId);
+        // digest ids are only unique per worker, the message tells digests of different workers apart
+        if (digest == null || digest.verification != verification ||
+                digest.messageId != null && digest.messageId != messageId) return false;
+        result.add(edit(digest, messageId, page));
+        return true;
+    }
+
+    @Override
+    public synchronized void start() {
+        if (flusher != null || !isEnabled()) return;
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "review-digest");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, window, window, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (flusher == null) return;
+        flusher.shutdownNow();
+        flusher = null;
+        flush();
+    }
+
+    /**
+     * Sends the posts collected since the last digest as a new digest into each verification chat.
+     */
+    private void flush() {
+        try {
+            final List<SendMessage> messages = new ArrayList<>();
+            synchronized (this) {
+                if (collected.isEmpty()) return;
+                final Map<Long, List<Item>> byVerification = new LinkedHashMap<>();
+                for (Item item : collected) byVerification.computeIfAbsent(item.verification, v -> new ArrayList<>()).add(item);
+                collected = new ArrayList<>();
+                for (Map.Entry<Long, List<Item>> entry : byVerification.entrySet()) {
+                    messages.add(digest(entry.getKey(), entry.getValue()));
+                }
+                evict();
+            }
+            for (SendMessage message : messages) {
+                actionScheduler.submit(Long.parseLong(message.getChatId()), Collections.singletonList(message));
+            }
+        } catch (Exception e) {
+            log.error("Could not send the review digest", e);
+        }
+    }
+
+    private SendMessage digest(final long verification, final List<Item> collected) {
+        final Digest digest = new Digest(nextDigest++, verification);
+        final Map<String, Group> byData = new LinkedHashMap<>();
+        for (Item item : collected) {
+            // posts without data can not be blacklisted together, each is a group of its own
+            final String key = item.data == null || item.data.isEmpty() ? "#" + item.feedbackId : item.data;
+            item.group = byData.computeIfAbsent(key, k -> new Group(digest));
+            item.group.items.add(item);
+            items.put(item.feedbackId, item);
+        }
+        digest.groups.addAll(byData.values());
+        digest.groups.sort((a, b) -> Integer.compare(b.items.size(), a.items.size()));
+        log.info("Sending a review digest of " + collected.size() + " posts in " +
+                digest.groups.size() + " groups to " + verification);
+        digests.put(digest.id, digest);
+        final SendMessage message = new SendMessage();
+        message.setChatId(verification);
+        message.setText(text(digest, 0));
+        message.setReplyMarkup(keyboard(digest, 0));
+        sending.put(message, digest);
+        return message;
+    }
+
+    /**
+     * Learns the ids of review keyboards and digests sent into the verification chats.
+     */
+    private void sent(final BotApiMethod<?> method, final Serializable response) {
+        if (!(method instanceof SendMessage) || !(response instanceof Message)) return;
+        final SendMessage message = (SendMessage) method;
+        final Integer messageId = ((Message) response).getMessageId();
+        if (messageId == null) return;
+        synchronized (this) {
+            final Digest digest = sending.remove(message);
+            if (digest != null) {
+                if (digest.messageId == null && digests.containsKey(digest.id)) {
+                    digest.messageId = messageId;
+                    byMessage.put(messageKey(digest.verification, messageId), digest);
+                }
+                return;
+            }
+            if (!(message.getReplyMarkup() instanceof InlineKeyboardMarkup)) return;
+            final List<List<InlineKeyboardButton>> rows = ((InlineKeyboardMarkup) message.getReplyMarkup()).getKeyboard();
+            if (rows == null || rows.isEmpty() || rows.get(0).isEmpty()) return;
+            final String[] first = String.valueOf(rows.get(0).get(0).getCallbackData()).split(",");
+            if (first.length == 2 && first[0].equals(FeedbackAction.BAN.getAction()) && first[1].matches("[0-9]{1,18}")) {
+                keyboards.put(Long.parseLong(first[1]), new DeleteMessage(message.getChatId(), messageId));
+            }
+        }
+    }
+
+    private void evict() {
+        for (Iterator<Digest> it = digests.values().iterator(); digests.size() > MAX_DIGESTS && it.hasNext(); ) {
+            final Digest digest = it.next();
+            for (Group group : digest.groups) for (Item item : group.items) items.remove(item.feedbackId);
+            if (digest.messageId != null) byMessage.remove(messageKey(digest.verification, digest.messageId));
+            sending.values().remove(digest);
+            it.remove();
+        }
+    }
+
+    private void remove(final Digest digest) {
+        digests.remove(digest.id);
+        if (digest.messageId != null) byMessage.remove(messageKey(digest.verification, digest.messageId));
+    }
+
+    private EditMessageText edit(final Digest digest, final int messageId, final int page) {
+        final int shown = Math.max(0, Math.min(page, digest.pages(pageSize) - 1));
+        if (digest.messageId == null) {
+            digest.messageId = messageId;
+            byMessage.put(messageKey(digest.verification, messageId), digest);
+        }
+        final EditMessageText edit = new EditMessageText();
+        edit.setChatId(digest.verification);
+        edit.setMessageId(messageId);
+        edit.setText(text(digest, shown));
+        edit.setReplyMarkup(keyboard(digest, shown));
+        return edit;
+    }
+
+    private static String messageKey(final long chatId, final int messageId) {
+        return chatId + ":" + messageId;
+    }
+
+    private String text(final Digest digest, final int page) {
+        int posts = 0;
+        for (Group group : digest.groups) posts += group.items.size();
+        final StringBuilder text = new StringBuilder()
+                .append(posts).append(posts == 1 ? " post" : " posts").append(" to review in ")
+                .append(digest.groups.size()).append(digest.groups.size() == 1 ? " group" : " groups");
+        if (digest.pages(pageSize) > 1) text.append(", page ").append(page + 1).append('/').append(digest.pages(pageSize));
+        final int first = page * pageSize;
+        for (int g = first; g < Math.min(first + pageSize, digest.groups.size()); g++) {
+            final Group group = digest.groups.get(g);
+            text.append("\n\n").append(g + 1).append(". ").append(group.items.size())
+                    .append(group.items.size() == 1 ? " post" : " posts");
+            for (int i = 0; i < group.items.size(); i++) {
+                if (i == ITEMS_SHOWN) {
+                    text.append("\n   and ").append(group.items.size() - ITEMS_SHOWN).append(" more");
+                    break;
+                }
+                final Item item = group.items.get(i);
+                text.append("\n - user ").append(item.userId).append(" in ").append(item.chatId)
+                        .append(": ").append(item.preview);
+            }
+        }
+        return text.toString();
+    }
+
+    private InlineKeyboardMarkup keyboard(final Digest digest, final int page) {
+        final List<List<InlineKeyboardButton>> keyboard = new ArrayList<>();
+        final int first = page * pageSize;
+        for (int g = first; g < Math.min(first + pageSize, digest.groups.size()); g++) {
+            final Group group = digest.groups.get(g);
+            final long anchor = group.items.get(0).feedbackId;
+            if (group.items.size() > 1) {
+                keyboard.add(row(
+                        button("Ban group " + (g + 1) + " (" + group.items.size() + ")",
+                                FeedbackAction.BAN.getAction() + "," + anchor + "," + GROUP),
+                        button("Ignore group " + (g + 1),
+                                FeedbackAction.IGNORE.getAction() + "," + anchor + "," + GROUP)));
+            }
+            for (int i = 0; i < Math.min(ITEMS_SHOWN, group.items.size()); i++) {
+                final Item item = group.items.get(i);
+                keyboard.add(row(
+                        button("Ban " + item.userId, FeedbackAction.BAN.getAction() + "," + item.feedbackId),
+                        button("Whitelist " + item.userId, FeedbackAction.WHITELIST.getAction() + "," + item.feedbackId),
+                        button("Ignore", FeedbackAction.IGNORE.getAction() + "," + item.feedbackId)));
+            }
+        }
+        final int pages = digest.pages(pageSize);
+        if (pages > 1) {
+            final List<InlineKeyboardButton> navigation = new ArrayList<>();
+            if (page > 0) navigation.add(button("\u25C0", PAGE + "," + digest.id + "," + (page - 1)));
+            if (page < pages - 1) navigation.add(button("\u25B6", PAGE + "," + digest.id + "," + (page + 1)));
+            keyboard.add(navigation);
+        }
+        final InlineKeyboardMarkup markup = new InlineKeyboardMarkup();
+        markup.setKeyboard(keyboard);
+        return markup;
+    }
+
+    private static List<InlineKeyboardButton> row(final InlineKeyboardButton... buttons) {
+        final List<InlineKeyboardButton> row = new ArrayList<>();
+        Collections.addAll(row, buttons);
+        return row;
+    }
+
+    private static InlineKeyboardButton button(final String text, final String callbackData) {
+        final InlineKeyboardButton button = new InlineKeyboardButton();
+        button.setText(text);
+        button.setCallbackData(callbackData);
+        return button;
+    }
+
+}
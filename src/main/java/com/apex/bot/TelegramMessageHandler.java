@@ -25,55 +25,55 @@
 package com.apex.bot;
 
 import com.apex.ATelegramBot;
+import com.apex.addition.Bans;
 import com.apex.addition.FeedbackAction;
-import com.apex.entities.Blacklist;
+import com.apex.cache.BlacklistIndex;
+import com.apex.cluster.ClusterPartition;
+import com.apex.cache.TGUserCache;
 import com.apex.entities.Feedback;
 import com.apex.entities.TGUser;
-import com.apex.repository.IBlackListRepository;
-import com.apex.repository.IFeedbackRepository;
-import com.apex.repository.ITGUserRepository;
+import com.apex.rules.RuleEngine;
+import com.apex.store.IModerationStore;
 import com.apex.strategy.CommandStrategy;
 import com.apex.strategy.InfoStrategy;
 import com.apex.strategy.DeleteStrategy;
+import com.apex.strategy.FloodStrategy;
+import com.apex.strategy.DuplicateTextStrategy;
+import com.apex.strategy.MessageContext;
+import com.apex.strategy.StrategyPipeline;
 import com.apex.strategy.WhitelistStrategy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.telegram.telegrambots.bots.DefaultBotOptions;
 import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
 import org.telegram.telegrambots.meta.api.methods.groupadministration.*;
 import org.telegram.telegrambots.meta.api.methods.updatingmessages.DeleteMessage;
 import org.telegram.telegrambots.meta.api.objects.CallbackQuery;
 import org.telegram.telegrambots.meta.api.objects.Update;
-import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 
-import java.math.BigDecimal;
-import java.time.Instant;
+import javax.annotation.PostConstruct;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
 
 @Service
 public class TelegramMessageHandler extends ATelegramBot {
 
-    private final Logger log = LoggerFactory.getLogger(this.getClass());
-
-    @Value("${bot.verification}")
-    private long verification;
+    private static final Pattern FEEDBACK_ID = Pattern.compile("[0-9]{1,18}");
 
-    @Value("${bot.whitelist}")
-    private List<Integer> whitelist;
-
-    @Value("${bot.chat}")
-    private List<Long> chat;
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
 
     @Autowired
-    private IFeedbackRepository feedbackRepository;
+    private IModerationStore moderationStore;
 
     @Autowired
-    private ITGUserRepository tgUserRepository;
+    private TGUserCache tgUserCache;
 
     @Autowired
-    private IBlackListRepository blackListRepository;
+    private BlacklistIndex blacklistIndex;
 
     @Autowired
     private DeleteStrategy deleteLinks;
@@ -88,82 +88,211 @@ public class TelegramMessageHandler extends ATelegramBot {
     private WhitelistStrategy whitelistStrategy;
 
     @Autowired
-    public TelegramMessageHandler(@Value("${bot.token}") String botToken, @Value("${bot.name}") String botName) {
-        super(botToken, botName);
+    private FloodStrategy floodStrategy;
+
+    @Autowired
+    private DuplicateTextStrategy duplicateTextStrategy;
+
+    @Autowired
+    private UpdateDispatcher updateDispatcher;
+
+    @Autowired
+    private ActionScheduler actionScheduler;
+
+    @Autowired
+    private UpdateWatermark updateWatermark;
+
+    @Autowired
+    private RuleEngine ruleEngine;
+
+    @Autowired
+    private ReviewDigest reviewDigest;
+
+    @Autowired
+    private TenantRegistry tenantRegistry;
+
+    @Autowired
+    private ClusterPartition clusterPartition;
+
+    @Value("${blacklist.shared-hosts}")
+    private List<String> sharedHosts;
+
+    private StrategyPipeline moderation;
+    private final int outboundThreads;
+
+    @Autowired
+    public TelegramMessageHandler(@Value("${bot.token}") String botToken, @Value("${bot.name}") String botName,
+                                  @Value("${bot.outbound.threads}") int outboundThreads) {
+        super(botToken, botName, botOptions(outboundThreads));
+        this.outboundThreads = outboundThreads;
+    }
+
+    /**
+     * This is the bot of the first tenant, the bots of the others hand their updates to it as well.
+     */
+    @PostConstruct
+    public void registerSender() {
+        for (BotTenant tenant : tenantRegistry.getTenants()) {
+            tenantRegistry.attach(tenant, tenant.isPrimary() ? this : new TenantBot(tenant, this, botOptions(outboundThreads)));
+        }
+        actionScheduler.setSender(tenantRegistry::senderFor);
+        moderation = new StrategyPipeline()
+                .then(floodStrategy)
+                .decide(ruleEngine::decide)
+                .stopIf(MessageContext::isTrusted)
+                .then(duplicateTextStrategy)
+                .then(deleteLinks);
     }
 
     @Override
     public void onUpdateReceived(Update update) {
+        receive(tenantRegistry.getPrimary(), update);
+    }
+
+    void receive(BotTenant tenant, Update update) {
+        if (updateWatermark.isHandled(tenant.getName(), update.getUpdateId())) return;
+        updateWatermark.begin(tenant.getName(), update.getUpdateId());
+        // a rejected update is never advanced, it holds the watermark back until it is delivered again
+        updateDispatcher.dispatch(update, dispatched -> handleUpdate(tenant, dispatched));
+    }
+
+    private void handleUpdate(BotTenant tenant, Update update) {
+        final Integer sender = update.hasMessage() && update.getMessage().getFrom() != null ?
+                update.getMessage().getFrom().getId() : null;
+        final long chatId = UpdateDispatcher.chatIdOf(update);
+        try {
+            actionScheduler.submit(chatId, sender, collectActions(tenant, update, false,
+                    actions -> actionScheduler.submit(chatId, sender, actions)));
+        } finally {
+            updateWatermark.advance(tenant.getName(), update.getUpdateId());
+        }
+    }
 
+    /**
+     * Runs the strategies for an update the bot of the tenant received and returns the actions to send.
+     * In catch-up mode informational replies are left out, they would be stale. Actions decided later for the
+     * update go to the follow-ups.
+     */
+    ArrayList<BotApiMethod> collectActions(BotTenant tenant, Update update, boolean catchUp,
+                                           Consumer<List<BotApiMethod>> followUps) {
+
+        final ArrayList<BotApiMethod> commands = new ArrayList<>();
         try {
             if (update.hasCallbackQuery()) {
-                try {
-                    final CallbackQuery query = update.getCallbackQuery();
-                    final String callbackData = query.getData();
-                    if (callbackData != null) {
-                        final String[] arg = callbackData.split(",");
-                        final String action = arg[0];
-                        final long feedbackId = Long.parseLong(arg[1]);
-                        final Optional<Feedback> feedbackOpt = feedbackRepository.findById(feedbackId);
-                        feedbackOpt.ifPresent(feedback -> {
-                            if (action.equals(FeedbackAction.BAN.getAction())) {
-                                if (!feedback.getData().equals(""))
-                                    blackListRepository.save(new Blacklist(feedback.getData()));
-                                try {
-                                    KickChatMember ban = new KickChatMember();
-                                    ban.setUserId(feedback.getUserId());
-                                    ban.setChatId(feedback.getChatId());
-                                    ban.setUntilDate(new BigDecimal(Instant.now().getEpochSecond()).intValue());
-                                    execute(ban);
-                                } catch (Exception e) {
-                                    log.info("Cant ban User with id " + feedback.getUserId());
+                final CallbackQuery query = update.getCallbackQuery();
+                final String callbackData = query.getData();
+                final List<Long> answered = new ArrayList<>();
+                if (callbackData != null) {
+                    final String[] arg = callbackData.split(",");
+                    final String action = arg[0];
+                    final boolean valid = (arg.length == 2 || arg.length == 3) && FEEDBACK_ID.matcher(arg[1]).matches();
+                    if (valid && arg.length == 3 && action.equals(ReviewDigest.PAGE) && query.getMessage() != null &&
+                            FEEDBACK_ID.matcher(arg[2]).matches() && arg[2].length() < 10 &&
+                            reviewDigest.page(Long.parseLong(arg[1]), Integer.parseInt(arg[2]),
+                                    tenant.getVerification(), query.getMessage().getMessageId(), commands)) {
+                        return commands;
+                    }
+                    if (!ownsCallback(tenant, arg, valid)) return commands;
+                    if (valid && arg.length == 2) {
+                        answered.add(Long.parseLong(arg[1]));
+                    } else if (valid && ReviewDigest.GROUP.equals(arg[2])) {
+                        answered.addAll(reviewDigest.group(Long.parseLong(arg[1])));
+                    }
+                    final Map<String, KickChatMember> bans = new LinkedHashMap<>();
+                    for (Long feedbackId : new ArrayList<>(answered)) moderationStore.findFeedback(feedbackId).ifPresent(feedback -> {
+                        if (action.equals(FeedbackAction.BAN.getAction())) {
+                            addBan(feedback, bans);
+                            if (!feedback.getData().equals("")) {
+                                blacklistIndex.add(feedback.getData());
+                            }
+                            if (BlacklistIndex.identifiesContent(feedback.getData(), sharedHosts)) {
+                                // everybody else waiting for review with the same content is banned as well
+                                final List<Feedback> same = moderationStore.takeFeedbackWithData(feedback.getData());
+                                if (!same.isEmpty()) {
+                                    log.info("Banning " + same.size() + " more users waiting for review with " +
+                                            feedback.getData());
+                                }
+                                for (Feedback other : same) {
+                                    addBan(other, bans);
+                                    answered.add(other.getFeedbackId());
                                 }
-                            } else if (action.equals(FeedbackAction.WHITELIST.getAction())) {
-                                tgUserRepository.save(new TGUser(feedback.getUserId(), 0, true));
-                                log.info("Whitelist user with id " + feedback.getUserId());
-                            } else if (callbackData.equals(FeedbackAction.IGNORE.getAction())){
-                                log.info("Ignore feedback");
                             }
-                            feedbackRepository.delete(feedback);
-                        });
+                        } else if (action.equals(FeedbackAction.WHITELIST.getAction())) {
+                            tgUserCache.save(new TGUser(feedback.getUserId(), 0, true));
+                            log.info("Whitelist user with id " + feedback.getUserId());
+                        } else if (callbackData.equals(FeedbackAction.IGNORE.getAction())){
+                            log.info("Ignore feedback");
+                        }
+                        moderationStore.deleteFeedback(feedback);
+                    });
+                    if (bans.size() == 1) {
+                        commands.addAll(bans.values());
+                    } else if (bans.size() > 1) {
+                        log.info("Bulk ban of " + bans.size() + " users sharing the banned content");
+                        final List<Integer> subjects = new ArrayList<>();
+                        for (KickChatMember ban : bans.values()) subjects.add(ban.getUserId());
+                        actionScheduler.submitIndependent(new ArrayList<>(bans.values()), subjects);
                     }
-                    execute(new DeleteMessage(verification, query.getMessage().getMessageId()));
-                } catch (Exception e) {
-                    log.error("Error in Callback");
-                    log.error(e.getMessage());
+                }
+                if (query.getMessage() != null && !reviewDigest.answered(tenant.getVerification(),
+                        query.getMessage().getMessageId(), answered, commands)) {
+                    commands.add(new DeleteMessage(tenant.getVerification(), query.getMessage().getMessageId()));
                 }
             }
 
-            if (update.getMessage() != null) {
+            final MessageContext context = MessageContext.of(update);
+            if (context != null) {
 
-                final long chatId = update.getMessage().getChatId();
-                final int fromUser = update.getMessage().getFrom().getId();
+                final long chatId = context.getChatId();
+                final int fromUser = context.getUserId();
 
-                if (verification == chatId && whitelist.contains(fromUser)) {
-                    whitelistStrategy.runStrategy(update);
-                } else if (chat.contains(chatId)) {
+                if (!clusterPartition.owns(chatId)) {
+                    return commands;
+                } else if (tenant.getVerification() == chatId && tenant.isWhitelisted(fromUser)) {
+                    whitelistStrategy.runStrategy(context);
+                } else if (tenant.isMonitored(chatId)) {
 
-                    final ArrayList<BotApiMethod> commands = new ArrayList<>(infoCommand.runStrategy(update));
+                    if (!catchUp) {
+                        commands.addAll(infoCommand.runStrategy(context));
+                    }
 
-                    if (whitelist.contains(fromUser)) {
-                        if (update.hasMessage()) {
-                            commands.addAll(runCommand.runStrategy(update));
-                        }
+                    if (tenant.isWhitelisted(fromUser)) {
+                        commands.addAll(runCommand.runStrategy(context));
                     } else {
-                        commands.addAll(deleteLinks.runStrategy(update));
+                        final Optional<TGUser> user = tgUserCache.findById(fromUser);
+                        commands.addAll(moderation.run(context.withUser(user.map(TGUser::isTrusted).orElse(false),
+                                user.map(TGUser::getCount).orElse(0)).withFollowUps(followUps)));
                     }
-
-                    commands.forEach(command -> {
-                        try {
-                            execute(command);
-                        } catch (TelegramApiException e) {
-                            log.info("Telegram API Exception on execute");
-                        }
-                    });
                 }
             }
         } catch (Exception e) {
-            log.info("Got an unknown message. Ignore");
+            log.error("Could not handle update " + update.getUpdateId(), e);
         }
+        return commands;
+    }
+
+    /**
+     * In a cluster a review is answered by the worker handling the chat of the post, anything else in the
+     * verification chat by the worker handling that chat.
+     */
+    private boolean ownsCallback(final BotTenant tenant, final String[] arg, final boolean valid) {
+        if (!clusterPartition.isEnabled()) return true;
+        if (valid && arg[0].equals(ReviewDigest.PAGE)) return false;
+        if (valid) {
+            final Optional<Feedback> feedback = moderationStore.findFeedback(Long.parseLong(arg[1]));
+            if (feedback.isPresent()) return clusterPartition.owns(feedback.get().getChatId());
+        }
+        return clusterPartition.owns(tenant.getVerification());
+    }
+
+    private static void addBan(final Feedback feedback, final Map<String, KickChatMember> bans) {
+        bans.putIfAbsent(feedback.getChatId() + ":" + feedback.getUserId(),
+                Bans.banForGood(feedback.getUserId(), feedback.getChatId()));
+    }
+
+    private static DefaultBotOptions botOptions(final int outboundThreads) {
+        final DefaultBotOptions options = new DefaultBotOptions();
+        options.setMaxThreads(Math.max(1, outboundThreads));
+        return options;
     }
 }
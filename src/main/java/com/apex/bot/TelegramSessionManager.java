@@ -24,17 +24,31 @@
 
 package com.apex.bot;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.telegram.telegrambots.ApiContextInitializer;
+import org.telegram.telegrambots.bots.TelegramLongPollingBot;
 import org.telegram.telegrambots.meta.TelegramBotsApi;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
 import org.telegram.telegrambots.meta.generics.BotSession;
 import org.telegram.telegrambots.meta.generics.LongPollingBot;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
 public class TelegramSessionManager implements IRunWithOwnThread {
 
-    private BotSession session;
+    private final List<BotSession> sessions = new ArrayList<>();
+    private WebhookServer webhook;
     private final TelegramBotsApi botsApi;
     private final Logger log = LoggerFactory.getLogger(this.getClass());
 
@@ -45,22 +59,78 @@ public class TelegramSessionManager implements IRunWithOwnThread {
 
     public void addPollingBot(LongPollingBot bot){
         try {
-            session = this.botsApi.registerBot(bot);
+            sessions.add(this.botsApi.registerBot(bot));
         } catch (TelegramApiRequestException e) {
             log.error("Telegram Api bot registration failed" + e.getApiResponse());
         }
     }
 
+    /**
+     * Receives the updates of the bot through the given webhook server instead of long polling, and
+     * registers the public url at Telegram if one is given.
+     */
+    public void addWebhookBot(TelegramLongPollingBot bot, WebhookServer server, String publicUrl){
+        addWebhookBot(bot, server, "", publicUrl);
+    }
+
+    /**
+     * Receives the updates of one of several bots at the webhook path followed by the suffix.
+     */
+    public void addWebhookBot(TelegramLongPollingBot bot, WebhookServer server, String pathSuffix, String publicUrl){
+        server.addBot(pathSuffix, bot);
+        webhook = server;
+        if(publicUrl != null && !publicUrl.isEmpty()){
+            setWebhook(bot, publicUrl, server.getSecret());
+        }
+    }
+
+    /**
+     * Registers the webhook with its secret token, which the bundled client does not know about yet.
+     */
+    private void setWebhook(TelegramLongPollingBot bot, String url, String secret){
+        try {
+            final HttpURLConnection connection = (HttpURLConnection) new URL(bot.getOptions().getBaseUrl() +
+                    bot.getBotToken() + "/setWebhook").openConnection();
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+            final String form = "url=" + URLEncoder.encode(url, StandardCharsets.UTF_8) +
+                    "&secret_token=" + URLEncoder.encode(secret, StandardCharsets.UTF_8);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(form.getBytes(StandardCharsets.UTF_8));
+            }
+            final InputStream body = connection.getResponseCode() < 400 ? connection.getInputStream() : connection.getErrorStream();
+            final JsonNode response = new ObjectMapper().readTree(body);
+            if (!response.path("ok").asBoolean()) {
+                log.error("Telegram Api webhook registration failed " + response.path("description").asText());
+            }
+        } catch (IOException e) {
+            log.error("Telegram Api webhook registration failed", e);
+        }
+    }
+
     @Override
     public void start() {
-        if(session != null && !session.isRunning()){
-            session.start();
+        for(BotSession session : sessions){
+            if(!session.isRunning()){
+                session.start();
+            }
+        }
+        if(webhook != null){
+            webhook.start();
         }
     }
 
     @Override
     public void stop() {
-        session.stop();
+        for(BotSession session : sessions){
+            if(session.isRunning()){
+                session.stop();
+            }
+        }
+        if(webhook != null){
+            webhook.stop();
+        }
     }
 
 }
@@ -0,0 +1,138 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.bot;
+
+import com.apex.ATelegramBot;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The bots served by this process: the one of the bot.* properties and those listed in bot.tenants.
+ * Every chat belongs to one bot, chats of no bot to the first one.
+ */
+@Component
+public class TenantRegistry {
+
+    private static final String PREFIX = "bot.tenants.";
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    @Autowired
+    private Environment environment;
+
+    @Value("${bot.tenants}")
+    private List<String> keys;
+
+    private final List<BotTenant> tenants = new ArrayList<>();
+    private final Map<Long, BotTenant> byChat = new HashMap<>();
+    private final Map<BotTenant, ATelegramBot> bots = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void load() {
+        add(new BotTenant("", environment.getRequiredProperty("bot.name"), environment.getRequiredProperty("bot.token"),
+                longs("bot.chat"), environment.getRequiredProperty("bot.verification", Long.class), ints("bot.whitelist")));
+        for (String key : keys) {
+            if (key.trim().isEmpty()) continue;
+            final String prefix = PREFIX + key.trim() + ".";
+            add(new BotTenant(key.trim(), environment.getRequiredProperty(prefix + "name"),
+                    environment.getRequiredProperty(prefix + "token"), longs(prefix + "chat"),
+                    environment.getRequiredProperty(prefix + "verification", Long.class), ints(prefix + "whitelist")));
+        }
+        if (tenants.size() > 1) log.info("Serving " + tenants.size() + " bots");
+    }
+
+    public List<BotTenant> getTenants() {
+        return Collections.unmodifiableList(tenants);
+    }
+
+    public BotTenant getPrimary() {
+        return tenants.get(0);
+    }
+
+    public BotTenant forChat(final long chatId) {
+        return byChat.getOrDefault(chatId, getPrimary());
+    }
+
+    /**
+     * Sets the bot that receives the updates and sends the actions of the tenant.
+     */
+    public void attach(final BotTenant tenant, final ATelegramBot bot) {
+        bots.put(tenant, bot);
+    }
+
+    public ATelegramBot getBot(final BotTenant tenant) {
+        return bots.get(tenant);
+    }
+
+    /**
+     * The bot that sends actions into the chat, null if none is attached.
+     */
+    public ATelegramBot senderFor(final String chatId) {
+        BotTenant tenant = getPrimary();
+        try {
+            tenant = forChat(Long.parseLong(chatId));
+        } catch (NumberFormatException | NullPointerException e) {
+            // channel usernames and missing chats are sent by the first bot
+        }
+        return bots.get(tenant);
+    }
+
+    private void add(final BotTenant tenant) {
+        final List<Long> chats = new ArrayList<>(tenant.getChats());
+        chats.add(tenant.getVerification());
+        for (Long chat : chats) {
+            final BotTenant other = byChat.putIfAbsent(chat, tenant);
+            if (other != null && other != tenant) {
+                throw new IllegalStateException("Chat " + chat + " is configured for both bot " + other.getName() +
+                        " and bot " + tenant.getName());
+            }
+        }
+        tenants.add(tenant);
+    }
+
+    private List<Long> longs(final String property) {
+        final Long[] values = environment.getProperty(property, Long[].class, new Long[0]);
+        return new ArrayList<>(Arrays.asList(values));
+    }
+
+    private List<Integer> ints(final String property) {
+        final Integer[] values = environment.getProperty(property, Integer[].class, new Integer[0]);
+        return new ArrayList<>(Arrays.asList(values));
+    }
+
+}
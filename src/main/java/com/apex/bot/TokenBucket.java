@@ -0,0 +1,75 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.bot;
+
+/**
+ * Classic token bucket, refilled continuously up to its capacity.
+ */
+class TokenBucket {
+
+    private final double capacity;
+    private final double tokensPerNano;
+    private double tokens;
+    private long lastRefill;
+    private long blockedUntil;
+
+    TokenBucket(final double capacity, final double tokensPerSecond, final long now) {
+        this.capacity = capacity;
+        this.tokensPerNano = tokensPerSecond / 1_000_000_000d;
+        this.tokens = capacity;
+        this.lastRefill = now;
+    }
+
+    /**
+     * @return 0 if a token is available right now, otherwise the nanos to wait for the next one
+     */
+    synchronized long delay(final long now) {
+        if (now < blockedUntil) return blockedUntil - now;
+        refill(now);
+        if (tokens >= 1d) return 0L;
+        return (long) Math.ceil((1d - tokens) / tokensPerNano);
+    }
+
+    synchronized void take(final long now) {
+        refill(now);
+        tokens -= 1d;
+    }
+
+    /**
+     * Empties the bucket until the given time, used when Telegram answers with retry_after.
+     */
+    synchronized void block(final long until) {
+        blockedUntil = Math.max(blockedUntil, until);
+        tokens = 0d;
+        lastRefill = Math.max(lastRefill, until);
+    }
+
+    private void refill(final long now) {
+        if (now <= lastRefill) return;
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+        lastRefill = now;
+    }
+
+}
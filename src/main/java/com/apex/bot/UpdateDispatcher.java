@@ -0,0 +1,136 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.bot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Hands updates to single threaded workers picked by chat id, so each chat is processed in order.
+ * Blocks the polling thread while a worker queue is full. Updates dispatched while the dispatcher is
+ * not running are rejected, they are left to redelivery.
+ */
+public class UpdateDispatcher implements IRunWithOwnThread {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private final int threads;
+    private final int queueDepth;
+    private volatile ThreadPoolExecutor[] stripes;
+
+    public UpdateDispatcher(final int threads, final int queueDepth) {
+        this.threads = Math.max(1, threads);
+        this.queueDepth = Math.max(1, queueDepth);
+    }
+
+    /**
+     * @throws RejectedExecutionException if the dispatcher is not running
+     */
+    public void dispatch(final Update update, final Consumer<Update> handler) {
+        final ThreadPoolExecutor[] current = stripes;
+        if (current == null) throw new RejectedExecutionException("Update dispatcher is not running");
+        current[stripeOf(chatIdOf(update))].execute(() -> {
+            try {
+                handler.accept(update);
+            } catch (Exception e) {
+                log.error("Update " + update.getUpdateId() + " failed in dispatch", e);
+            }
+        });
+    }
+
+    @Override
+    public synchronized void start() {
+        if (stripes != null) return;
+        final AtomicInteger counter = new AtomicInteger();
+        final ThreadPoolExecutor[] created = new ThreadPoolExecutor[threads];
+        for (int i = 0; i < threads; i++) {
+            created[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(queueDepth),
+                    runnable -> {
+                        final Thread thread = new Thread(runnable, "update-worker-" + counter.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    },
+                    (runnable, executor) -> {
+                        if (executor.isShutdown()) throw new RejectedExecutionException("Update dispatcher is stopping");
+                        try {
+                            executor.getQueue().put(runnable);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new RejectedExecutionException("Interrupted while waiting for a worker", e);
+                        }
+                        // the worker may have drained the queue and quit while we waited for room
+                        if (executor.isShutdown() && executor.getQueue().remove(runnable)) {
+                            throw new RejectedExecutionException("Update dispatcher is stopping");
+                        }
+                    });
+        }
+        stripes = created;
+        log.info("Update dispatcher started with " + threads + " workers and queue depth " + queueDepth);
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (stripes == null) return;
+        final ThreadPoolExecutor[] running = stripes;
+        stripes = null;
+        for (ThreadPoolExecutor stripe : running) stripe.shutdown();
+        try {
+            for (ThreadPoolExecutor stripe : running) stripe.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        int stranded = 0;
+        for (ThreadPoolExecutor stripe : running) {
+            final List<Runnable> left = stripe.shutdownNow();
+            stranded += left.size();
+        }
+        if (stranded > 0) log.warn(stranded + " updates were not handled before stop, they are left to redelivery");
+    }
+
+    private int stripeOf(final long chatId) {
+        final int h = Long.hashCode(chatId) * 0x9E3779B9;
+        return Math.floorMod(h ^ (h >>> 16), threads);
+    }
+
+    public static long chatIdOf(final Update update) {
+        Message message = null;
+        if (update.hasMessage()) message = update.getMessage();
+        else if (update.hasCallbackQuery()) message = update.getCallbackQuery().getMessage();
+        else if (update.hasEditedMessage()) message = update.getEditedMessage();
+        return message != null && message.getChatId() != null ? message.getChatId() : 0L;
+    }
+
+}
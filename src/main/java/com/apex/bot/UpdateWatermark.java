@@ -0,0 +1,175 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.bot;
+
+import com.apex.cluster.ClusterPartition;
+import com.apex.entities.UpdateOffset;
+import com.apex.repository.IUpdateOffsetRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The highest update id per bot below which every update was processed, saved every few seconds and on
+ * shutdown so a restart can skip updates handed out again.
+ */
+@Component
+public class UpdateWatermark implements IRunWithOwnThread {
+
+    /**
+     * Telegram picks a random next update id after a week without updates, so only ids shortly
+     * below the watermark are treated as already processed.
+     */
+    private static final int REDELIVERY_WINDOW = 10_000;
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    @Autowired
+    private IUpdateOffsetRepository updateOffsetRepository;
+
+    @Autowired
+    private TenantRegistry tenantRegistry;
+
+    @Autowired
+    private ClusterPartition clusterPartition;
+
+    @Value("${bot.catchup.flush-interval}")
+    private long flushInterval;
+
+    private final Map<String, Mark> marks = new HashMap<>();
+    private ScheduledExecutorService flusher;
+
+    static final class Mark {
+
+        private final TreeSet<Integer> running = new TreeSet<>();
+        private int received;
+        private int processed;
+        private volatile int persisted;
+        private final int loaded;
+
+        Mark(final int loaded) {
+            this.loaded = loaded;
+            this.persisted = loaded;
+            this.received = loaded;
+            this.processed = loaded;
+        }
+
+        synchronized void begin(final int updateId) {
+            running.add(updateId);
+            received = Math.max(received, updateId);
+        }
+
+        /**
+         * Every update up to the highest one received is done, except those still running.
+         */
+        synchronized void done(final int updateId) {
+            running.remove(updateId);
+            received = Math.max(received, updateId);
+            processed = running.isEmpty() ? received : Math.min(received, running.first() - 1);
+        }
+
+        synchronized int processed() {
+            return processed;
+        }
+
+    }
+
+    @PostConstruct
+    public void load() {
+        for (BotTenant tenant : tenantRegistry.getTenants()) {
+            marks.put(tenant.getName(), new Mark(updateOffsetRepository.findById(offsetKey(tenant.getName()))
+                    .map(UpdateOffset::getLastUpdateId).orElse(0)));
+        }
+    }
+
+    /**
+     * @return true if the update was already processed by the bot before the last restart
+     */
+    public boolean isHandled(final String botName, final Integer updateId) {
+        final Mark mark = marks.get(botName);
+        return mark != null && updateId != null && updateId <= mark.loaded && mark.loaded - updateId < REDELIVERY_WINDOW;
+    }
+
+    /**
+     * Called when the update is handed to a dispatch thread, it holds the watermark back until it is done.
+     */
+    public void begin(final String botName, final Integer updateId) {
+        final Mark mark = marks.get(botName);
+        if (mark != null && updateId != null) mark.begin(updateId);
+    }
+
+    public void advance(final String botName, final Integer updateId) {
+        final Mark mark = marks.get(botName);
+        if (mark != null && updateId != null) mark.done(updateId);
+    }
+
+    @Override
+    public synchronized void start() {
+        if (flusher != null) return;
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "update-watermark");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (flusher == null) return;
+        flusher.shutdown();
+        flusher = null;
+        flush();
+    }
+
+    private void flush() {
+        for (Map.Entry<String, Mark> entry : marks.entrySet()) {
+            final Mark mark = entry.getValue();
+            final int current = mark.processed();
+            if (current == mark.persisted) continue;
+            try {
+                updateOffsetRepository.save(new UpdateOffset(offsetKey(entry.getKey()), current));
+                mark.persisted = current;
+            } catch (Exception e) {
+                log.error("Could not persist update offset " + current + " of " + entry.getKey(), e);
+            }
+        }
+    }
+
+    private String offsetKey(final String botName) {
+        return clusterPartition.isEnabled() ? botName + "@" + clusterPartition.getNode() : botName;
+    }
+
+}
@@ -0,0 +1,167 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.bot;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.generics.LongPollingBot;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Embedded HTTP endpoint for the updates Telegram posts to the webhook, one path per bot.
+ * Posts without the secret token are rejected.
+ */
+public class WebhookServer implements IRunWithOwnThread {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private final ObjectMapper mapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private static final String SECRET_HEADER = "X-Telegram-Bot-Api-Secret-Token";
+
+    private final String bind;
+    private final int port;
+    private final String path;
+    private final int threads;
+    private final String secret;
+    private final Map<String, LongPollingBot> bots = new LinkedHashMap<>();
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public WebhookServer(final String bind, final int port, final String path, final int threads, final String secret) {
+        this.bind = bind;
+        this.port = port;
+        this.path = path.startsWith("/") ? path : "/" + path;
+        this.threads = Math.max(1, threads);
+        if (secret == null || secret.isEmpty()) {
+            final byte[] random = new byte[24];
+            new SecureRandom().nextBytes(random);
+            final StringBuilder generated = new StringBuilder();
+            for (byte b : random) generated.append(String.format("%02x", b));
+            this.secret = generated.toString();
+            log.warn("bot.webhook.secret is empty, only a webhook registered through bot.webhook.url gets the generated secret");
+        } else {
+            this.secret = secret;
+        }
+    }
+
+    public String getSecret() {
+        return secret;
+    }
+
+    public void setBot(final LongPollingBot bot) {
+        addBot("", bot);
+    }
+
+    /**
+     * Receives the updates posted to the webhook path followed by the suffix for the bot.
+     */
+    public synchronized void addBot(final String suffix, final LongPollingBot bot) {
+        bots.put(path + suffix, bot);
+        if (server != null) server.createContext(path + suffix, exchange -> handle(bot, exchange));
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    @Override
+    public synchronized void start() {
+        if (server != null) return;
+        try {
+            executor = Executors.newFixedThreadPool(threads);
+            server = HttpServer.create(new InetSocketAddress(bind, port), 0);
+            for (Map.Entry<String, LongPollingBot> bot : bots.entrySet()) {
+                server.createContext(bot.getKey(), exchange -> handle(bot.getValue(), exchange));
+            }
+            server.setExecutor(executor);
+            server.start();
+            log.info("Webhook listening on " + bind + ":" + port + " at " + bots.keySet());
+        } catch (IOException e) {
+            log.error("Webhook server could not be started on port " + port, e);
+            executor.shutdown();
+            server = null;
+        }
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (server == null) return;
+        server.stop(1);
+        executor.shutdown();
+        server = null;
+    }
+
+    private void handle(final LongPollingBot bot, final HttpExchange exchange) throws IOException {
+        try {
+            if (!"POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            final String token = exchange.getRequestHeaders().getFirst(SECRET_HEADER);
+            if (token == null || !MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8),
+                    secret.getBytes(StandardCharsets.UTF_8))) {
+                exchange.sendResponseHeaders(403, -1);
+                return;
+            }
+            final Update update;
+            try (InputStream body = exchange.getRequestBody()) {
+                update = mapper.readValue(body, Update.class);
+            } catch (IOException e) {
+                log.info("Webhook got an unreadable update: " + e.getMessage());
+                exchange.sendResponseHeaders(400, -1);
+                return;
+            }
+            try {
+                bot.onUpdateReceived(update);
+            } catch (RejectedExecutionException e) {
+                // Telegram posts it again
+                exchange.sendResponseHeaders(503, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(200, -1);
+        } finally {
+            exchange.close();
+        }
+    }
+
+}
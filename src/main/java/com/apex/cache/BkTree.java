@@ -0,0 +1,112 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.cache;
+
+import com.apex.media.PerceptualHash;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * BK-tree of 64 bit hashes under the Hamming distance. Not thread safe.
+ */
+public class BkTree {
+
+    private Node root;
+    private int size;
+
+    public boolean add(final long hash) {
+        if (root == null) {
+            root = new Node(hash);
+            size++;
+            return true;
+        }
+        Node node = root;
+        while (true) {
+            final int distance = PerceptualHash.distance(node.hash, hash);
+            if (distance == 0) return false;
+            if (node.children == null) node.children = new Node[65];
+            final Node child = node.children[distance];
+            if (child == null) {
+                node.children[distance] = new Node(hash);
+                size++;
+                return true;
+            }
+            node = child;
+        }
+    }
+
+    /**
+     * Whether a hash within the radius is in the tree.
+     */
+    public boolean containsWithin(final long hash, final int radius) {
+        if (root == null) return false;
+        final Deque<Node> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            final Node node = pending.pop();
+            final int distance = PerceptualHash.distance(node.hash, hash);
+            if (distance <= radius) return true;
+            if (node.children == null) continue;
+            final int from = Math.max(1, distance - radius);
+            final int to = Math.min(64, distance + radius);
+            for (int d = from; d <= to; d++) {
+                if (node.children[d] != null) pending.push(node.children[d]);
+            }
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long[] toArray() {
+        final long[] hashes = new long[size];
+        int n = 0;
+        if (root == null) return hashes;
+        final Deque<Node> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            final Node node = pending.pop();
+            hashes[n++] = node.hash;
+            if (node.children == null) continue;
+            for (Node child : node.children) if (child != null) pending.push(child);
+        }
+        return hashes;
+    }
+
+    private static final class Node {
+
+        private final long hash;
+        private Node[] children;
+
+        private Node(final long hash) {
+            this.hash = hash;
+        }
+
+    }
+
+}
@@ -0,0 +1,432 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.cache;
+
+import com.apex.addition.CanonicalLink;
+import com.apex.addition.Fingerprint;
+import com.apex.store.IBlacklistVisitor;
+import com.apex.store.IModerationStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * In memory copy of the blacklist: fingerprints behind a bloom filter, link rules in a {@link LinkTrie},
+ * image and text hashes in {@link BkTree}s.
+ */
+@Component
+public class BlacklistIndex {
+
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+    private static final String FINGERPRINT_PREFIX = "fp:";
+    private static final String LINK_PREFIX = "url:";
+    private static final String IMAGE_PREFIX = "img:";
+    private static final String TEXT_PREFIX = "txt:";
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    @Autowired
+    private IModerationStore moderationStore;
+
+    @Value("${blacklist.legacy-crc}")
+    private boolean matchLegacy;
+
+    @Value("${blacklist.image-distance}")
+    private int imageDistance;
+
+    @Value("${duplicate.distance}")
+    private int textDistance;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile Entries entries = new Entries();
+    private volatile boolean hasLegacy;
+    private volatile Consumer<String> listener;
+
+    /**
+     * The feedback data for blacklisting content with this fingerprint.
+     */
+    public static String feedbackData(final long fingerprint) {
+        return FINGERPRINT_PREFIX + Long.toHexString(fingerprint);
+    }
+
+    /**
+     * The feedback data for blacklisting every link matching the rule.
+     */
+    public static String feedbackData(final CanonicalLink rule) {
+        return LINK_PREFIX + rule;
+    }
+
+    /**
+     * The feedback data for blacklisting images similar to the one with this perceptual hash.
+     */
+    public static String imageFeedbackData(final long hash) {
+        return IMAGE_PREFIX + Long.toHexString(hash);
+    }
+
+    /**
+     * The feedback data for blacklisting texts similar to the one with this SimHash.
+     */
+    public static String textFeedbackData(final long hash) {
+        return TEXT_PREFIX + Long.toHexString(hash);
+    }
+
+    /**
+     * Whether the feedback data is derived from the content itself, so every post carrying it is the same spam.
+     * Links must carry the rule they would get today, older rules may cover a whole shared host.
+     */
+    public static boolean identifiesContent(final String data, final Collection<String> sharedHosts) {
+        if (data.startsWith(IMAGE_PREFIX) || data.startsWith(TEXT_PREFIX)) return true;
+        if (data.startsWith(FINGERPRINT_PREFIX)) return !data.equals(feedbackData(Fingerprint.of("")));
+        if (!data.startsWith(LINK_PREFIX)) return false;
+        final CanonicalLink rule = CanonicalLink.fromString(data.substring(LINK_PREFIX.length()));
+        final CanonicalLink current = rule == null ? null : rule.blacklistRule(sharedHosts);
+        return current != null && current.toString().equals(rule.toString());
+    }
+
+    /**
+     * Adds everything blacklisted in the store, entries that are already known are kept.
+     */
+    public void load() {
+        warm(moderationStore::forEachBlacklist);
+        final Entries current = entries;
+        log.info("Loaded " + current.fingerprints.size() + " blacklisted fingerprints, " + current.links.size() + " links, " +
+                current.images.size() + " images, " + current.texts.size() + " texts and " + current.legacyCrcs.size() + " legacy hashes");
+    }
+
+    /**
+     * Adds the entries the source passes to the visitor without writing them to the store.
+     */
+    public void warm(final Consumer<IBlacklistVisitor> source) {
+        final Entries staged = new Entries();
+        source.accept(staged.loader());
+        lock.writeLock().lock();
+        try {
+            staged.addAll(entries);
+            staged.rebuildBloom();
+            entries = staged;
+            hasLegacy = staged.legacyCrcs.size() > 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public long[] getFingerprints() {
+        lock.readLock().lock();
+        try {
+            return entries.fingerprints.toArray();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<String> getLinkRules() {
+        lock.readLock().lock();
+        try {
+            return new ArrayList<>(entries.linkRules);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long[] getImageHashes() {
+        lock.readLock().lock();
+        try {
+            return entries.images.toArray();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long[] getTextHashes() {
+        lock.readLock().lock();
+        try {
+            return entries.texts.toArray();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long[] getLegacyCrcs() {
+        lock.readLock().lock();
+        try {
+            return entries.legacyCrcs.toArray();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Whether the content is blacklisted, fingerprint is {@link com.apex.addition.Fingerprint#of(String)} of it.
+     */
+    public boolean isBlacklisted(final String content, final long fingerprint) {
+        if (contains(fingerprint)) return true;
+        if (!matchLegacy || !hasLegacy) return false;
+        final CRC32 crc32 = new CRC32();
+        crc32.update(content.getBytes(StandardCharsets.UTF_8));
+        lock.readLock().lock();
+        try {
+            return entries.legacyCrcs.contains(crc32.getValue());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean isBlacklisted(final CanonicalLink link) {
+        lock.readLock().lock();
+        try {
+            return entries.links.matches(link);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Whether an image within blacklist.image-distance bits of the perceptual hash is blacklisted.
+     */
+    public boolean isImageBlacklisted(final long hash) {
+        lock.readLock().lock();
+        try {
+            return entries.images.containsWithin(hash, imageDistance);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Whether a text within duplicate.distance bits of the SimHash is blacklisted.
+     */
+    public boolean isTextBlacklisted(final long hash) {
+        lock.readLock().lock();
+        try {
+            return entries.texts.containsWithin(hash, textDistance);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean contains(final long fingerprint) {
+        if (!entries.bloom.mightContain(fingerprint)) return false;
+        lock.readLock().lock();
+        try {
+            return entries.fingerprints.contains(fingerprint);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Blacklists what the feedback data refers to, it is only written to the database if it was not blacklisted yet.
+     */
+    public void add(final String data) {
+        final Consumer<String> current = listener;
+        if (add(data, true) && current != null) current.accept(data);
+    }
+
+    /**
+     * Blacklists what another worker of the cluster blacklisted, that worker already wrote it to the shared database.
+     */
+    public void addReplicated(final String data) {
+        add(data, false);
+    }
+
+    /**
+     * Sets the listener that gets the feedback data of every entry newly blacklisted through {@link #add(String)}.
+     */
+    public void setListener(final Consumer<String> listener) {
+        this.listener = listener;
+    }
+
+    private boolean add(final String data, final boolean persist) {
+        if (data.startsWith(LINK_PREFIX)) {
+            final String rule = data.substring(LINK_PREFIX.length());
+            final boolean added;
+            lock.writeLock().lock();
+            try {
+                added = entries.addLinkRule(rule);
+            } finally {
+                lock.writeLock().unlock();
+            }
+            if (added && persist) moderationStore.addLinkBlacklist(rule);
+            return added;
+        } else if (data.startsWith(IMAGE_PREFIX)) {
+            final Long hash = parse(data.substring(IMAGE_PREFIX.length()), 16);
+            if (hash == null || !addSimilar(true, hash)) return false;
+            if (persist) moderationStore.addImageBlacklist(hash);
+        } else if (data.startsWith(TEXT_PREFIX)) {
+            final Long hash = parse(data.substring(TEXT_PREFIX.length()), 16);
+            if (hash == null || !addSimilar(false, hash)) return false;
+            if (persist) moderationStore.addTextBlacklist(hash);
+        } else if (data.startsWith(FINGERPRINT_PREFIX)) {
+            final Long fingerprint = parse(data.substring(FINGERPRINT_PREFIX.length()), 16);
+            if (fingerprint == null || !addFingerprint(fingerprint)) return false;
+            if (persist) moderationStore.addBlacklist(fingerprint);
+        } else {
+            final Long crc = parse(data, 10);
+            if (crc == null || !addLegacy(crc)) return false;
+            if (persist) moderationStore.addLegacyBlacklist(crc);
+        }
+        return true;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            final Entries current = entries;
+            return current.fingerprints.size() + current.legacyCrcs.size() + current.links.size() +
+                    current.images.size() + current.texts.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private boolean addFingerprint(final long fingerprint) {
+        lock.writeLock().lock();
+        try {
+            return entries.addFingerprint(fingerprint);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private boolean addSimilar(final boolean image, final long hash) {
+        lock.writeLock().lock();
+        try {
+            return (image ? entries.images : entries.texts).add(hash);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private boolean addLegacy(final long crc) {
+        lock.writeLock().lock();
+        try {
+            if (!entries.legacyCrcs.add(crc)) return false;
+            hasLegacy = true;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private Long parse(final String value, final int radix) {
+        try {
+            return Long.parseUnsignedLong(value, radix);
+        } catch (NumberFormatException e) {
+            log.info("Ignore blacklist entry with malformed data " + value);
+            return null;
+        }
+    }
+
+    /**
+     * The blacklisted entries, replaced as a whole when they are loaded. Changes are guarded by the write lock
+     * once the entries are in use.
+     */
+    private final class Entries {
+
+        private final LongHashSet fingerprints = new LongHashSet(1024);
+        private final LongHashSet legacyCrcs = new LongHashSet(16);
+        private final LinkTrie links = new LinkTrie();
+        private final List<String> linkRules = new ArrayList<>();
+        private final BkTree images = new BkTree();
+        private final BkTree texts = new BkTree();
+        private volatile BloomFilter bloom = new BloomFilter(1024, FALSE_POSITIVE_RATE);
+
+        private boolean addFingerprint(final long fingerprint) {
+            if (!fingerprints.add(fingerprint)) return false;
+            if (fingerprints.size() > bloom.getCapacity()) rebuildBloom();
+            else bloom.put(fingerprint);
+            return true;
+        }
+
+        private boolean addLinkRule(final String rule) {
+            final CanonicalLink link = CanonicalLink.fromString(rule);
+            if (link == null) {
+                log.info("Ignore blacklist entry with malformed link " + rule);
+                return false;
+            }
+            if (!links.add(link)) return false;
+            linkRules.add(rule);
+            return true;
+        }
+
+        private void addAll(final Entries other) {
+            for (long fingerprint : other.fingerprints.toArray()) fingerprints.add(fingerprint);
+            for (long crc : other.legacyCrcs.toArray()) legacyCrcs.add(crc);
+            other.linkRules.forEach(this::addLinkRule);
+            for (long hash : other.images.toArray()) images.add(hash);
+            for (long hash : other.texts.toArray()) texts.add(hash);
+        }
+
+        private void rebuildBloom() {
+            final BloomFilter rebuilt = new BloomFilter(Math.max(1024, fingerprints.size() * 2), FALSE_POSITIVE_RATE);
+            for (long fingerprint : fingerprints.toArray()) rebuilt.put(fingerprint);
+            bloom = rebuilt;
+        }
+
+        private IBlacklistVisitor loader() {
+            return new IBlacklistVisitor() {
+
+                @Override
+                public void fingerprint(final long fingerprint) {
+                    fingerprints.add(fingerprint);
+                }
+
+                @Override
+                public void legacyCrc(final long crc) {
+                    legacyCrcs.add(crc);
+                }
+
+                @Override
+                public void linkRule(final String rule) {
+                    addLinkRule(rule);
+                }
+
+                @Override
+                public void imageHash(final long hash) {
+                    images.add(hash);
+                }
+
+                @Override
+                public void textHash(final long hash) {
+                    texts.add(hash);
+                }
+
+            };
+        }
+
+    }
+
+}
@@ -0,0 +1,185 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.cache;
+
+import com.apex.media.PerceptualHash;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Recent messages indexed by SimHash bands to find near-identical texts posted by different users.
+ */
+public class DuplicateTextIndex {
+
+    private static final int MAX_DISTANCE = 7;
+
+    private final long windowMillis;
+    private final int maxDistance;
+    private final int bucketSize;
+    private final int bands;
+    private final List<Map<Long, ArrayDeque<Entry>>> buckets = new ArrayList<>();
+    private final ArrayDeque<Entry> byAge = new ArrayDeque<>();
+
+    public DuplicateTextIndex(final long windowMillis, final int maxDistance, final int bucketSize) {
+        this.windowMillis = windowMillis;
+        this.maxDistance = Math.max(0, Math.min(maxDistance, MAX_DISTANCE));
+        this.bucketSize = bucketSize;
+        this.bands = this.maxDistance + 1;
+        for (int band = 0; band < bands; band++) buckets.add(new HashMap<>());
+    }
+
+    /**
+     * Adds a message and returns the cluster of similar messages it joined.
+     */
+    public synchronized Cluster add(final long hash, final int userId, final long chatId, final int messageId,
+                                    final long nowMillis) {
+        evict(nowMillis);
+        Cluster cluster = null;
+        for (int band = 0; band < bands; band++) {
+            final ArrayDeque<Entry> bucket = buckets.get(band).get(bandKey(hash, band));
+            if (bucket == null) continue;
+            for (Entry entry : bucket) {
+                if (PerceptualHash.distance(entry.hash, hash) > maxDistance) continue;
+                if (cluster == null || (entry.cluster.reported && !cluster.reported)) cluster = entry.cluster;
+            }
+        }
+        if (cluster == null) cluster = new Cluster();
+        final Entry added = new Entry(hash, userId, chatId, messageId, nowMillis, cluster);
+        cluster.entries.add(added);
+        byAge.addLast(added);
+        for (int band = 0; band < bands; band++) {
+            final ArrayDeque<Entry> bucket = buckets.get(band).computeIfAbsent(bandKey(hash, band), key -> new ArrayDeque<>());
+            if (bucket.size() >= bucketSize) bucket.pollFirst();
+            bucket.addLast(added);
+        }
+        return cluster;
+    }
+
+    /**
+     * Marks the cluster as reported and returns the messages in it, or null if it was reported already.
+     */
+    public synchronized List<Entry> report(final Cluster cluster, final String data) {
+        if (cluster.reported) return null;
+        cluster.reported = true;
+        cluster.data = data;
+        return new ArrayList<>(cluster.entries);
+    }
+
+    /**
+     * The feedback data the cluster was reported with, null if it was not reported yet.
+     */
+    public synchronized String dataOf(final Cluster cluster) {
+        return cluster.data;
+    }
+
+    public synchronized int distinctUsers(final Cluster cluster) {
+        final Set<Integer> users = new HashSet<>();
+        for (Entry entry : cluster.entries) users.add(entry.userId);
+        return users.size();
+    }
+
+    /**
+     * Whether the user had a message in the cluster before the latest one.
+     */
+    public synchronized boolean hadUser(final Cluster cluster, final int userId) {
+        for (int i = 0; i < cluster.entries.size() - 1; i++) if (cluster.entries.get(i).userId == userId) return true;
+        return false;
+    }
+
+    private void evict(final long nowMillis) {
+        while (!byAge.isEmpty() && byAge.peekFirst().time < nowMillis - windowMillis) {
+            final Entry expired = byAge.pollFirst();
+            expired.cluster.entries.remove(expired);
+            for (int band = 0; band < bands; band++) {
+                final long key = bandKey(expired.hash, band);
+                final ArrayDeque<Entry> bucket = buckets.get(band).get(key);
+                if (bucket == null) continue;
+                if (bucket.peekFirst() == expired) bucket.pollFirst();
+                else bucket.remove(expired);
+                if (bucket.isEmpty()) buckets.get(band).remove(key);
+            }
+        }
+    }
+
+    /**
+     * The bits of the band, each band has buckets of its own. With a single band it is the whole hash.
+     */
+    private long bandKey(final long hash, final int band) {
+        final int from = band * 64 / bands;
+        final int width = (band + 1) * 64 / bands - from;
+        return width == 64 ? hash : (hash >>> from) & ((1L << width) - 1);
+    }
+
+    /**
+     * Similar messages, reported at most once. Only accessed while holding the lock of the index.
+     */
+    public static final class Cluster {
+
+        private final List<Entry> entries = new ArrayList<>();
+        private boolean reported;
+        private String data;
+
+    }
+
+    public static final class Entry {
+
+        private final long hash;
+        private final int userId;
+        private final long chatId;
+        private final int messageId;
+        private final long time;
+        private final Cluster cluster;
+
+        private Entry(final long hash, final int userId, final long chatId, final int messageId, final long time,
+                      final Cluster cluster) {
+            this.hash = hash;
+            this.userId = userId;
+            this.chatId = chatId;
+            this.messageId = messageId;
+            this.time = time;
+            this.cluster = cluster;
+        }
+
+        public int getUserId() {
+            return userId;
+        }
+
+        public long getChatId() {
+            return chatId;
+        }
+
+        public int getMessageId() {
+            return messageId;
+        }
+
+    }
+
+}
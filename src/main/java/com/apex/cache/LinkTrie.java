@@ -0,0 +1,100 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.cache;
+
+import com.apex.addition.CanonicalLink;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Trie of blacklisted links keyed by the host labels from the top level domain down, then the path segments.
+ * A rule matches links on its host or a sub-domain whose path starts with its path, and whose query has at least
+ * the parameters of the rule. Not thread safe.
+ */
+public class LinkTrie {
+
+    private final Node root = new Node();
+    private int size;
+
+    public boolean add(final CanonicalLink rule) {
+        Node node = root;
+        for (String label : rule.getLabels()) node = node.labels.computeIfAbsent(label, key -> new Node());
+        if (!rule.getSegments().isEmpty()) {
+            if (node.path == null) node.path = new Node();
+            node = node.path;
+            for (String segment : rule.getSegments()) node = node.labels.computeIfAbsent(segment, key -> new Node());
+        }
+        if (node.terminal) return false;
+        node.terminal = true;
+        size++;
+        return true;
+    }
+
+    public boolean matches(final CanonicalLink link) {
+        Node node = root;
+        for (String label : link.getLabels()) {
+            node = node.labels.get(label);
+            if (node == null) return false;
+            if (node.terminal) return true;
+        }
+        node = node.path;
+        if (node == null) return false;
+        final List<String> segments = link.getSegments();
+        for (int i = 0; i < segments.size(); i++) {
+            if (segments.get(i).startsWith("?")) return matchesQuery(node, segments, i);
+            node = node.labels.get(segments.get(i));
+            if (node == null) return false;
+            if (node.terminal) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Both the rule and the link have their parameters sorted, so the rule matches if its parameters are
+     * a subsequence of those of the link from the given index on.
+     */
+    private static boolean matchesQuery(final Node node, final List<String> parameters, final int from) {
+        for (int i = from; i < parameters.size(); i++) {
+            final Node next = node.labels.get(parameters.get(i));
+            if (next != null && (next.terminal || matchesQuery(next, parameters, i + 1))) return true;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private static final class Node {
+
+        private final Map<String, Node> labels = new HashMap<>(4);
+        private Node path;
+        private boolean terminal;
+
+    }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.cache;
+
+/**
+ * Open addressing hash set of primitive longs. Not thread safe.
+ */
+public class LongHashSet {
+
+    private static final long FREE = 0L;
+
+    private long[] table;
+    private int size;
+    private boolean containsFree;
+
+    public LongHashSet(final int expected) {
+        table = new long[tableSizeFor(expected)];
+    }
+
+    public boolean contains(final long value) {
+        if (value == FREE) return containsFree;
+        final int mask = table.length - 1;
+        for (int i = mix(value) & mask; ; i = (i + 1) & mask) {
+            final long slot = table[i];
+            if (slot == FREE) return false;
+            if (slot == value) return true;
+        }
+    }
+
+    public boolean add(final long value) {
+        if (value == FREE) {
+            if (containsFree) return false;
+            containsFree = true;
+            size++;
+            return true;
+        }
+        if ((size + 1) * 2 > table.length) rehash(table.length * 2);
+        final int mask = table.length - 1;
+        for (int i = mix(value) & mask; ; i = (i + 1) & mask) {
+            final long slot = table[i];
+            if (slot == value) return false;
+            if (slot == FREE) {
+                table[i] = value;
+                size++;
+                return true;
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long[] toArray() {
+        final long[] values = new long[size];
+        int n = 0;
+        if (containsFree) values[n++] = FREE;
+        for (long slot : table) if (slot != FREE) values[n++] = slot;
+        return values;
+    }
+
+    private void rehash(final int capacity) {
+        final long[] old = table;
+        table = new long[capacity];
+        final int mask = capacity - 1;
+        for (long value : old) {
+            if (value == FREE) continue;
+            int i = mix(value) & mask;
+            while (table[i] != FREE) i = (i + 1) & mask;
+            table[i] = value;
+        }
+    }
+
+    private static int tableSizeFor(final int expected) {
+        int capacity = 16;
+        while (capacity < expected * 2) capacity <<= 1;
+        return capacity;
+    }
+
+    static int mix(final long value) {
+        long h = value * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 32;
+        return (int) (h ^ (h >>> 16));
+    }
+
+}
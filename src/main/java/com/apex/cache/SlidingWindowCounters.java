@@ -0,0 +1,178 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.cache;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free sliding window message counters per chat and user, packed into longs of fixed arrays.
+ */
+public class SlidingWindowCounters {
+
+    public static final int RECENT = 16;
+
+    private static final int MAX_PROBES = 16;
+    private static final long COUNT_MASK = 0x7FFFL;
+
+    private final AtomicLongArray keys;
+    private final AtomicLongArray values;
+    private final AtomicIntegerArray messages;
+    private final int mask;
+    private final long windowMillis;
+
+    public SlidingWindowCounters(final int capacity, final long windowMillis) {
+        final int size = Integer.highestOneBit(Math.max(16, capacity - 1) << 1);
+        this.keys = new AtomicLongArray(size);
+        this.values = new AtomicLongArray(size);
+        this.messages = new AtomicIntegerArray(size * (RECENT + 1));
+        this.mask = size - 1;
+        this.windowMillis = windowMillis;
+    }
+
+    /**
+     * Counts a message and returns the slot it was counted in, or -1 if no slot was free.
+     */
+    public int record(final long chatId, final int userId, final int messageId, final long nowMillis) {
+        final long key = key(chatId, userId);
+        final long window = nowMillis / windowMillis;
+        final int slot = claim(key, window);
+        if (slot < 0) return -1;
+        while (true) {
+            final long value = values.get(slot);
+            final long shifted = shift(value, window);
+            final long current = Math.min(COUNT_MASK, current(shifted) + 1);
+            final long updated = pack(window, previous(shifted), current, isFlagged(shifted));
+            if (values.compareAndSet(slot, value, updated)) break;
+        }
+        final int base = slot * (RECENT + 1);
+        final int sequence = messages.getAndIncrement(base);
+        messages.set(base + 1 + Math.floorMod(sequence, RECENT), messageId);
+        return slot;
+    }
+
+    /**
+     * The slot counting the messages of the user in the chat, -1 if there is none. Does not claim a slot.
+     */
+    public int find(final long chatId, final int userId) {
+        final long key = key(chatId, userId);
+        int slot = (int) key & mask;
+        for (int probe = 0; probe < MAX_PROBES; probe++, slot = (slot + 1) & mask) {
+            final long owner = keys.get(slot);
+            if (owner == key) return slot;
+            if (owner == 0) return -1;
+        }
+        return -1;
+    }
+
+    /**
+     * Estimated number of messages counted in the slot during the last window length.
+     */
+    public int rate(final int slot, final long nowMillis) {
+        final long window = nowMillis / windowMillis;
+        final long shifted = shift(values.get(slot), window);
+        final double outside = (double) (nowMillis % windowMillis) / windowMillis;
+        return (int) (current(shifted) + previous(shifted) * (1 - outside));
+    }
+
+    /**
+     * Sets the flag of the slot, returns false if it was set already. The flag is cleared once the slot
+     * has been quiet for a whole window.
+     */
+    public boolean flag(final int slot) {
+        while (true) {
+            final long value = values.get(slot);
+            if (isFlagged(value)) return false;
+            if (values.compareAndSet(slot, value, value | 1L)) return true;
+        }
+    }
+
+    /**
+     * The ids of the last messages counted in the slot, at most {@link #RECENT} and at most count.
+     */
+    public int[] recentMessages(final int slot, final int count) {
+        final int base = slot * (RECENT + 1);
+        final int sequence = messages.get(base);
+        final int n = Math.min(Math.min(count, RECENT), Math.max(0, sequence));
+        final int[] recent = new int[n];
+        for (int i = 0; i < n; i++) recent[i] = messages.get(base + 1 + Math.floorMod(sequence - 1 - i, RECENT));
+        return recent;
+    }
+
+    private int claim(final long key, final long window) {
+        int slot = (int) key & mask;
+        for (int probe = 0; probe < MAX_PROBES; probe++, slot = (slot + 1) & mask) {
+            final long owner = keys.get(slot);
+            if (owner == key) return slot;
+            if (owner == 0 || window(values.get(slot)) < window - 1) {
+                if (keys.compareAndSet(slot, owner, key)) {
+                    messages.set(slot * (RECENT + 1), 0);
+                    return slot;
+                }
+                if (keys.get(slot) == key) return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Moves the counts of a slot to the given window, clearing the flag once a window passed without messages.
+     */
+    private static long shift(final long value, final long window) {
+        final long stored = window(value);
+        if (stored == window) return value;
+        if (stored == window - 1) return pack(window, current(value), 0, isFlagged(value));
+        return pack(window, 0, 0, false);
+    }
+
+    private static long pack(final long window, final long previous, final long current, final boolean flagged) {
+        return (window << 32) | (previous << 17) | (current << 2) | (flagged ? 1L : 0L);
+    }
+
+    private static long window(final long value) {
+        return value >>> 32;
+    }
+
+    private static long previous(final long value) {
+        return (value >>> 17) & COUNT_MASK;
+    }
+
+    private static long current(final long value) {
+        return (value >>> 2) & COUNT_MASK;
+    }
+
+    private static boolean isFlagged(final long value) {
+        return (value & 1L) != 0;
+    }
+
+    private static long key(final long chatId, final int userId) {
+        long key = chatId * 0x9E3779B97F4A7C15L ^ userId;
+        key ^= key >>> 33;
+        key *= 0xFF51AFD7ED558CCDL;
+        key ^= key >>> 33;
+        return key == 0 ? 1 : key;
+    }
+
+}
@@ -0,0 +1,225 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.cache;
+
+import com.apex.addition.Fingerprint;
+import com.apex.bot.IRunWithOwnThread;
+import com.apex.entities.TGUser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Binary snapshot of the cached users and the blacklist, written every snapshot.interval seconds and on
+ * {@link #stop()} and restored before the first update.
+ */
+@Component
+public class StateSnapshot implements IRunWithOwnThread {
+
+    private static final int MAGIC = 0x54475353;
+    private static final int VERSION = 4;
+    private static final int HEADER = 4 + 4 + 8 + 4 + 4 + 4 + 4 + 4 + 4;
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    @Autowired
+    private TGUserCache tgUserCache;
+
+    @Autowired
+    private BlacklistIndex blacklistIndex;
+
+    @Value("${snapshot.file}")
+    private String fileName;
+
+    @Value("${snapshot.interval}")
+    private long interval;
+
+    private final Object writeLock = new Object();
+    private ScheduledExecutorService writer;
+    private boolean restored;
+
+    /**
+     * Fills the caches from the snapshot. Without a usable snapshot the blacklist is loaded from the store instead.
+     */
+    public synchronized void restore() {
+        restored = !fileName.isEmpty() && read(Paths.get(fileName));
+        if (!restored) blacklistIndex.load();
+    }
+
+    @Override
+    public synchronized void start() {
+        if (writer != null || fileName.isEmpty()) return;
+        writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "state-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (restored) writer.execute(blacklistIndex::load);
+        if (interval > 0) writer.scheduleWithFixedDelay(this::write, interval, interval, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (writer == null) return;
+        writer.shutdown();
+        try {
+            writer.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writer = null;
+        write();
+    }
+
+    private boolean read(final Path path) {
+        if (!Files.isRegularFile(path)) return false;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (mapped.remaining() < HEADER + 8 || mapped.getInt() != MAGIC || mapped.getInt() != VERSION) {
+                log.warn("Ignore snapshot " + path + ", unknown format");
+                return false;
+            }
+            final long created = mapped.getLong();
+            final int users = mapped.getInt();
+            final int fingerprints = mapped.getInt();
+            final int legacyCrcs = mapped.getInt();
+            final int images = mapped.getInt();
+            final int texts = mapped.getInt();
+            final int linkRules = mapped.getInt();
+            final long entriesEnd = HEADER + 8L * ((long) users + fingerprints + legacyCrcs + images + texts);
+            final int length = mapped.limit() - 8;
+            if (users < 0 || fingerprints < 0 || legacyCrcs < 0 || images < 0 || texts < 0 || linkRules < 0 || entriesEnd > length) {
+                log.warn("Ignore snapshot " + path + ", truncated");
+                return false;
+            }
+            final Fingerprint checksum = new Fingerprint();
+            checksum.update(mapped.duplicate().position(0).limit(length));
+            if (checksum.getValue() != mapped.getLong(length)) {
+                log.warn("Ignore snapshot " + path + ", checksum mismatch");
+                return false;
+            }
+            final LongBuffer entries = mapped.asLongBuffer();
+            for (int i = 0; i < users; i++) tgUserCache.warm(unpack(entries.get()));
+            mapped.position((int) entriesEnd);
+            blacklistIndex.warm(visitor -> {
+                for (int i = 0; i < fingerprints; i++) visitor.fingerprint(entries.get());
+                for (int i = 0; i < legacyCrcs; i++) visitor.legacyCrc(entries.get());
+                for (int i = 0; i < images; i++) visitor.imageHash(entries.get());
+                for (int i = 0; i < texts; i++) visitor.textHash(entries.get());
+                for (int i = 0; i < linkRules; i++) {
+                    final byte[] rule = new byte[mapped.getShort() & 0xFFFF];
+                    mapped.get(rule);
+                    visitor.linkRule(new String(rule, StandardCharsets.UTF_8));
+                }
+            });
+            log.info("Restored " + users + " users, " + fingerprints + " fingerprints, " + linkRules + " links, " +
+                    images + " images, " + texts + " texts and " + legacyCrcs + " legacy hashes from the snapshot taken " +
+                    (System.currentTimeMillis() - created) / 1000 + " s ago");
+            return true;
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not read snapshot " + path, e);
+            return false;
+        }
+    }
+
+    private void write() {
+        synchronized (writeLock) {
+            writeSnapshot();
+        }
+    }
+
+    private void writeSnapshot() {
+        final Path path = Paths.get(fileName);
+        final Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        final List<TGUser> users = tgUserCache.getCachedUsers();
+        final long[] fingerprints = blacklistIndex.getFingerprints();
+        final long[] legacyCrcs = blacklistIndex.getLegacyCrcs();
+        final long[] images = blacklistIndex.getImageHashes();
+        final long[] texts = blacklistIndex.getTextHashes();
+        final List<byte[]> linkRules = new ArrayList<>();
+        int length = HEADER + 8 * (users.size() + fingerprints.length + legacyCrcs.length + images.length + texts.length);
+        for (String rule : blacklistIndex.getLinkRules()) {
+            final byte[] bytes = rule.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > 0xFFFF) continue;
+            linkRules.add(bytes);
+            length += 2 + bytes.length;
+        }
+        final ByteBuffer buffer = ByteBuffer.allocate(length + 8);
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(System.currentTimeMillis())
+                .putInt(users.size()).putInt(fingerprints.length).putInt(legacyCrcs.length).putInt(images.length).putInt(texts.length).putInt(linkRules.size());
+        users.forEach(user -> buffer.putLong(pack(user)));
+        for (long fingerprint : fingerprints) buffer.putLong(fingerprint);
+        for (long crc : legacyCrcs) buffer.putLong(crc);
+        for (long image : images) buffer.putLong(image);
+        for (long text : texts) buffer.putLong(text);
+        for (byte[] rule : linkRules) buffer.putShort((short) rule.length).put(rule);
+        final Fingerprint checksum = new Fingerprint();
+        checksum.update(buffer.duplicate().flip());
+        buffer.putLong(checksum.getValue());
+        buffer.flip();
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) channel.write(buffer);
+            channel.force(false);
+        } catch (IOException e) {
+            log.warn("Could not write snapshot " + temp, e);
+            return;
+        }
+        try {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.debug("Wrote snapshot with " + users.size() + " users and " + fingerprints.length + " fingerprints");
+        } catch (IOException e) {
+            log.warn("Could not replace snapshot " + path, e);
+        }
+    }
+
+    private static long pack(final TGUser user) {
+        return ((long) user.getUserId() << 32) | ((user.getCount() & 0x7FFFFFFFL) << 1) | (user.isTrusted() ? 1L : 0L);
+    }
+
+    private static TGUser unpack(final long packed) {
+        return new TGUser((int) (packed >>> 32), (int) ((packed & 0xFFFFFFFFL) >>> 1), (packed & 1L) != 0);
+    }
+
+}
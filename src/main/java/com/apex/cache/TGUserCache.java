@@ -0,0 +1,212 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.cache;
+
+import com.apex.entities.TGUser;
+import com.apex.store.IModerationStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * Write-through LRU cache in front of the users of the {@link IModerationStore}, unknown users included.
+ */
+@Component
+public class TGUserCache {
+
+    private static final long STATISTICS_EVERY = 100_000;
+    private static final int LOCKS = 64;
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    @Autowired
+    private IModerationStore moderationStore;
+
+    private final int maxSize;
+    private final long ttl;
+    private final Map<Integer, Entry> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final Object[] locks = new Object[LOCKS];
+    private volatile BiConsumer<Integer, TGUser> listener;
+
+    public TGUserCache(@Value("${cache.user.size}") int maxSize, @Value("${cache.user.ttl}") long ttlSeconds) {
+        this.maxSize = maxSize;
+        this.ttl = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        for (int i = 0; i < LOCKS; i++) locks[i] = new Object();
+        this.entries = new LinkedHashMap<>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Entry> eldest) {
+                return size() > TGUserCache.this.maxSize;
+            }
+        };
+    }
+
+    public Optional<TGUser> findById(final int userId) {
+        final long now = System.nanoTime();
+        synchronized (entries) {
+            final Entry entry = entries.get(userId);
+            if (entry != null && now - entry.stamp < ttl) {
+                count(hits);
+                return Optional.ofNullable(copy(entry.user));
+            }
+        }
+        count(misses);
+        final Optional<TGUser> loaded = moderationStore.findUser(userId);
+        synchronized (entries) {
+            final Entry entry = entries.get(userId);
+            if (entry == null || entry.stamp < now) entries.put(userId, new Entry(loaded.orElse(null), now));
+        }
+        return loaded;
+    }
+
+    public boolean isTrusted(final int userId) {
+        return findById(userId).map(TGUser::isTrusted).orElse(false);
+    }
+
+    public TGUser save(final TGUser user) {
+        moderationStore.saveUser(user);
+        store(user.getUserId(), copy(user));
+        changed(user.getUserId(), copy(user));
+        return user;
+    }
+
+    /**
+     * Reads, changes and saves the user, atomic against other updates of the same user. The change gets
+     * null for an unknown user. Returns the saved user.
+     */
+    public TGUser update(final int userId, final UnaryOperator<TGUser> change) {
+        synchronized (locks[Math.floorMod(userId, LOCKS)]) {
+            return save(change.apply(findById(userId).orElse(null)));
+        }
+    }
+
+    public void delete(final TGUser user) {
+        moderationStore.deleteUser(user.getUserId());
+        store(user.getUserId(), null);
+        changed(user.getUserId(), null);
+    }
+
+    /**
+     * Caches a user another worker of the cluster changed, null if it deleted the user.
+     * That worker already wrote the change to the shared database.
+     */
+    public void putReplicated(final int userId, final TGUser user) {
+        store(userId, copy(user));
+    }
+
+    /**
+     * Sets the listener that gets a copy of every saved user, or null with the id of a deleted user.
+     */
+    public void setListener(final BiConsumer<Integer, TGUser> listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Puts a user known from elsewhere, e.g. a snapshot, into the cache unless it is cached already.
+     * It is served like a loaded user until the ttl has passed.
+     */
+    public void warm(final TGUser user) {
+        synchronized (entries) {
+            entries.putIfAbsent(user.getUserId(), new Entry(copy(user), System.nanoTime()));
+        }
+    }
+
+    /**
+     * Copies of the cached known users, least recently used first.
+     */
+    public List<TGUser> getCachedUsers() {
+        final List<TGUser> users = new ArrayList<>();
+        synchronized (entries) {
+            entries.values().forEach(entry -> {
+                if (entry.user != null) users.add(copy(entry.user));
+            });
+        }
+        return users;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private void changed(final int userId, final TGUser user) {
+        final BiConsumer<Integer, TGUser> current = listener;
+        if (current != null) current.accept(userId, user);
+    }
+
+    private void store(final int userId, final TGUser user) {
+        synchronized (entries) {
+            entries.put(userId, new Entry(user, System.nanoTime()));
+        }
+    }
+
+    private void count(final AtomicLong counter) {
+        counter.incrementAndGet();
+        final long h = hits.get();
+        final long m = misses.get();
+        if ((h + m) % STATISTICS_EVERY == 0) {
+            log.info("User cache: " + h + " hits, " + m + " misses, " + size() + " entries");
+        }
+    }
+
+    private static TGUser copy(final TGUser user) {
+        return user == null ? null : new TGUser(user.getUserId(), user.getCount(), user.isTrusted());
+    }
+
+    private static final class Entry {
+
+        private final TGUser user;
+        private final long stamp;
+
+        private Entry(final TGUser user, final long stamp) {
+            this.user = user;
+            this.stamp = stamp;
+        }
+
+    }
+
+}
@@ -0,0 +1,83 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.cluster;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * Splits the chats between the workers of a cluster by chat id modulo cluster.nodes.
+ */
+@Component
+public class ClusterPartition {
+
+    @Value("${cluster.nodes}")
+    private int nodes;
+
+    @Value("${cluster.node}")
+    private int node;
+
+    @Value("${bot.mode}")
+    private String mode;
+
+    @Value("${store.backend}")
+    private String backend;
+
+    @PostConstruct
+    public void check() {
+        if (nodes < 1 || node < 0 || node >= nodes) {
+            throw new IllegalStateException("cluster.node must be between 0 and cluster.nodes - 1, is " + node);
+        }
+        if (!isEnabled()) return;
+        if (!"webhook".equalsIgnoreCase(mode)) {
+            throw new IllegalStateException("A cluster only works in webhook mode, only one worker can poll updates");
+        }
+        if ("mvstore".equalsIgnoreCase(backend)) {
+            throw new IllegalStateException("A cluster needs the jpa store backend on a database shared by all workers");
+        }
+    }
+
+    public boolean isEnabled() {
+        return nodes > 1;
+    }
+
+    public int getNode() {
+        return node;
+    }
+
+    public int getNodes() {
+        return nodes;
+    }
+
+    /**
+     * @return true if this worker handles the chat
+     */
+    public boolean owns(final long chatId) {
+        return nodes <= 1 || Math.floorMod(chatId, nodes) == node;
+    }
+
+}
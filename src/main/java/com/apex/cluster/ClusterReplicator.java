@@ -0,0 +1,138 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.cluster;
+
+import com.apex.bot.IRunWithOwnThread;
+import com.apex.cache.BlacklistIndex;
+import com.apex.cache.TGUserCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes the blacklist and user changes of this worker every cluster.replication.interval milliseconds
+ * and applies those of the other workers to the in memory caches.
+ */
+@Component
+public class ClusterReplicator implements IRunWithOwnThread {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    @Autowired
+    private ClusterPartition clusterPartition;
+
+    @Autowired
+    private IReplicationTransport transport;
+
+    @Autowired
+    private BlacklistIndex blacklistIndex;
+
+    @Autowired
+    private TGUserCache tgUserCache;
+
+    @Value("${cluster.replication.interval}")
+    private long interval;
+
+    private final Queue<ReplicationEvent> outgoing = new ConcurrentLinkedQueue<>();
+    private ScheduledExecutorService publisher;
+
+    @PostConstruct
+    public void listen() {
+        if (!clusterPartition.isEnabled()) return;
+        final int node = clusterPartition.getNode();
+        blacklistIndex.setListener(data -> outgoing.add(ReplicationEvent.blacklist(node, data)));
+        tgUserCache.setListener((userId, user) -> outgoing.add(ReplicationEvent.user(node, userId, user)));
+        transport.setReceiver(this::apply);
+    }
+
+    @Override
+    public synchronized void start() {
+        if (publisher != null || !clusterPartition.isEnabled()) return;
+        transport.start();
+        publisher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "cluster-replicator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        publisher.scheduleWithFixedDelay(this::publish, interval, interval, TimeUnit.MILLISECONDS);
+        log.info("Worker " + clusterPartition.getNode() + " of " + clusterPartition.getNodes() + " started");
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (publisher == null) return;
+        publisher.shutdown();
+        try {
+            publisher.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        publisher = null;
+        publish();
+        transport.stop();
+    }
+
+    private void publish() {
+        final List<ReplicationEvent> events = new ArrayList<>();
+        for (ReplicationEvent event; (event = outgoing.poll()) != null; ) events.add(event);
+        if (events.isEmpty()) return;
+        try {
+            transport.publish(events);
+        } catch (Exception e) {
+            log.error("Could not publish " + events.size() + " changes to the cluster", e);
+        }
+    }
+
+    private void apply(final List<ReplicationEvent> events) {
+        for (ReplicationEvent event : events) {
+            if (event.getOrigin() == clusterPartition.getNode()) continue;
+            try {
+                switch (event.getType()) {
+                    case BLACKLIST:
+                        blacklistIndex.addReplicated(event.getData());
+                        break;
+                    case USER:
+                    case USER_DELETED:
+                        tgUserCache.putReplicated(event.getUserId(), event.getUser());
+                        break;
+                }
+            } catch (Exception e) {
+                log.error("Could not apply a " + event.getType() + " change from worker " + event.getOrigin(), e);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,179 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.cluster;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Carries the events through a change log table in the database the workers share. Every worker appends
+ * its events and polls for the rows the others appended every cluster.replication.interval milliseconds.
+ */
+@Component
+@ConditionalOnProperty(name = "cluster.transport", havingValue = "database", matchIfMissing = true)
+public class DatabaseTransport implements IReplicationTransport {
+
+    private static final String CREATE = "CREATE TABLE IF NOT EXISTS cluster_change (id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+            "origin INT NOT NULL, type VARCHAR(16) NOT NULL, data VARCHAR(2048), user_id INT NOT NULL, " +
+            "count INT NOT NULL, trusted BOOLEAN NOT NULL, created BIGINT NOT NULL)";
+    private static final String INSERT = "INSERT INTO cluster_change (origin, type, data, user_id, count, trusted, created) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?)";
+    private static final String SELECT = "SELECT id, origin, type, data, user_id, count, trusted FROM cluster_change " +
+            "WHERE id > ? ORDER BY id LIMIT 10000";
+    private static final String LAST = "SELECT COALESCE(MAX(id), 0) FROM cluster_change";
+    private static final String PRUNE = "DELETE FROM cluster_change WHERE created < ?";
+
+    /**
+     * Ids are taken before a row is committed, so a gap may still fill. After this long it is given up on.
+     */
+    private static final long GAP_TIMEOUT = TimeUnit.SECONDS.toMillis(10);
+    private static final long RETENTION = TimeUnit.HOURS.toMillis(1);
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${cluster.replication.interval}")
+    private long interval;
+
+    private final TreeSet<Long> seen = new TreeSet<>();
+    private volatile Consumer<List<ReplicationEvent>> receiver;
+    private ScheduledExecutorService poller;
+    private long floor;
+    private long gapSince;
+    private long lastPrune;
+
+    private static final class Row {
+
+        private final long id;
+        private final ReplicationEvent event;
+
+        private Row(final long id, final ReplicationEvent event) {
+            this.id = id;
+            this.event = event;
+        }
+
+    }
+
+    @Override
+    public void publish(final List<ReplicationEvent> events) {
+        final long now = System.currentTimeMillis();
+        final List<Object[]> rows = new ArrayList<>();
+        for (ReplicationEvent event : events) {
+            final boolean user = event.getType() == ReplicationEvent.Type.USER;
+            rows.add(new Object[]{event.getOrigin(), event.getType().name(), event.getData(), event.getUserId(),
+                    user ? event.getUser().getCount() : 0, user && event.getUser().isTrusted(), now});
+        }
+        jdbcTemplate.batchUpdate(INSERT, rows);
+    }
+
+    @Override
+    public void setReceiver(final Consumer<List<ReplicationEvent>> receiver) {
+        this.receiver = receiver;
+    }
+
+    @Override
+    public synchronized void start() {
+        if (poller != null) return;
+        jdbcTemplate.execute(CREATE);
+        // the state written before is read from the database at startup, only later changes are needed
+        floor = jdbcTemplate.queryForObject(LAST, Long.class);
+        poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "cluster-transport");
+            thread.setDaemon(true);
+            return thread;
+        });
+        poller.scheduleWithFixedDelay(this::poll, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (poller == null) return;
+        poller.shutdown();
+        try {
+            poller.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        poller = null;
+    }
+
+    private void poll() {
+        try {
+            final List<Row> rows = jdbcTemplate.query(SELECT, (result, i) -> new Row(result.getLong(1),
+                    new ReplicationEvent(result.getInt(2), ReplicationEvent.Type.valueOf(result.getString(3)),
+                            result.getString(4), result.getInt(5), result.getInt(6), result.getBoolean(7))), floor);
+            final List<ReplicationEvent> events = new ArrayList<>();
+            for (Row row : rows) {
+                if (seen.add(row.id)) events.add(row.event);
+            }
+            advance();
+            final Consumer<List<ReplicationEvent>> current = receiver;
+            if (!events.isEmpty() && current != null) current.accept(events);
+            prune();
+        } catch (Exception e) {
+            log.error("Could not read the changes of the cluster", e);
+        }
+    }
+
+    private void advance() {
+        final long before = floor;
+        while (!seen.isEmpty() && seen.first() == floor + 1) floor = seen.pollFirst();
+        if (seen.isEmpty() || floor != before) {
+            gapSince = 0;
+        }
+        if (seen.isEmpty()) return;
+        if (gapSince == 0) {
+            gapSince = System.currentTimeMillis();
+        } else if (System.currentTimeMillis() - gapSince > GAP_TIMEOUT) {
+            log.warn("Giving up on cluster changes " + (floor + 1) + " to " + (seen.first() - 1));
+            floor = seen.first() - 1;
+            gapSince = 0;
+            advance();
+        }
+    }
+
+    private void prune() {
+        final long now = System.currentTimeMillis();
+        if (now - lastPrune < RETENTION / 10) return;
+        lastPrune = now;
+        jdbcTemplate.update(PRUNE, now - RETENTION);
+    }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.cluster;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Connects the workers running in the same JVM that share the cluster.name. Events are handed to the
+ * receivers of the other workers on the publishing thread. Stands in for a network transport in tests.
+ */
+@Component
+@ConditionalOnProperty(name = "cluster.transport", havingValue = "loopback")
+public class LoopbackTransport implements IReplicationTransport {
+
+    private static final Map<String, List<LoopbackTransport>> CHANNELS = new HashMap<>();
+
+    private final String channel;
+    private volatile Consumer<List<ReplicationEvent>> receiver;
+
+    public LoopbackTransport(@Value("${cluster.name}") String channel) {
+        this.channel = channel;
+    }
+
+    @Override
+    public void publish(final List<ReplicationEvent> events) {
+        final List<LoopbackTransport> members;
+        synchronized (CHANNELS) {
+            members = new ArrayList<>(CHANNELS.getOrDefault(channel, new ArrayList<>()));
+        }
+        for (LoopbackTransport member : members) {
+            final Consumer<List<ReplicationEvent>> current = member.receiver;
+            if (member != this && current != null) current.accept(events);
+        }
+    }
+
+    @Override
+    public void setReceiver(final Consumer<List<ReplicationEvent>> receiver) {
+        this.receiver = receiver;
+    }
+
+    @Override
+    public void start() {
+        synchronized (CHANNELS) {
+            final List<LoopbackTransport> members = CHANNELS.computeIfAbsent(channel, c -> new ArrayList<>());
+            if (!members.contains(this)) members.add(this);
+        }
+    }
+
+    @Override
+    public void stop() {
+        synchronized (CHANNELS) {
+            final List<LoopbackTransport> members = CHANNELS.get(channel);
+            if (members != null && members.remove(this) && members.isEmpty()) CHANNELS.remove(channel);
+        }
+    }
+
+}
@@ -0,0 +1,98 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.cluster;
+
+import com.apex.entities.TGUser;
+
+import java.io.Serializable;
+
+/**
+ * A change of the moderation state one worker made that the other workers have to know about:
+ * newly blacklisted content or a user whose warnings or trust changed.
+ */
+public class ReplicationEvent implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public enum Type {
+        BLACKLIST, USER, USER_DELETED
+    }
+
+    private final int origin;
+    private final Type type;
+    private final String data;
+    private final int userId;
+    private final int count;
+    private final boolean trusted;
+
+    ReplicationEvent(final int origin, final Type type, final String data, final int userId,
+                             final int count, final boolean trusted) {
+        this.origin = origin;
+        this.type = type;
+        this.data = data;
+        this.userId = userId;
+        this.count = count;
+        this.trusted = trusted;
+    }
+
+    /**
+     * The worker blacklisted the content the feedback data refers to.
+     */
+    public static ReplicationEvent blacklist(final int origin, final String data) {
+        return new ReplicationEvent(origin, Type.BLACKLIST, data, 0, 0, false);
+    }
+
+    /**
+     * The worker saved the user, or deleted it if the user is null.
+     */
+    public static ReplicationEvent user(final int origin, final int userId, final TGUser user) {
+        return user == null ? new ReplicationEvent(origin, Type.USER_DELETED, null, userId, 0, false) :
+                new ReplicationEvent(origin, Type.USER, null, userId, user.getCount(), user.isTrusted());
+    }
+
+    public int getOrigin() {
+        return origin;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getData() {
+        return data;
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    /**
+     * The saved user, null for other events.
+     */
+    public TGUser getUser() {
+        return type == Type.USER ? new TGUser(userId, count, trusted) : null;
+    }
+
+}
@@ -0,0 +1,77 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.command;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Collects the commands a strategy understands and compiles them into a {@link CommandScanner}.
+ */
+public class CommandRegistry {
+
+    private final Map<String, Command> commands = new LinkedHashMap<>();
+
+    /**
+     * Registers a command that is matched anywhere in the text.
+     */
+    public CommandRegistry register(final String command, final ICommandHandler handler) {
+        return add(command, false, handler);
+    }
+
+    /**
+     * Registers a command that may be followed by a number, which is passed to the handler.
+     */
+    public CommandRegistry registerWithArgument(final String command, final ICommandHandler handler) {
+        return add(command, true, handler);
+    }
+
+    public CommandScanner compile() {
+        return new CommandScanner(commands.values().toArray(new Command[0]));
+    }
+
+    private CommandRegistry add(final String command, final boolean parameterized, final ICommandHandler handler) {
+        if (command.isEmpty()) throw new IllegalArgumentException("Empty command");
+        if (commands.putIfAbsent(command, new Command(command, parameterized, handler)) != null) {
+            throw new IllegalArgumentException("Command " + command + " is registered twice");
+        }
+        return this;
+    }
+
+    static final class Command {
+
+        final String name;
+        final boolean parameterized;
+        final ICommandHandler handler;
+
+        private Command(final String name, final boolean parameterized, final ICommandHandler handler) {
+            this.name = name;
+            this.parameterized = parameterized;
+            this.handler = handler;
+        }
+
+    }
+
+}
@@ -0,0 +1,147 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.command;
+
+import com.apex.strategy.MessageContext;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Aho-Corasick automaton over the registered commands, finds all of them in one pass over the text.
+ * Immutable.
+ */
+public class CommandScanner {
+
+    private static final int MAX_ARGUMENT_DIGITS = 9;
+
+    private final CommandRegistry.Command[] commands;
+    // goto function of each node, keys sorted for a binary search
+    private final char[][] keys;
+    private final int[][] targets;
+    private final int[] fail;
+    // command ending in the node, -1 if none, and the next node on the failure chain that ends one
+    private final int[] output;
+    private final int[] outputLink;
+
+    CommandScanner(final CommandRegistry.Command[] commands) {
+        this.commands = commands;
+        final List<Map<Character, Integer>> trie = new ArrayList<>();
+        final List<Integer> outputs = new ArrayList<>();
+        trie.add(new HashMap<>());
+        outputs.add(-1);
+        for (int i = 0; i < commands.length; i++) {
+            int node = 0;
+            for (char c : commands[i].name.toCharArray()) {
+                Integer next = trie.get(node).get(c);
+                if (next == null) {
+                    next = trie.size();
+                    trie.get(node).put(c, next);
+                    trie.add(new HashMap<>());
+                    outputs.add(-1);
+                }
+                node = next;
+            }
+            outputs.set(node, i);
+        }
+
+        final int size = trie.size();
+        keys = new char[size][];
+        targets = new int[size][];
+        fail = new int[size];
+        output = new int[size];
+        outputLink = new int[size];
+        for (int node = 0; node < size; node++) {
+            final Map<Character, Integer> edges = trie.get(node);
+            keys[node] = new char[edges.size()];
+            targets[node] = new int[edges.size()];
+            int i = 0;
+            for (char c : edges.keySet()) keys[node][i++] = c;
+            Arrays.sort(keys[node]);
+            for (i = 0; i < keys[node].length; i++) targets[node][i] = edges.get(keys[node][i]);
+            output[node] = outputs.get(node);
+        }
+
+        // failure links in breadth first order, so the link of a shorter prefix is known first
+        final int[] queue = new int[size];
+        int head = 0;
+        int tail = 0;
+        outputLink[0] = -1;
+        for (int child : targets[0]) {
+            fail[child] = 0;
+            outputLink[child] = -1;
+            queue[tail++] = child;
+        }
+        while (head < tail) {
+            final int node = queue[head++];
+            for (int i = 0; i < keys[node].length; i++) {
+                final int child = targets[node][i];
+                int state = fail[node];
+                int next;
+                while ((next = step(state, keys[node][i])) < 0 && state != 0) state = fail[state];
+                fail[child] = next < 0 ? 0 : next;
+                outputLink[child] = output[fail[child]] >= 0 ? fail[child] : outputLink[fail[child]];
+                queue[tail++] = child;
+            }
+        }
+    }
+
+    /**
+     * Runs the handler of every command in the text.
+     */
+    public void dispatch(final MessageContext context, final String text, final ArrayList<BotApiMethod> result) {
+        final boolean[] seen = new boolean[commands.length];
+        int state = 0;
+        for (int pos = 0; pos < text.length(); pos++) {
+            final char c = text.charAt(pos);
+            int next;
+            while ((next = step(state, c)) < 0 && state != 0) state = fail[state];
+            state = next < 0 ? 0 : next;
+            for (int node = output[state] >= 0 ? state : outputLink[state]; node >= 0; node = outputLink[node]) {
+                final int command = output[node];
+                if (seen[command]) continue;
+                seen[command] = true;
+                final CommandRegistry.Command matched = commands[command];
+                matched.handler.handle(context, matched.parameterized ? argument(text, pos + 1) : null, result);
+            }
+        }
+    }
+
+    private int step(final int node, final char c) {
+        final int i = Arrays.binarySearch(keys[node], c);
+        return i < 0 ? -1 : targets[node][i];
+    }
+
+    private static Integer argument(final String text, final int from) {
+        int end = from;
+        while (end < text.length() && end - from < MAX_ARGUMENT_DIGITS && Character.isDigit(text.charAt(end))) end++;
+        return end == from ? null : Integer.valueOf(text.substring(from, end));
+    }
+
+}
@@ -4,22 +4,50 @@ import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
 
+/**
+ * A blacklisted content fingerprint. Rows written before fingerprints were introduced only carry
+ * the CRC32 of the content in legacyCrc. Rows for a link rule, an image or a text carry the rule in link,
+ * the perceptual hash in imageHash or the SimHash in textHash, and a fingerprint of it.
+ */
 @Entity
+@Table(indexes = {@Index(columnList = "fingerprint", unique = true), @Index(columnList = "legacyCrc")})
 public class Blacklist {
 
     public Blacklist() {
     }
 
-    public Blacklist(final String hash) {
-        this.hash = hash;
+    public Blacklist(final Long fingerprint, final Long legacyCrc) {
+        this.fingerprint = fingerprint;
+        this.legacyCrc = legacyCrc;
+    }
+
+    public Blacklist(final long fingerprint, final String link) {
+        this.fingerprint = fingerprint;
+        this.link = link;
+    }
+
+    public Blacklist(final long fingerprint, final Long imageHash, final Long textHash) {
+        this.fingerprint = fingerprint;
+        this.imageHash = imageHash;
+        this.textHash = textHash;
     }
 
     @Id
     @GeneratedValue(strategy = GenerationType.AUTO)
     private long blackListId;
 
-    private String hash;
+    private Long fingerprint;
+
+    private Long legacyCrc;
+
+    private String link;
+
+    private Long imageHash;
+
+    private Long textHash;
 
     public long getBlackListId() {
         return blackListId;
@@ -29,12 +57,44 @@ public class Blacklist {
         this.blackListId = blackListId;
     }
 
-    public String getHash() {
-        return hash;
+    public Long getFingerprint() {
+        return fingerprint;
+    }
+
+    public void setFingerprint(Long fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+
+    public Long getLegacyCrc() {
+        return legacyCrc;
+    }
+
+    public void setLegacyCrc(Long legacyCrc) {
+        this.legacyCrc = legacyCrc;
+    }
+
+    public String getLink() {
+        return link;
+    }
+
+    public void setLink(String link) {
+        this.link = link;
+    }
+
+    public Long getImageHash() {
+        return imageHash;
+    }
+
+    public void setImageHash(Long imageHash) {
+        this.imageHash = imageHash;
+    }
+
+    public Long getTextHash() {
+        return textHash;
     }
 
-    public void setHash(String hash) {
-        this.hash = hash;
+    public void setTextHash(Long textHash) {
+        this.textHash = textHash;
     }
 
 }
@@ -1,8 +1,10 @@
 package com.apex.entities;
 
 import javax.persistence.*;
+import java.time.Instant;
 
 @Entity
+@Table(indexes = {@Index(columnList = "userId"), @Index(columnList = "data")})
 public class Feedback {
 
     public Feedback() {
@@ -13,6 +15,7 @@ public class Feedback {
         this.userId = userId;
         this.chatId = chatId;
         this.data = data;
+        this.created = Instant.now().getEpochSecond();
     }
 
     @Id
@@ -25,6 +28,9 @@ public class Feedback {
 
     private String data;
 
+    @Column(columnDefinition = "bigint default 0 not null")
+    private long created;
+
     public long getFeedbackId() {
         return feedbackId;
     }
@@ -57,4 +63,12 @@ public class Feedback {
         this.data = data;
     }
 
+    public long getCreated() {
+        return created;
+    }
+
+    public void setCreated(long created) {
+        this.created = created;
+    }
+
 }
@@ -0,0 +1,37 @@
+package com.apex.entities;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+@Entity
+public class UpdateOffset {
+
+    public UpdateOffset(){}
+
+    public UpdateOffset(final String botName, final int lastUpdateId) {
+        this.botName = botName;
+        this.lastUpdateId = lastUpdateId;
+    }
+
+    @Id
+    private String botName;
+
+    private int lastUpdateId;
+
+    public String getBotName() {
+        return botName;
+    }
+
+    public void setBotName(String botName) {
+        this.botName = botName;
+    }
+
+    public int getLastUpdateId() {
+        return lastUpdateId;
+    }
+
+    public void setLastUpdateId(int lastUpdateId) {
+        this.lastUpdateId = lastUpdateId;
+    }
+
+}
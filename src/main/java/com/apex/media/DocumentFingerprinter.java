@@ -0,0 +1,227 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.media;
+
+import com.apex.addition.Fingerprint;
+import com.apex.bot.IRunWithOwnThread;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.objects.Document;
+import org.telegram.telegrambots.meta.api.objects.PhotoSize;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongConsumer;
+
+/**
+ * Fingerprints documents and hashes photos on a pool of its own threads, cached by file id.
+ */
+@Component
+public class DocumentFingerprinter implements IRunWithOwnThread {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String PHOTO_PREFIX = "photo:";
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    @Autowired
+    private IFileFetcher fileFetcher;
+
+    @Value("${file.hash.enabled}")
+    private boolean enabled;
+
+    @Value("${file.hash.max-size}")
+    private long maxSize;
+
+    @Value("${file.hash.threads}")
+    private int threads;
+
+    @Value("${file.hash.queue}")
+    private int queueDepth;
+
+    @Value("${file.hash.cache}")
+    private int cacheSize;
+
+    private final ThreadLocal<ByteBuffer> buffers = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(BUFFER_SIZE));
+    private Map<String, CompletableFuture<Long>> fingerprints;
+    private volatile ThreadPoolExecutor workers;
+
+    /**
+     * The fingerprint of the document if it is known already, null otherwise.
+     */
+    public Long cached(final Document document) {
+        return cached(document.getFileId());
+    }
+
+    /**
+     * The perceptual hash of the photo if it is known already, null otherwise.
+     */
+    public Long cached(final PhotoSize photo) {
+        return cached(PHOTO_PREFIX + photo.getFileId());
+    }
+
+    private Long cached(final String key) {
+        final CompletableFuture<Long> known;
+        synchronized (this) {
+            known = fingerprints == null ? null : fingerprints.get(key);
+        }
+        return known != null && known.isDone() && !known.isCompletedExceptionally() ? known.join() : null;
+    }
+
+    /**
+     * Fingerprints the document in the background and passes the fingerprint to the callback, or runs the
+     * fallback if the download fails. Returns false if the document is not fingerprinted.
+     */
+    public boolean submit(final Document document, final String botToken, final LongConsumer callback,
+                          final Runnable fallback) {
+        if (document.getFileSize() == null || document.getFileSize() > maxSize) return false;
+        final String fileId = document.getFileId();
+        return submit(fileId, () -> fingerprint(botToken, fileId), callback, fallback);
+    }
+
+    /**
+     * Computes the perceptual hash of the photo in the background, like a document fingerprint.
+     */
+    public boolean submitPhoto(final PhotoSize photo, final String botToken, final LongConsumer callback,
+                               final Runnable fallback) {
+        if (photo.getFileId() == null || photo.getFileSize() != null && photo.getFileSize() > maxSize) return false;
+        return submit(PHOTO_PREFIX + photo.getFileId(), () -> imageHash(botToken, photo.getFileId()), callback, fallback);
+    }
+
+    private boolean submit(final String key, final Callable<Long> task, final LongConsumer callback,
+                           final Runnable fallback) {
+        final ThreadPoolExecutor current = workers;
+        if (!enabled || current == null) return false;
+        final CompletableFuture<Long> fingerprint;
+        synchronized (this) {
+            final CompletableFuture<Long> known = fingerprints.get(key);
+            if (known != null) {
+                fingerprint = known;
+            } else {
+                fingerprint = new CompletableFuture<>();
+                try {
+                    current.execute(() -> compute(key, task, fingerprint));
+                } catch (RejectedExecutionException e) {
+                    return false;
+                }
+                fingerprints.put(key, fingerprint);
+            }
+        }
+        fingerprint.whenComplete((value, error) -> {
+            if (error == null) callback.accept(value);
+            else fallback.run();
+        });
+        return true;
+    }
+
+    @Override
+    public synchronized void start() {
+        if (workers != null) return;
+        fingerprints = new LinkedHashMap<String, CompletableFuture<Long>>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CompletableFuture<Long>> eldest) {
+                return size() > cacheSize;
+            }
+        };
+        final AtomicInteger count = new AtomicInteger();
+        workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueDepth),
+                runnable -> {
+                    final Thread thread = new Thread(runnable, "document-hash-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    @Override
+    public void stop() {
+        final ThreadPoolExecutor current;
+        synchronized (this) {
+            current = workers;
+            workers = null;
+        }
+        if (current == null) return;
+        current.shutdown();
+        try {
+            current.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void compute(final String key, final Callable<Long> task, final CompletableFuture<Long> result) {
+        try {
+            result.complete(task.call());
+        } catch (Exception e) {
+            log.warn("Could not fingerprint file " + key, e);
+            synchronized (this) {
+                fingerprints.remove(key, result);
+            }
+            result.completeExceptionally(e);
+        }
+    }
+
+    private long fingerprint(final String botToken, final String fileId) throws IOException {
+        final ByteBuffer buffer = buffers.get();
+        final Fingerprint fingerprint = new Fingerprint();
+        long size = 0;
+        try (ReadableByteChannel channel = Channels.newChannel(fileFetcher.open(botToken, fileId))) {
+            buffer.clear();
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                size += buffer.remaining();
+                if (size > maxSize) throw new IOException("File is larger than " + maxSize + " bytes");
+                fingerprint.update(buffer);
+                buffer.clear();
+            }
+            return fingerprint.getValue();
+        }
+    }
+
+    private long imageHash(final String botToken, final String fileId) throws IOException {
+        try (InputStream in = fileFetcher.open(botToken, fileId)) {
+            final BufferedImage image = ImageIO.read(in);
+            if (image == null) throw new IOException("File is not an image");
+            return PerceptualHash.dHash(image);
+        }
+    }
+
+}
@@ -0,0 +1,77 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.media;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.bots.DefaultAbsSender;
+import org.telegram.telegrambots.bots.DefaultBotOptions;
+import org.telegram.telegrambots.meta.api.methods.GetFile;
+import org.telegram.telegrambots.meta.api.objects.File;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Downloads files through the Bot API: getFile resolves the path, the content is streamed from the file URL.
+ */
+@Component
+@ConditionalOnProperty(name = "file.fetcher", havingValue = "telegram", matchIfMissing = true)
+public class TelegramFileFetcher implements IFileFetcher {
+
+    private final int timeout;
+    private final Map<String, DefaultAbsSender> senders = new ConcurrentHashMap<>();
+
+    public TelegramFileFetcher(@Value("${file.fetch-timeout}") int timeout) {
+        this.timeout = timeout;
+    }
+
+    @Override
+    public InputStream open(final String botToken, final String fileId) throws IOException {
+        final DefaultAbsSender sender = senders.computeIfAbsent(botToken, token -> new DefaultAbsSender(new DefaultBotOptions()) {
+            @Override
+            public String getBotToken() {
+                return token;
+            }
+        });
+        final File file;
+        try {
+            file = sender.execute(new GetFile().setFileId(fileId));
+        } catch (TelegramApiException e) {
+            throw new IOException("Could not resolve file " + fileId, e);
+        }
+        final URLConnection connection = new URL(file.getFileUrl(botToken)).openConnection();
+        connection.setConnectTimeout(timeout);
+        connection.setReadTimeout(timeout);
+        return connection.getInputStream();
+    }
+
+}
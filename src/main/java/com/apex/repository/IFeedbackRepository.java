@@ -1,10 +1,23 @@
 package com.apex.repository;
 
 import com.apex.entities.Feedback;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.transaction.annotation.Transactional;
 
-import java.util.Optional;
+import java.util.List;
 
 public interface IFeedbackRepository extends CrudRepository<Feedback, Long> {
-    public Optional<Feedback> findFirstByUserId(final int userId);
+
+    public List<Feedback> findByData(final String data);
+
+    @Query("select f.feedbackId from Feedback f where f.created < ?1")
+    public List<Long> findIdsCreatedBefore(final long epochSecond);
+
+    @Modifying
+    @Transactional
+    @Query("delete from Feedback f where f.created < ?1")
+    public int deleteCreatedBefore(final long epochSecond);
+
 }
@@ -0,0 +1,7 @@
+package com.apex.repository;
+
+import com.apex.entities.UpdateOffset;
+import org.springframework.data.repository.CrudRepository;
+
+public interface IUpdateOffsetRepository extends CrudRepository<UpdateOffset, String> {
+}
@@ -0,0 +1,72 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.repository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Moves the CRC32 strings of blacklist rows written before fingerprints were introduced into the
+ * numeric legacy_crc column and drops the old hash column, so it only does work once.
+ */
+@Component
+public class LegacyBlacklistMigration {
+
+    private static final String HAS_HASH_COLUMN = "SELECT COUNT(*) FROM INFORMATION_SCHEMA.COLUMNS " +
+            "WHERE TABLE_NAME = 'BLACKLIST' AND COLUMN_NAME = 'HASH'";
+    private static final String COPY_HASHES = "UPDATE blacklist SET legacy_crc = CAST(hash AS BIGINT) " +
+            "WHERE fingerprint IS NULL AND REGEXP_LIKE(hash, '^[0-9]{1,10}$')";
+    private static final String DELETE_UNUSABLE = "DELETE FROM blacklist WHERE fingerprint IS NULL AND legacy_crc IS NULL";
+    private static final String DROP_HASH_COLUMN = "ALTER TABLE blacklist DROP COLUMN hash";
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private boolean done;
+
+    public synchronized void migrate() {
+        if (done) return;
+        done = true;
+        final Integer columns = jdbcTemplate.queryForObject(HAS_HASH_COLUMN, Integer.class);
+        if (columns == null || columns == 0) return;
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            final int copied = jdbcTemplate.update(COPY_HASHES);
+            final int dropped = jdbcTemplate.update(DELETE_UNUSABLE);
+            jdbcTemplate.execute(DROP_HASH_COLUMN);
+            log.info("Migrated " + copied + " legacy blacklist hashes, dropped " + dropped + " unusable rows");
+        });
+    }
+
+}
@@ -0,0 +1,422 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.repository;
+
+import com.apex.addition.Fingerprint;
+import com.apex.entities.Blacklist;
+import com.apex.entities.Feedback;
+import com.apex.entities.TGUser;
+import com.apex.store.IBlacklistVisitor;
+import com.apex.store.IModerationStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Collects changes to users, feedback and the blacklist and writes them in JDBC batches.
+ * Pending changes are visible to the find methods before they are written.
+ */
+@Component
+@ConditionalOnProperty(name = "store.backend", havingValue = "jpa", matchIfMissing = true)
+public class WriteBehindStore implements IModerationStore {
+
+    private static final String MERGE_USER = "MERGE INTO tguser (user_id, count, trusted) KEY (user_id) VALUES (?, ?, ?)";
+    private static final String DELETE_USER = "DELETE FROM tguser WHERE user_id = ?";
+    private static final String INSERT_FEEDBACK = "INSERT INTO feedback (feedback_id, user_id, chat_id, data, created) VALUES (?, ?, ?, ?, ?)";
+    private static final String DELETE_FEEDBACK = "DELETE FROM feedback WHERE feedback_id = ?";
+    private static final String MERGE_BLACKLIST = "MERGE INTO blacklist (black_list_id, fingerprint, link, image_hash, text_hash) KEY (fingerprint) VALUES (?, ?, ?, ?, ?)";
+    private static final String INSERT_LEGACY_BLACKLIST = "INSERT INTO blacklist (black_list_id, legacy_crc) VALUES (?, ?)";
+    private static final String NEXT_IDS = "SELECT NEXT VALUE FOR hibernate_sequence FROM SYSTEM_RANGE(1, ?)";
+    private static final int ID_BLOCK = 50;
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ITGUserRepository tgUserRepository;
+
+    @Autowired
+    private IFeedbackRepository feedbackRepository;
+
+    @Autowired
+    private IBlackListRepository blackListRepository;
+
+    @Autowired
+    private LegacyBlacklistMigration legacyBlacklistMigration;
+
+    @Autowired
+    private FeedbackCreatedMigration feedbackCreatedMigration;
+
+    @Value("${store.batch-size}")
+    private int batchSize;
+
+    @Value("${store.flush-interval}")
+    private long flushInterval;
+
+    @Value("${store.flush-attempts}")
+    private int flushAttempts;
+
+    private final Object lock = new Object();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private Batch pending = new Batch();
+    private Batch flushing = new Batch();
+    private final ArrayDeque<Long> ids = new ArrayDeque<>();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private ScheduledExecutorService flusher;
+
+    @Override
+    public void saveUser(final TGUser user) {
+        enqueue(() -> pending.users.put(user.getUserId(), new TGUser(user.getUserId(), user.getCount(), user.isTrusted())));
+    }
+
+    @Override
+    public void deleteUser(final int userId) {
+        enqueue(() -> pending.users.put(userId, null));
+    }
+
+    @Override
+    public Optional<TGUser> findUser(final int userId) {
+        synchronized (lock) {
+            if (pending.users.containsKey(userId)) return Optional.ofNullable(pending.users.get(userId));
+            if (flushing.users.containsKey(userId)) return Optional.ofNullable(flushing.users.get(userId));
+        }
+        return tgUserRepository.findById(userId);
+    }
+
+    /**
+     * Creates a feedback with an id taken from the same sequence Hibernate uses, so it can be
+     * referenced right away although the row is written later.
+     */
+    @Override
+    public Feedback createFeedback(final int userId, final long chatId, final String data) {
+        final Feedback feedback = new Feedback(userId, chatId, data);
+        feedback.setFeedbackId(nextId());
+        enqueue(() -> pending.newFeedback.put(feedback.getFeedbackId(), feedback));
+        return feedback;
+    }
+
+    @Override
+    public Optional<Feedback> findFeedback(final long feedbackId) {
+        synchronized (lock) {
+            if (pending.deletedFeedback.contains(feedbackId) || flushing.deletedFeedback.contains(feedbackId)) {
+                return Optional.empty();
+            }
+            final Feedback created = pending.newFeedback.containsKey(feedbackId) ?
+                    pending.newFeedback.get(feedbackId) : flushing.newFeedback.get(feedbackId);
+            if (created != null) return Optional.of(created);
+        }
+        return feedbackRepository.findById(feedbackId);
+    }
+
+    @Override
+    public void deleteFeedback(final Feedback feedback) {
+        enqueue(() -> {
+            if (pending.newFeedback.remove(feedback.getFeedbackId()) == null) {
+                pending.deletedFeedback.add(feedback.getFeedbackId());
+            }
+        });
+    }
+
+    /**
+     * The rows are read first and marked deleted under the lock together with the pending ones, rows
+     * another call took in between are left out.
+     */
+    @Override
+    public List<Feedback> takeFeedbackWithData(final String data) {
+        final List<Feedback> stored = feedbackRepository.findByData(data);
+        final List<Feedback> taken = new ArrayList<>();
+        enqueue(() -> {
+            for (Iterator<Feedback> it = pending.newFeedback.values().iterator(); it.hasNext(); ) {
+                final Feedback feedback = it.next();
+                if (!data.equals(feedback.getData())) continue;
+                taken.add(feedback);
+                it.remove();
+            }
+            for (Feedback feedback : flushing.newFeedback.values()) {
+                if (data.equals(feedback.getData()) && pending.deletedFeedback.add(feedback.getFeedbackId())) {
+                    taken.add(feedback);
+                }
+            }
+            for (Feedback feedback : stored) {
+                if (!flushing.deletedFeedback.contains(feedback.getFeedbackId()) &&
+                        pending.deletedFeedback.add(feedback.getFeedbackId())) {
+                    taken.add(feedback);
+                }
+            }
+        });
+        return taken;
+    }
+
+    @Override
+    public List<Long> deleteFeedbackCreatedBefore(final long epochSecond) {
+        final List<Long> expired = feedbackRepository.findIdsCreatedBefore(epochSecond);
+        if (!expired.isEmpty()) feedbackRepository.deleteCreatedBefore(epochSecond);
+        return expired;
+    }
+
+    @Override
+    public void addBlacklist(final long fingerprint) {
+        final long id = nextId();
+        enqueue(() -> pending.blacklist.put(id, new Blacklist(fingerprint, null)));
+    }
+
+    @Override
+    public void addLegacyBlacklist(final long crc) {
+        final long id = nextId();
+        enqueue(() -> pending.blacklist.put(id, new Blacklist(null, crc)));
+    }
+
+    @Override
+    public void addLinkBlacklist(final String rule) {
+        final long id = nextId();
+        enqueue(() -> pending.blacklist.put(id, new Blacklist(Fingerprint.of(rule), rule)));
+    }
+
+    @Override
+    public void addImageBlacklist(final long hash) {
+        final long id = nextId();
+        enqueue(() -> pending.blacklist.put(id, new Blacklist(Fingerprint.of("img:" + Long.toHexString(hash)), hash, null)));
+    }
+
+    @Override
+    public void addTextBlacklist(final long hash) {
+        final long id = nextId();
+        enqueue(() -> pending.blacklist.put(id, new Blacklist(Fingerprint.of("txt:" + Long.toHexString(hash)), null, hash)));
+    }
+
+    @Override
+    public void forEachBlacklist(final IBlacklistVisitor visitor) {
+        legacyBlacklistMigration.migrate();
+        for (Blacklist blacklist : blackListRepository.findAll()) {
+            if (blacklist.getLink() != null) visitor.linkRule(blacklist.getLink());
+            else if (blacklist.getImageHash() != null) visitor.imageHash(blacklist.getImageHash());
+            else if (blacklist.getTextHash() != null) visitor.textHash(blacklist.getTextHash());
+            else if (blacklist.getFingerprint() != null) visitor.fingerprint(blacklist.getFingerprint());
+            else if (blacklist.getLegacyCrc() != null) visitor.legacyCrc(blacklist.getLegacyCrc());
+        }
+    }
+
+    @Override
+    public synchronized void start() {
+        if (flusher != null) return;
+        feedbackCreatedMigration.migrate();
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (flusher != null) {
+            flusher.shutdown();
+            try {
+                flusher.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            flusher = null;
+        }
+        try {
+            if (flushLock.tryLock(10, TimeUnit.SECONDS)) {
+                try {
+                    flushPending();
+                } finally {
+                    flushLock.unlock();
+                }
+            } else {
+                synchronized (lock) {
+                    log.error("Write-behind flush did not finish, " + pending.size() + " changes are not written");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void enqueue(final Runnable change) {
+        final int size;
+        synchronized (lock) {
+            change.run();
+            size = pending.size();
+        }
+        if (size >= batchSize && flushRequested.compareAndSet(false, true)) {
+            final ScheduledExecutorService current = flusher;
+            if (current != null) current.execute(this::flush);
+            else flushRequested.set(false);
+        }
+    }
+
+    private void flush() {
+        flushLock.lock();
+        try {
+            flushPending();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void flushPending() {
+        flushRequested.set(false);
+        final Batch batch;
+        synchronized (lock) {
+            if (pending.size() == 0) return;
+            batch = pending;
+            flushing = batch;
+            pending = new Batch();
+        }
+        try {
+            new TransactionTemplate(transactionManager).executeWithoutResult(status -> write(batch));
+            log.debug("Flushed " + batch.size() + " changes");
+        } catch (Exception e) {
+            if (++batch.attempts < flushAttempts) {
+                log.error("Write-behind flush of " + batch.size() + " changes failed, will retry", e);
+                synchronized (lock) {
+                    pending = batch.mergeNewer(pending);
+                }
+            } else {
+                log.error("Write-behind flush of " + batch.size() + " changes failed " + batch.attempts +
+                        " times, writing them one by one", e);
+                writeEach(batch);
+            }
+        } finally {
+            synchronized (lock) {
+                flushing = new Batch();
+            }
+        }
+    }
+
+    private void write(final Batch batch) {
+        statements(batch).forEach((sql, rows) -> {
+            if (!rows.isEmpty()) jdbcTemplate.batchUpdate(sql, rows);
+        });
+    }
+
+    private void writeEach(final Batch batch) {
+        statements(batch).forEach((sql, rows) -> rows.forEach(row -> {
+            try {
+                jdbcTemplate.update(sql, row);
+            } catch (Exception e) {
+                log.error("Dropping write-behind change " + Arrays.toString(row) + " of " + sql, e);
+            }
+        }));
+    }
+
+    /**
+     * The rows of the batch by statement, in the order they are written.
+     */
+    private Map<String, List<Object[]>> statements(final Batch batch) {
+        final List<Object[]> merges = new ArrayList<>();
+        final List<Object[]> userDeletes = new ArrayList<>();
+        batch.users.forEach((userId, user) -> {
+            if (user == null) userDeletes.add(new Object[]{userId});
+            else merges.add(new Object[]{user.getUserId(), user.getCount(), user.isTrusted()});
+        });
+        final List<Object[]> feedbackInserts = new ArrayList<>();
+        batch.newFeedback.values().forEach(f ->
+                feedbackInserts.add(new Object[]{f.getFeedbackId(), f.getUserId(), f.getChatId(), f.getData(), f.getCreated()}));
+        final List<Object[]> feedbackDeletes = new ArrayList<>();
+        batch.deletedFeedback.forEach(id -> feedbackDeletes.add(new Object[]{id}));
+        final List<Object[]> blacklistMerges = new ArrayList<>();
+        final List<Object[]> legacyInserts = new ArrayList<>();
+        batch.blacklist.forEach((id, entry) -> {
+            if (entry.getFingerprint() != null) blacklistMerges.add(new Object[]{id, entry.getFingerprint(), entry.getLink(), entry.getImageHash(), entry.getTextHash()});
+            else legacyInserts.add(new Object[]{id, entry.getLegacyCrc()});
+        });
+
+        final Map<String, List<Object[]>> statements = new LinkedHashMap<>();
+        statements.put(MERGE_USER, merges);
+        statements.put(DELETE_USER, userDeletes);
+        statements.put(INSERT_FEEDBACK, feedbackInserts);
+        statements.put(DELETE_FEEDBACK, feedbackDeletes);
+        statements.put(MERGE_BLACKLIST, blacklistMerges);
+        statements.put(INSERT_LEGACY_BLACKLIST, legacyInserts);
+        return statements;
+    }
+
+    private long nextId() {
+        synchronized (ids) {
+            if (ids.isEmpty()) ids.addAll(jdbcTemplate.queryForList(NEXT_IDS, Long.class, ID_BLOCK));
+            return ids.poll();
+        }
+    }
+
+    private static final class Batch {
+
+        private final Map<Integer, TGUser> users = new LinkedHashMap<>();
+        private final Map<Long, Feedback> newFeedback = new LinkedHashMap<>();
+        private final Set<Long> deletedFeedback = new LinkedHashSet<>();
+        private final Map<Long, Blacklist> blacklist = new LinkedHashMap<>();
+        private int attempts;
+
+        private int size() {
+            return users.size() + newFeedback.size() + deletedFeedback.size() + blacklist.size();
+        }
+
+        /**
+         * Puts the changes of a failed batch in front of the changes made since.
+         */
+        private Batch mergeNewer(final Batch newer) {
+            users.putAll(newer.users);
+            newer.deletedFeedback.forEach(id -> {
+                if (newFeedback.remove(id) == null) deletedFeedback.add(id);
+            });
+            newFeedback.putAll(newer.newFeedback);
+            blacklist.putAll(newer.blacklist);
+            return this;
+        }
+
+    }
+
+}
@@ -0,0 +1,53 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.rules;
+
+import org.telegram.telegrambots.meta.api.objects.Message;
+
+import java.util.Locale;
+
+/**
+ * What a message carries, as named in the rules file.
+ */
+public enum MediaKind {
+    TEXT, PHOTO, VIDEO, ANIMATION, DOCUMENT, AUDIO, VOICE, STICKER, OTHER;
+
+    public static MediaKind of(final Message message) {
+        if (message.hasPhoto()) return PHOTO;
+        if (message.hasVideo() || message.hasVideoNote()) return VIDEO;
+        // animations are sent as documents too
+        if (message.hasAnimation()) return ANIMATION;
+        if (message.hasDocument()) return DOCUMENT;
+        if (message.getAudio() != null) return AUDIO;
+        if (message.getVoice() != null) return VOICE;
+        if (message.hasSticker()) return STICKER;
+        if (message.hasText()) return TEXT;
+        return OTHER;
+    }
+
+    public static MediaKind parse(final String name) {
+        return valueOf(name.trim().toUpperCase(Locale.ROOT));
+    }
+}
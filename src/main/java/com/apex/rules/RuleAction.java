@@ -0,0 +1,71 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.rules;
+
+import java.util.Locale;
+
+/**
+ * An action of a rule: delete, review, warn or allow, or ban and mute with an optional duration in
+ * seconds, e.g. mute:3600. A ban without duration is permanent, Telegram takes anything shorter than
+ * 30 seconds as permanent as well, so such durations are rejected. Allow does nothing, it only keeps the
+ * built-in checks from running.
+ */
+final class RuleAction {
+
+    enum Type { DELETE, REVIEW, WARN, ALLOW, BAN, MUTE }
+
+    static final int MIN_SECONDS = 30;
+
+    final Type type;
+    final int seconds;
+
+    private RuleAction(final Type type, final int seconds) {
+        this.type = type;
+        this.seconds = seconds;
+    }
+
+    static RuleAction parse(final String action) {
+        final String[] parts = action.trim().toLowerCase(Locale.ROOT).split(":", 2);
+        final Type type;
+        try {
+            type = Type.valueOf(parts[0].toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("unknown action " + action);
+        }
+        if (parts.length == 1) return new RuleAction(type, 0);
+        if (type != Type.BAN && type != Type.MUTE) throw new IllegalArgumentException("action " + action + " takes no duration");
+        try {
+            final int seconds = Integer.parseInt(parts[1].trim());
+            if (seconds < 0) throw new NumberFormatException();
+            if (seconds > 0 && seconds < MIN_SECONDS) {
+                throw new IllegalArgumentException("duration in " + action + " is shorter than " + MIN_SECONDS + " seconds");
+            }
+            return new RuleAction(type, seconds);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid duration in " + action);
+        }
+    }
+
+}
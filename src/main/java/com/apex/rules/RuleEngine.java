@@ -0,0 +1,212 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.rules;
+
+import com.apex.addition.Bans;
+import com.apex.addition.Fingerprint;
+import com.apex.bot.IRunWithOwnThread;
+import com.apex.bot.ReviewDigest;
+import com.apex.cache.BlacklistIndex;
+import com.apex.strategy.CommandStrategy;
+import com.apex.strategy.FloodStrategy;
+import com.apex.strategy.MessageContext;
+import com.apex.strategy.Verdict;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.methods.groupadministration.RestrictChatMember;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.DeleteMessage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per chat moderation rules from the JSON file rules.file, see {@link RuleFile}, reloaded when it changes.
+ */
+@Component
+public class RuleEngine implements IRunWithOwnThread {
+
+    private static final long STATS_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    @Autowired
+    private ReviewDigest reviewDigest;
+
+    @Autowired
+    private CommandStrategy commandStrategy;
+
+    @Autowired
+    private FloodStrategy floodStrategy;
+
+    @Value("${rules.file}")
+    private String fileName;
+
+    @Value("${rules.reload-interval}")
+    private long reloadInterval;
+
+    @Value("${rules.max-checks}")
+    private int maxChecks;
+
+    private volatile RuleTree tree = RuleTree.EMPTY;
+    private ScheduledExecutorService watcher;
+    private long loadedModified = -1;
+    private long loadedSize = -1;
+    private long statsLogged;
+
+    private final LongAdder evaluations = new LongAdder();
+    private final LongAdder evaluationNanos = new LongAdder();
+    private final AtomicLong slowestNanos = new AtomicLong();
+
+    @Override
+    public synchronized void start() {
+        if (watcher != null || fileName.isEmpty()) return;
+        reload();
+        watcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "rule-watcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        statsLogged = System.currentTimeMillis();
+        if (reloadInterval > 0) watcher.scheduleWithFixedDelay(this::poll, reloadInterval, reloadInterval, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (watcher == null) return;
+        watcher.shutdownNow();
+        watcher = null;
+        logStats();
+    }
+
+    /**
+     * Applies the first matching rule, or passes the message on if none matches.
+     */
+    public Verdict decide(final MessageContext context) {
+        final RuleTree current = tree;
+        if (current.size() == 0) return Verdict.pass();
+        final long started = System.nanoTime();
+        final RuleTree.CompiledRule rule = current.match(context, () -> floodStrategy.rate(context));
+        final long elapsed = System.nanoTime() - started;
+        evaluations.increment();
+        evaluationNanos.add(elapsed);
+        slowestNanos.accumulateAndGet(elapsed, Math::max);
+        if (rule == null) return Verdict.pass();
+
+        log.info("Rule " + rule.name + " matched message " + context.getMessageId() + " in chat " + context.getChatId());
+        final ArrayList<BotApiMethod> result = new ArrayList<>();
+        for (RuleAction action : rule.actions) apply(action, context, result);
+        return Verdict.stop(result);
+    }
+
+    private void apply(final RuleAction action, final MessageContext context, final ArrayList<BotApiMethod> result) {
+        final long chatId = context.getChatId();
+        final int userId = context.getUserId();
+        switch (action.type) {
+            case DELETE:
+                result.add(new DeleteMessage(chatId, context.getMessageId()));
+                break;
+            case REVIEW:
+                final String content = context.getTextOrCaption();
+                final String data = content.isEmpty() ? "" : BlacklistIndex.feedbackData(Fingerprint.of(content));
+                reviewDigest.review(userId, chatId, data, ReviewDigest.preview(context.getMessage()), result);
+                break;
+            case WARN:
+                commandStrategy.warnUser(context.getMessage().getFrom(), chatId, result);
+                break;
+            case BAN:
+                result.add(Bans.ban(userId, chatId, until(action)));
+                break;
+            case MUTE:
+                final RestrictChatMember mute = new RestrictChatMember(chatId, userId);
+                mute.setUntilDate(until(action));
+                mute.setCanSendMessages(false);
+                result.add(mute);
+                break;
+            case ALLOW:
+                break;
+        }
+    }
+
+    /**
+     * The until date of a ban or mute, 0 for good.
+     */
+    private static int until(final RuleAction action) {
+        return action.seconds == 0 ? 0 : (int) Instant.now().getEpochSecond() + action.seconds;
+    }
+
+    private void poll() {
+        try {
+            reload();
+            if (System.currentTimeMillis() - statsLogged >= STATS_INTERVAL_MILLIS) logStats();
+        } catch (RuntimeException e) {
+            log.error("Could not check the rules file", e);
+        }
+    }
+
+    private synchronized void reload() {
+        final Path path = Paths.get(fileName);
+        try {
+            if (!Files.isRegularFile(path)) {
+                if (loadedModified != 0) log.warn("Rules file " + path + " not found, keeping the previous rules");
+                loadedModified = 0;
+                return;
+            }
+            final long modified = Files.getLastModifiedTime(path).toMillis();
+            final long size = Files.size(path);
+            if (modified == loadedModified && size == loadedSize) return;
+            loadedModified = modified;
+            loadedSize = size;
+            final RuleTree compiled = RuleTree.compile(RuleFile.read(path), maxChecks);
+            tree = compiled;
+            log.info("Loaded " + compiled.size() + " rules from " + path);
+            logStats();
+        } catch (IOException | RuntimeException e) {
+            log.error("Could not load the rules from " + path + ", keeping the previous rules: " + e.getMessage());
+        }
+    }
+
+    private void logStats() {
+        statsLogged = System.currentTimeMillis();
+        final long count = evaluations.sumThenReset();
+        final long nanos = evaluationNanos.sumThenReset();
+        final long slowest = slowestNanos.getAndSet(0);
+        if (count == 0) return;
+        log.info("Matched rules for " + count + " messages, " + nanos / count + " ns on average, " + slowest + " ns at most");
+    }
+
+}
@@ -0,0 +1,245 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.rules;
+
+import com.apex.strategy.MessageContext;
+import org.telegram.telegrambots.meta.api.objects.Document;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.MessageEntity;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntSupplier;
+
+/**
+ * The rules compiled into a decision tree by chat, media kind and trusted sender. The first matching rule
+ * wins, the rules of a chat come before the default ones.
+ */
+final class RuleTree {
+
+    static final RuleTree EMPTY = new RuleTree(new HashMap<>(), leaves(new ArrayList<>()), new HashMap<>(), 0);
+
+    private final Map<Long, CompiledRule[][]> chats;
+    private final CompiledRule[][] defaults;
+    private final Map<String, Integer> entityBits;
+    private final int ruleCount;
+
+    private RuleTree(final Map<Long, CompiledRule[][]> chats, final CompiledRule[][] defaults,
+                     final Map<String, Integer> entityBits, final int ruleCount) {
+        this.chats = chats;
+        this.defaults = defaults;
+        this.entityBits = entityBits;
+        this.ruleCount = ruleCount;
+    }
+
+    /**
+     * Compiles the rules, throws an IllegalArgumentException naming the rule that is invalid or the leaf
+     * that would need more than maxChecks rules to be checked.
+     */
+    static RuleTree compile(final RuleFile file, final int maxChecks) {
+        final Map<String, Integer> entityBits = new HashMap<>();
+        final Map<String, List<CompiledRule>> compiled = new HashMap<>();
+        int ruleCount = 0;
+        for (Map.Entry<String, List<RuleFile.Rule>> chat : file.chats.entrySet()) {
+            final List<CompiledRule> rules = new ArrayList<>();
+            for (RuleFile.Rule rule : chat.getValue()) rules.add(new CompiledRule(rule, entityBits));
+            compiled.put(chat.getKey(), rules);
+            ruleCount += rules.size();
+        }
+        final List<CompiledRule> defaultRules = compiled.getOrDefault(RuleFile.DEFAULT_CHAT, Collections.emptyList());
+        final CompiledRule[][] defaults = leaves(defaultRules);
+        checkBound(RuleFile.DEFAULT_CHAT, defaults, maxChecks);
+        final Map<Long, CompiledRule[][]> chats = new HashMap<>();
+        for (Map.Entry<String, List<CompiledRule>> chat : compiled.entrySet()) {
+            if (chat.getKey().equals(RuleFile.DEFAULT_CHAT)) continue;
+            final long chatId;
+            try {
+                chatId = Long.parseLong(chat.getKey().trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Chat " + chat.getKey() + " is neither a chat id nor default");
+            }
+            final List<CompiledRule> rules = new ArrayList<>(chat.getValue());
+            rules.addAll(defaultRules);
+            final CompiledRule[][] leaves = leaves(rules);
+            checkBound(chat.getKey(), leaves, maxChecks);
+            chats.put(chatId, leaves);
+        }
+        return new RuleTree(chats, defaults, entityBits, ruleCount);
+    }
+
+    /**
+     * The first rule matching the message, null if none does. The rate is only asked for if a candidate
+     * rule has a rate condition.
+     */
+    CompiledRule match(final MessageContext context, final IntSupplier rate) {
+        final CompiledRule[][] leaves = chats.getOrDefault(context.getChatId(), defaults);
+        final Message message = context.getMessage();
+        final CompiledRule[] candidates = leaves[leaf(MediaKind.of(message), context.isTrusted())];
+        if (candidates.length == 0) return null;
+        final long entities = entityMask(message.getEntities()) | entityMask(message.getCaptionEntities());
+        final Document document = message.getDocument();
+        final String extension = document == null ? null : extension(document.getFileName());
+        final String mimeType = document == null || document.getMimeType() == null ?
+                null : document.getMimeType().toLowerCase(Locale.ROOT);
+        int knownRate = -1;
+        for (CompiledRule rule : candidates) {
+            if (rule.entityMask != 0 && (entities & rule.entityMask) == 0) continue;
+            if (context.getWarnings() < rule.minWarnings || context.getWarnings() > rule.maxWarnings) continue;
+            if (rule.extensions != null && !rule.extensions.contains(extension)) continue;
+            if (rule.mimeTypes != null && !rule.mimeTypes.contains(mimeType)) continue;
+            if (rule.minRate > 0) {
+                if (knownRate < 0) knownRate = rate.getAsInt();
+                if (knownRate < rule.minRate) continue;
+            }
+            return rule;
+        }
+        return null;
+    }
+
+    int size() {
+        return ruleCount;
+    }
+
+    private long entityMask(final List<MessageEntity> entities) {
+        if (entities == null) return 0;
+        long mask = 0;
+        for (MessageEntity entity : entities) {
+            final Integer bit = entity.getType() == null ? null : entityBits.get(entity.getType());
+            if (bit != null) mask |= 1L << bit;
+        }
+        return mask;
+    }
+
+    private static CompiledRule[][] leaves(final List<CompiledRule> rules) {
+        final CompiledRule[][] leaves = new CompiledRule[MediaKind.values().length * 2][];
+        for (MediaKind media : MediaKind.values()) {
+            for (boolean trusted : new boolean[]{false, true}) {
+                final List<CompiledRule> candidates = new ArrayList<>();
+                for (CompiledRule rule : rules) if (rule.admits(media, trusted)) candidates.add(rule);
+                leaves[leaf(media, trusted)] = candidates.toArray(new CompiledRule[0]);
+            }
+        }
+        return leaves;
+    }
+
+    private static void checkBound(final String chat, final CompiledRule[][] leaves, final int maxChecks) {
+        for (MediaKind media : MediaKind.values()) {
+            for (boolean trusted : new boolean[]{false, true}) {
+                final int checks = leaves[leaf(media, trusted)].length;
+                if (checks > maxChecks) {
+                    throw new IllegalArgumentException(checks + " rules of chat " + chat + " apply to " +
+                            media.name().toLowerCase(Locale.ROOT) + (trusted ? " of trusted" : " of other") +
+                            " users, at most " + maxChecks + " are allowed");
+                }
+            }
+        }
+    }
+
+    private static int leaf(final MediaKind media, final boolean trusted) {
+        return media.ordinal() * 2 + (trusted ? 1 : 0);
+    }
+
+    private static String extension(final String fileName) {
+        if (fileName == null || fileName.lastIndexOf('.') < 0) return "";
+        return fileName.substring(fileName.lastIndexOf('.') + 1).trim().toLowerCase(Locale.ROOT);
+    }
+
+    static final class CompiledRule {
+
+        final String name;
+        final Set<MediaKind> media;
+        final Boolean trusted;
+        final long entityMask;
+        final int minWarnings;
+        final int maxWarnings;
+        final int minRate;
+        final Set<String> extensions;
+        final Set<String> mimeTypes;
+        final List<RuleAction> actions;
+
+        private CompiledRule(final RuleFile.Rule rule, final Map<String, Integer> entityBits) {
+            if (rule.name == null || rule.name.trim().isEmpty()) throw new IllegalArgumentException("A rule has no name");
+            this.name = rule.name;
+            final RuleFile.Condition when = rule.when == null ? new RuleFile.Condition() : rule.when;
+            try {
+                if (when.media == null) {
+                    media = null;
+                } else {
+                    media = new HashSet<>();
+                    for (String kind : when.media) media.add(MediaKind.parse(kind));
+                }
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Rule " + name + " has an unknown media kind " + when.media);
+            }
+            trusted = when.trusted;
+            long mask = 0;
+            if (when.entities != null) {
+                for (String type : when.entities) {
+                    Integer bit = entityBits.get(type);
+                    if (bit == null) {
+                        if (entityBits.size() == 64) throw new IllegalArgumentException("More than 64 entity types");
+                        bit = entityBits.size();
+                        entityBits.put(type, bit);
+                    }
+                    mask |= 1L << bit;
+                }
+            }
+            entityMask = mask;
+            minWarnings = when.minWarnings == null ? 0 : when.minWarnings;
+            maxWarnings = when.maxWarnings == null ? Integer.MAX_VALUE : when.maxWarnings;
+            minRate = when.minRate == null ? 0 : when.minRate;
+            extensions = lowerCase(when.extensions);
+            mimeTypes = lowerCase(when.mimeTypes);
+            if (rule.then == null) throw new IllegalArgumentException("Rule " + name + " has no actions");
+            actions = new ArrayList<>();
+            for (String action : rule.then) {
+                try {
+                    actions.add(RuleAction.parse(action));
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Rule " + name + ": " + e.getMessage());
+                }
+            }
+        }
+
+        private boolean admits(final MediaKind kind, final boolean trustedSender) {
+            return (media == null || media.contains(kind)) && (trusted == null || trusted == trustedSender);
+        }
+
+        private static Set<String> lowerCase(final List<String> values) {
+            if (values == null) return null;
+            final Set<String> set = new HashSet<>();
+            for (String value : values) set.add(value.trim().toLowerCase(Locale.ROOT));
+            return set;
+        }
+
+    }
+
+}
@@ -0,0 +1,89 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.store;
+
+import com.apex.bot.IRunWithOwnThread;
+import com.apex.entities.Feedback;
+import com.apex.entities.TGUser;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Storage of the moderation state. The backend is picked with store.backend:
+ * jpa keeps the state in the H2 tables, mvstore in an embedded key-value file.
+ */
+public interface IModerationStore extends IRunWithOwnThread {
+
+    Optional<TGUser> findUser(int userId);
+
+    void saveUser(TGUser user);
+
+    void deleteUser(int userId);
+
+    /**
+     * Creates and stores a feedback, the returned feedback already carries its id.
+     */
+    Feedback createFeedback(int userId, long chatId, String data);
+
+    Optional<Feedback> findFeedback(long feedbackId);
+
+    void deleteFeedback(Feedback feedback);
+
+    /**
+     * Deletes all feedback with the data and returns it. Concurrent calls never return the same feedback.
+     */
+    List<Feedback> takeFeedbackWithData(String data);
+
+    /**
+     * Deletes the feedback created before the given time and returns its ids.
+     */
+    List<Long> deleteFeedbackCreatedBefore(long epochSecond);
+
+    void addBlacklist(long fingerprint);
+
+    /**
+     * Blacklists a CRC32 taken from a feedback that was created before fingerprints were introduced.
+     */
+    void addLegacyBlacklist(long crc);
+
+    /**
+     * Blacklists every link matching the rule, see {@link com.apex.addition.CanonicalLink#blacklistRule}.
+     */
+    void addLinkBlacklist(String rule);
+
+    /**
+     * Blacklists images within a small Hamming distance of the perceptual hash.
+     */
+    void addImageBlacklist(long hash);
+
+    /**
+     * Blacklists texts within a small Hamming distance of the SimHash.
+     */
+    void addTextBlacklist(long hash);
+
+    void forEachBlacklist(IBlacklistVisitor visitor);
+
+}
@@ -0,0 +1,292 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.store;
+
+import com.apex.entities.Feedback;
+import com.apex.entities.TGUser;
+import com.apex.repository.FeedbackCreatedMigration;
+import com.apex.repository.IBlackListRepository;
+import com.apex.repository.IFeedbackRepository;
+import com.apex.repository.ITGUserRepository;
+import com.apex.repository.LegacyBlacklistMigration;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Moderation state in an H2 MVStore file, without JPA in between.
+ */
+@Component
+@ConditionalOnProperty(name = "store.backend", havingValue = "mvstore")
+public class MVStoreModerationStore implements IModerationStore {
+
+    private static final String MIGRATED = "migrated";
+    private static final String CREATED_STAMPED = "createdStamped";
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    @Autowired
+    private ITGUserRepository tgUserRepository;
+
+    @Autowired
+    private IFeedbackRepository feedbackRepository;
+
+    @Autowired
+    private IBlackListRepository blackListRepository;
+
+    @Autowired
+    private LegacyBlacklistMigration legacyBlacklistMigration;
+
+    @Autowired
+    private FeedbackCreatedMigration feedbackCreatedMigration;
+
+    @Value("${store.mvstore.file}")
+    private String fileName;
+
+    @Value("${store.mvstore.commit-delay}")
+    private int commitDelay;
+
+    @Value("${store.mvstore.migrate}")
+    private boolean migrate;
+
+    private MVStore store;
+    private MVMap<Integer, Long> users;
+    private MVMap<Long, Boolean> blacklist;
+    private MVMap<Long, Boolean> legacyBlacklist;
+    private MVMap<String, Boolean> linkBlacklist;
+    private MVMap<Long, Boolean> imageBlacklist;
+    private MVMap<Long, Boolean> textBlacklist;
+    private MVMap<Long, Object[]> feedback;
+    private MVMap<String, String> meta;
+    private final AtomicLong feedbackIds = new AtomicLong();
+
+    @PostConstruct
+    public void open() {
+        store = new MVStore.Builder().fileName(fileName).compress().open();
+        store.setAutoCommitDelay(commitDelay);
+        users = store.openMap("users");
+        blacklist = store.openMap("fingerprints");
+        legacyBlacklist = store.openMap("legacyBlacklist");
+        linkBlacklist = store.openMap("linkBlacklist");
+        imageBlacklist = store.openMap("imageBlacklist");
+        textBlacklist = store.openMap("textBlacklist");
+        feedback = store.openMap("feedback");
+        meta = store.openMap("meta");
+        if (migrate && !meta.containsKey(MIGRATED)) migrateFromTables();
+        if (store.hasMap("blacklist")) migrateHashMap();
+        if (!meta.containsKey(CREATED_STAMPED)) stampCreated();
+        final Long lastId = feedback.lastKey();
+        feedbackIds.set(lastId == null ? 0L : lastId);
+        log.info("Opened " + fileName + " with " + users.size() + " users, " + blacklist.size() +
+                " blacklisted fingerprints and " + feedback.size() + " feedback");
+    }
+
+    @Override
+    public Optional<TGUser> findUser(final int userId) {
+        final Long packed = users.get(userId);
+        return packed == null ? Optional.empty() : Optional.of(unpack(userId, packed));
+    }
+
+    @Override
+    public void saveUser(final TGUser user) {
+        users.put(user.getUserId(), pack(user));
+    }
+
+    @Override
+    public void deleteUser(final int userId) {
+        users.remove(userId);
+    }
+
+    @Override
+    public Feedback createFeedback(final int userId, final long chatId, final String data) {
+        final Feedback created = new Feedback(userId, chatId, data);
+        created.setFeedbackId(feedbackIds.incrementAndGet());
+        feedback.put(created.getFeedbackId(), toRow(created));
+        return created;
+    }
+
+    @Override
+    public Optional<Feedback> findFeedback(final long feedbackId) {
+        final Object[] row = feedback.get(feedbackId);
+        return row == null ? Optional.empty() : Optional.of(fromRow(feedbackId, row));
+    }
+
+    @Override
+    public void deleteFeedback(final Feedback deleted) {
+        feedback.remove(deleted.getFeedbackId());
+    }
+
+    /**
+     * Feedback lives for the feedback ttl only, so it is scanned instead of keeping an index of the data.
+     */
+    @Override
+    public List<Feedback> takeFeedbackWithData(final String data) {
+        final List<Feedback> taken = new ArrayList<>();
+        for (Map.Entry<Long, Object[]> entry : feedback.entrySet()) {
+            if (!data.equals(entry.getValue()[2])) continue;
+            final Object[] row = feedback.remove(entry.getKey());
+            if (row != null) taken.add(fromRow(entry.getKey(), row));
+        }
+        return taken;
+    }
+
+    @Override
+    public List<Long> deleteFeedbackCreatedBefore(final long epochSecond) {
+        final List<Long> expired = new ArrayList<>();
+        for (Map.Entry<Long, Object[]> entry : feedback.entrySet()) {
+            if ((Long) entry.getValue()[3] < epochSecond) expired.add(entry.getKey());
+        }
+        expired.forEach(feedback::remove);
+        return expired;
+    }
+
+    @Override
+    public void addBlacklist(final long fingerprint) {
+        blacklist.put(fingerprint, Boolean.TRUE);
+    }
+
+    @Override
+    public void addLegacyBlacklist(final long crc) {
+        legacyBlacklist.put(crc, Boolean.TRUE);
+    }
+
+    @Override
+    public void addLinkBlacklist(final String rule) {
+        linkBlacklist.put(rule, Boolean.TRUE);
+    }
+
+    @Override
+    public void addImageBlacklist(final long hash) {
+        imageBlacklist.put(hash, Boolean.TRUE);
+    }
+
+    @Override
+    public void addTextBlacklist(final long hash) {
+        textBlacklist.put(hash, Boolean.TRUE);
+    }
+
+    @Override
+    public void forEachBlacklist(final IBlacklistVisitor visitor) {
+        blacklist.keySet().forEach(visitor::fingerprint);
+        legacyBlacklist.keySet().forEach(visitor::legacyCrc);
+        linkBlacklist.keySet().forEach(visitor::linkRule);
+        imageBlacklist.keySet().forEach(visitor::imageHash);
+        textBlacklist.keySet().forEach(visitor::textHash);
+    }
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (store != null && !store.isClosed()) store.close();
+    }
+
+    private void migrateFromTables() {
+        legacyBlacklistMigration.migrate();
+        feedbackCreatedMigration.migrate();
+        tgUserRepository.findAll().forEach(this::saveUser);
+        blackListRepository.findAll().forEach(entry -> {
+            if (entry.getLink() != null) addLinkBlacklist(entry.getLink());
+            else if (entry.getImageHash() != null) addImageBlacklist(entry.getImageHash());
+            else if (entry.getTextHash() != null) addTextBlacklist(entry.getTextHash());
+            else if (entry.getFingerprint() != null) addBlacklist(entry.getFingerprint());
+            else if (entry.getLegacyCrc() != null) addLegacyBlacklist(entry.getLegacyCrc());
+        });
+        feedbackRepository.findAll().forEach(row -> feedback.put(row.getFeedbackId(), toRow(row)));
+        meta.put(MIGRATED, Instant.now().toString());
+        store.commit();
+        log.info("Migrated " + users.size() + " users, " + (blacklist.size() + legacyBlacklist.size() + linkBlacklist.size() + imageBlacklist.size() + textBlacklist.size()) + " blacklist entries and " +
+                feedback.size() + " feedback from the database");
+    }
+
+    /**
+     * Gives feedback copied before its creation time was kept the time of this migration.
+     */
+    private void stampCreated() {
+        final long now = Instant.now().getEpochSecond();
+        int stamped = 0;
+        for (Map.Entry<Long, Object[]> entry : feedback.entrySet()) {
+            final Object[] row = entry.getValue();
+            if ((Long) row[3] != 0L) continue;
+            feedback.put(entry.getKey(), new Object[]{row[0], row[1], row[2], now});
+            stamped++;
+        }
+        meta.put(CREATED_STAMPED, Instant.now().toString());
+        store.commit();
+        if (stamped > 0) log.info("Stamped " + stamped + " feedback without a creation time");
+    }
+
+    /**
+     * Moves the CRC32 strings kept by earlier versions into the legacy map.
+     */
+    private void migrateHashMap() {
+        final MVMap<String, Boolean> hashes = store.openMap("blacklist");
+        for (String hash : hashes.keySet()) {
+            try {
+                addLegacyBlacklist(Long.parseLong(hash));
+            } catch (NumberFormatException e) {
+                log.info("Drop blacklist entry with malformed hash " + hash);
+            }
+        }
+        store.removeMap(hashes);
+        store.commit();
+        log.info("Migrated " + legacyBlacklist.size() + " legacy blacklist hashes");
+    }
+
+    private static long pack(final TGUser user) {
+        return ((long) user.getCount() << 1) | (user.isTrusted() ? 1L : 0L);
+    }
+
+    private static TGUser unpack(final int userId, final long packed) {
+        return new TGUser(userId, (int) (packed >> 1), (packed & 1L) != 0);
+    }
+
+    private static Object[] toRow(final Feedback f) {
+        return new Object[]{f.getUserId(), f.getChatId(), f.getData(), f.getCreated()};
+    }
+
+    private static Feedback fromRow(final long feedbackId, final Object[] row) {
+        final Feedback f = new Feedback((Integer) row[0], (Long) row[1], (String) row[2]);
+        f.setFeedbackId(feedbackId);
+        f.setCreated((Long) row[3]);
+        return f;
+    }
+
+}
@@ -24,30 +24,38 @@
 
 package com.apex.strategy;
 
+import com.apex.addition.Bans;
+import com.apex.cache.TGUserCache;
+import com.apex.command.CommandRegistry;
+import com.apex.command.CommandScanner;
 import com.apex.entities.TGUser;
-import com.apex.repository.ITGUserRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
-import org.telegram.telegrambots.meta.api.methods.groupadministration.KickChatMember;
 import org.telegram.telegrambots.meta.api.methods.groupadministration.RestrictChatMember;
 import org.telegram.telegrambots.meta.api.methods.groupadministration.UnbanChatMember;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
-import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.api.objects.User;
 import java.math.BigDecimal;
 import java.time.Instant;
 import java.util.ArrayList;
 
+/**
+ * Admin commands, given in reply to a message of the user they apply to. All commands in the text are
+ * carried out. !mute takes an optional number of hours, e.g. !mute36, without one or with 0 the user is muted for good.
+ */
 @Component
 public class CommandStrategy implements IStrategy {
 
+    private static final int MAX_MUTE_HOURS = 366 * 24;
+
     private final Logger log = LoggerFactory.getLogger(this.getClass());
 
     @Autowired
-    private ITGUserRepository tgUserRepository;
+    private TGUserCache tgUserCache;
 
     @Value("${first.warning}")
     private String firstWarning;
@@ -58,97 +66,113 @@ public class CommandStrategy implements IStrategy {
     @Value("${third.warning}")
     private String thirdWarning;
 
+    private final CommandScanner commands = new CommandRegistry()
+            .register("!forgive", this::forgive)
+            .register("!warn", this::warn)
+            .registerWithArgument("!mute", this::mute)
+            .register("!unmute", this::unmute)
+            .register("!unban", this::unban)
+            .register("!trust", this::trust)
+            .compile();
+
     @Override
-    public ArrayList<BotApiMethod> runStrategy(Update update) {
+    public ArrayList<BotApiMethod> runStrategy(MessageContext context) {
 
         final ArrayList<BotApiMethod> result = new ArrayList<>();
-        try {
-            if (update.hasMessage()) {
-
-                final String messageText = update.getMessage().getText();
-                final int userId = update.getMessage().getReplyToMessage().getFrom().getId();
-                final long chatId = update.getMessage().getChatId();
-                final String userName = update.getMessage().getReplyToMessage().getFrom().getFirstName();
-
-                if (messageText.contains("!forgive")) {
-                        tgUserRepository.findById(userId).ifPresent(user -> {
-                            tgUserRepository.delete(user);
-                            final SendMessage msg = new SendMessage();
-                            msg.setChatId(update.getMessage().getChatId());
-                            msg.setText("All is forgiven, " + userName + ", I love you! (again)");
-                            result.add(msg);
-                            log.info("User " + userName + " was forgiven");
-                        });
-                } else if (messageText.contains("!warn")) {
-                    final SendMessage msg = new SendMessage();
-                    msg.setChatId(chatId);
-                    tgUserRepository.findById(userId).ifPresentOrElse(user -> {
-                        user.setCount(user.getCount() + 1);
-                        if (user.getCount() == 1){
-                            msg.setText(userName + ", " + firstWarning);
-                        } else if (user.getCount() == 2){
-                            msg.setText(userName + ", " + secondWarning);
-                        } else if(user.getCount() >= 3) {
-                            result.add(banUser(userId, chatId));
-                            msg.setText(userName + " " + thirdWarning);
-                        }
-                        tgUserRepository.save(user);
-                    }, () -> {
-                        tgUserRepository.save(new TGUser(userId, 1, true));
-                        msg.setText(userName + firstWarning);
-                    });
-                    result.add(msg);
-                } else if (messageText.contains("!mute")) {
-                        long timeToMute = Instant.now().getEpochSecond();
-                        if (messageText.contains("!mute1")) timeToMute += 3600;
-                        else if (messageText.contains("!mute24")) timeToMute += 86400;
-                        else if (messageText.contains("!mute48")) timeToMute += 172800;
-                        final RestrictChatMember mute = new RestrictChatMember();
-                        mute.setUserId(userId);
-                        mute.setChatId(chatId);
-                        mute.setUntilDate(new BigDecimal(timeToMute).intValueExact());
-                        mute.setCanAddWebPagePreviews(false);
-                        mute.setCanSendMessages(false);
-                        mute.setCanSendMediaMessages(false);
-                        mute.setCanSendOtherMessages(false);
-                        log.info("User " + userName + " was muted");
-                        result.add(mute);
-                } else if (messageText.contains("!unmute")) {
-                        RestrictChatMember unmute = new RestrictChatMember();
-                        unmute.setUserId(userId);
-                        unmute.setChatId(chatId);
-                        unmute.setCanAddWebPagePreviews(true);
-                        unmute.setCanSendMessages(true);
-                        unmute.setCanSendMediaMessages(true);
-                        unmute.setCanSendOtherMessages(true);
-                        log.info("User " + userName + " was unmuted");
-                        result.add(unmute);
-                } else if (messageText.contains("!unban")) {
-                        UnbanChatMember unban = new UnbanChatMember();
-                        unban.setUserId(userId);
-                        unban.setChatId(chatId);
-                        log.info("User " + userName + " was unbanned");
-                        result.add(unban);
-                } else if (messageText.contains("!trust")) {
-                        tgUserRepository.findById(userId).ifPresentOrElse(user -> {
-                            user.setTrusted(true);
-                            tgUserRepository.save(user);
-                        }, () -> tgUserRepository.save(new TGUser(userId, 0, true)));
-                        log.info("User " + userName + " was trusted");
-                }
-            }
-        } catch (NullPointerException e) {
-            log.info("Had a Nullpointer in CommandStrategy");
-        }
+        if (context.hasReplyTarget()) commands.dispatch(context, context.getText(), result);
         return result;
     }
 
+    private void forgive(final MessageContext context, final Integer argument, final ArrayList<BotApiMethod> result) {
+        final User target = context.getReplyTarget();
+        tgUserCache.findById(target.getId()).ifPresent(user -> {
+            tgUserCache.delete(user);
+            final SendMessage msg = new SendMessage();
+            msg.setChatId(context.getChatId());
+            msg.setText("All is forgiven, " + target.getFirstName() + ", I love you! (again)");
+            result.add(msg);
+            log.info("User " + target.getFirstName() + " was forgiven");
+        });
+    }
+
+    private void warn(final MessageContext context, final Integer argument, final ArrayList<BotApiMethod> result) {
+        warnUser(context.getReplyTarget(), context.getChatId(), result);
+    }
+
+    /**
+     * Counts a warning for the user and tells them so, the third warning bans them.
+     */
+    public void warnUser(final User target, final long chatId, final ArrayList<BotApiMethod> result) {
+        final String userName = target.getFirstName();
+        final SendMessage msg = new SendMessage();
+        msg.setChatId(chatId);
+        final TGUser user = tgUserCache.update(target.getId(), known -> {
+            final TGUser warned = known != null ? known : new TGUser(target.getId(), 0, false);
+            warned.setCount(warned.getCount() + 1);
+            return warned;
+        });
+        if (user.getCount() == 1){
+            msg.setText(userName + ", " + firstWarning);
+        } else if (user.getCount() == 2){
+            msg.setText(userName + ", " + secondWarning);
+        } else {
+            result.add(banUser(target.getId(), chatId));
+            msg.setText(userName + " " + thirdWarning);
+        }
+        result.add(msg);
+    }
+
+    private void mute(final MessageContext context, final Integer hours, final ArrayList<BotApiMethod> result) {
+        final User target = context.getReplyTarget();
+        // 0 mutes for good
+        long timeToMute = 0;
+        if (hours != null && hours > 0) timeToMute = Instant.now().getEpochSecond() + Math.min(hours, MAX_MUTE_HOURS) * 3600L;
+        final RestrictChatMember mute = new RestrictChatMember();
+        mute.setUserId(target.getId());
+        mute.setChatId(context.getChatId());
+        mute.setUntilDate(new BigDecimal(timeToMute).intValueExact());
+        mute.setCanAddWebPagePreviews(false);
+        mute.setCanSendMessages(false);
+        mute.setCanSendMediaMessages(false);
+        mute.setCanSendOtherMessages(false);
+        log.info("User " + target.getFirstName() + " was muted");
+        result.add(mute);
+    }
+
+    private void unmute(final MessageContext context, final Integer argument, final ArrayList<BotApiMethod> result) {
+        final User target = context.getReplyTarget();
+        RestrictChatMember unmute = new RestrictChatMember();
+        unmute.setUserId(target.getId());
+        unmute.setChatId(context.getChatId());
+        unmute.setCanAddWebPagePreviews(true);
+        unmute.setCanSendMessages(true);
+        unmute.setCanSendMediaMessages(true);
+        unmute.setCanSendOtherMessages(true);
+        log.info("User " + target.getFirstName() + " was unmuted");
+        result.add(unmute);
+    }
+
+    private void unban(final MessageContext context, final Integer argument, final ArrayList<BotApiMethod> result) {
+        final User target = context.getReplyTarget();
+        UnbanChatMember unban = new UnbanChatMember();
+        unban.setUserId(target.getId());
+        unban.setChatId(context.getChatId());
+        log.info("User " + target.getFirstName() + " was unbanned");
+        result.add(unban);
+    }
+
+    private void trust(final MessageContext context, final Integer argument, final ArrayList<BotApiMethod> result) {
+        final User target = context.getReplyTarget();
+        tgUserCache.update(target.getId(), known -> {
+            final TGUser user = known != null ? known : new TGUser(target.getId(), 0, false);
+            user.setTrusted(true);
+            return user;
+        });
+        log.info("User " + target.getFirstName() + " was trusted");
+    }
+
     private BotApiMethod banUser(int userId, long chatId){
-        KickChatMember ban = new KickChatMember();
-        ban.setUserId(userId);
-        ban.setChatId(chatId);
-        ban.setUntilDate(new BigDecimal(Instant.now().getEpochSecond() + 864000).intValueExact());
-        return ban;
+        return Bans.ban(userId, chatId, new BigDecimal(Instant.now().getEpochSecond() + 864000).intValueExact());
     }
 
 }
@@ -24,42 +24,33 @@
 
 package com.apex.strategy;
 
-import com.apex.addition.FeedbackKeyboard;
-import com.apex.entities.Blacklist;
-import com.apex.entities.TGUser;
-import com.apex.repository.IBlackListRepository;
-import com.apex.repository.IFeedbackRepository;
-import com.apex.repository.ITGUserRepository;
+import com.apex.addition.Bans;
+import com.apex.addition.CanonicalLink;
+import com.apex.addition.Fingerprint;
+import com.apex.bot.ReviewDigest;
+import com.apex.bot.TenantRegistry;
+import com.apex.cache.BlacklistIndex;
+import com.apex.media.DocumentFingerprinter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
-import org.telegram.telegrambots.meta.api.methods.ForwardMessage;
 import org.telegram.telegrambots.meta.api.methods.groupadministration.KickChatMember;
 import org.telegram.telegrambots.meta.api.methods.updatingmessages.DeleteMessage;
 import org.telegram.telegrambots.meta.api.objects.*;
-import java.math.BigDecimal;
-import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collectors;
-import java.util.zip.CRC32;
 
 @Component
 public class DeleteStrategy implements IStrategy {
 
     @Autowired
-    private IFeedbackRepository feedbackRepository;
-
-    @Autowired
-    private ITGUserRepository tgUserRepository;
-
-    @Autowired
-    private IBlackListRepository blackListRepository;
-
-    @Value("${bot.verification}")
-    private long verification;
+    private BlacklistIndex blacklistIndex;
 
     @Value("${bot.mimetypes}")
     private List<String> mimeTypes;
@@ -67,36 +58,54 @@ public class DeleteStrategy implements IStrategy {
     @Value("${bot.filenames}")
     private List<String> fileNames;
 
+    @Value("${blacklist.shared-hosts}")
+    private List<String> sharedHosts;
+
+    @Autowired
+    private TenantRegistry tenantRegistry;
+
+    @Autowired
+    private DocumentFingerprinter documentFingerprinter;
+
+    @Autowired
+    private ReviewDigest reviewDigest;
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
     @Override
-    public ArrayList<BotApiMethod> runStrategy(Update update) {
+    public ArrayList<BotApiMethod> runStrategy(MessageContext context) {
 
         final ArrayList<BotApiMethod> result = new ArrayList<>();
-        final int userId = update.getMessage().getFrom().getId();
-        final long chatId = update.getMessage().getChatId();
-        final int messageId = update.getMessage().getMessageId();
-        final List<MessageEntity> msgList = update.getMessage().getEntities();
-
-        final Optional<TGUser> userOpt = tgUserRepository.findById(userId);
-        if(userOpt.isPresent()){
-            if(userOpt.get().isTrusted()) return result;
-        }
-
-        if (update.getMessage().hasDocument()) {
-            final Document doc = update.getMessage().getDocument();
+        final Message message = context.getMessage();
+        final int userId = context.getUserId();
+        final long chatId = context.getChatId();
+        final int messageId = context.getMessageId();
+        final List<MessageEntity> msgList = message.getEntities();
+        final String preview = ReviewDigest.preview(message);
+
+        if (message.hasDocument()) {
+            final Document doc = message.getDocument();
             final String mimeType = doc.getMimeType();
             final String fileName = doc.getFileName();
-            if (mimeTypes.contains(mimeType) &&
+            if (mimeTypes.contains(mimeType) && fileName != null &&
                     fileNames.contains(fileName.substring(fileName.indexOf(".") + 1).trim())) {
                 return result;
             } else {
                 final String hash = doc.getFileId() + doc.getFileName() +
-                        doc.getMimeType() + doc.getFileSize().toString();
-                return checkHashForBlacklist(hash, userId, chatId, messageId);
+                        doc.getMimeType() + doc.getFileSize();
+                final Long known = documentFingerprinter.cached(doc);
+                if(known != null) return checkDocumentForBlacklist(hash, known, userId, chatId, messageId, preview);
+                final ArrayList<BotApiMethod> actions = checkHashForBlacklist(hash, userId, chatId, messageId, preview);
+                if(!bans(actions)) {
+                    documentFingerprinter.submit(doc, tenantRegistry.forChat(chatId).getToken(),
+                            fingerprint -> banLater(context, blacklistIndex.contains(fingerprint)), () -> { });
+                }
+                return actions;
             }
         }
 
-        if(update.getMessage().hasPhoto()) {
-            final String hash = update.getMessage().getPhoto().stream()
+        if(message.hasPhoto()) {
+            final String hash = message.getPhoto().stream()
                     .map(photo -> (photo.getWidth() != null &&
                                 photo.getHeight() != null &&
                                 photo.getFileSize()!= null) ?
@@ -105,7 +114,20 @@ public class DeleteStrategy implements IStrategy {
                                 photo.getFileSize().toString() :
                                 "")
                     .collect(Collectors.joining());
-            return checkHashForBlacklist(hash, userId, chatId, messageId);
+            final Optional<PhotoSize> smallest = message.getPhoto().stream()
+                    .filter(photo -> photo.getFileId() != null)
+                    .min(Comparator.comparingLong(photo -> photo.getWidth() == null || photo.getHeight() == null ?
+                            Long.MAX_VALUE : (long) photo.getWidth() * photo.getHeight()));
+            if(smallest.isPresent()) {
+                final Long known = documentFingerprinter.cached(smallest.get());
+                if(known != null) return checkPhotoForBlacklist(hash, known, userId, chatId, messageId, preview);
+            }
+            final ArrayList<BotApiMethod> actions = checkHashForBlacklist(hash, userId, chatId, messageId, preview);
+            if(smallest.isPresent() && !bans(actions)) {
+                documentFingerprinter.submitPhoto(smallest.get(), tenantRegistry.forChat(chatId).getToken(),
+                        imageHash -> banLater(context, blacklistIndex.isImageBlacklisted(imageHash)), () -> { });
+            }
+            return actions;
         }
 
         if(msgList != null){
@@ -114,10 +136,10 @@ public class DeleteStrategy implements IStrategy {
                     String link = "";
                     if(ent.getText() != null) link = ent.getText();
                     if(ent.getUrl() != null) link = ent.getUrl();
-                    if(!link.equals("")) return checkHashForBlacklist(link, userId, chatId, messageId);
+                    if(!link.equals("")) return checkLinkForBlacklist(link, userId, chatId, messageId, preview);
                 }
                 if(ent.getType().contains("mention")) {
-                    return checkHashForBlacklist(String.valueOf(messageId), userId, chatId, messageId);
+                    return checkHashForBlacklist(context.getTextOrCaption(), userId, chatId, messageId, preview);
                 }
             }
         }
@@ -125,29 +147,82 @@ public class DeleteStrategy implements IStrategy {
         return result;
     }
 
-    private ArrayList<BotApiMethod> checkHashForBlacklist(final String data, final int userId,
-                                                          final long chatId, final int messageId){
+    /**
+     * Links are matched by their canonical form against the banned link rules, a ban covers the host of the link.
+     * Links that can not be parsed, and exact links, are matched by fingerprint.
+     */
+    private ArrayList<BotApiMethod> checkLinkForBlacklist(final String link, final int userId,
+                                                          final long chatId, final int messageId, final String preview){
+        final CanonicalLink canonical = CanonicalLink.parse(link);
+        if(canonical == null) return checkHashForBlacklist(link, userId, chatId, messageId, preview);
+        final String exact = canonical.toString();
+        final boolean blacklisted = blacklistIndex.isBlacklisted(canonical) ||
+                blacklistIndex.isBlacklisted(link, Fingerprint.of(link)) ||
+                blacklistIndex.isBlacklisted(exact, Fingerprint.of(exact));
+        final CanonicalLink rule = canonical.blacklistRule(sharedHosts);
+        return review(blacklisted, rule != null ? BlacklistIndex.feedbackData(rule) :
+                BlacklistIndex.feedbackData(Fingerprint.of(exact)), userId, chatId, messageId, preview);
+    }
+
+    /**
+     * Documents are matched by the fingerprint of their content, and by their name, type and size as before.
+     */
+    private ArrayList<BotApiMethod> checkDocumentForBlacklist(final String metadata, final long contentFingerprint,
+                                                              final int userId, final long chatId, final int messageId,
+                                                              final String preview){
+        final boolean blacklisted = blacklistIndex.contains(contentFingerprint) ||
+                blacklistIndex.isBlacklisted(metadata, Fingerprint.of(metadata));
+        return review(blacklisted, BlacklistIndex.feedbackData(contentFingerprint), userId, chatId, messageId, preview);
+    }
+
+    /**
+     * Photos are matched by the perceptual hash of their smallest size, and by their sizes as before.
+     */
+    private ArrayList<BotApiMethod> checkPhotoForBlacklist(final String sizes, final long imageHash,
+                                                           final int userId, final long chatId, final int messageId,
+                                                           final String preview){
+        final boolean blacklisted = blacklistIndex.isImageBlacklisted(imageHash) ||
+                (!sizes.isEmpty() && blacklistIndex.isBlacklisted(sizes, Fingerprint.of(sizes)));
+        return review(blacklisted, BlacklistIndex.imageFeedbackData(imageHash), userId, chatId, messageId, preview);
+    }
+
+    private ArrayList<BotApiMethod> checkHashForBlacklist(final String data, final int userId, final long chatId,
+                                                          final int messageId, final String preview){
+        // without content there is nothing to blacklist, the post is only reviewed
+        if(data.isEmpty()) return review(false, "", userId, chatId, messageId, preview);
+        final long fingerprint = Fingerprint.of(data);
+        return review(blacklistIndex.isBlacklisted(data, fingerprint), BlacklistIndex.feedbackData(fingerprint),
+                userId, chatId, messageId, preview);
+    }
+
+    /**
+     * A file that is not fingerprinted yet is deleted and reviewed by its metadata right away, the ban for
+     * blacklisted content follows once the fingerprint is known.
+     */
+    private void banLater(final MessageContext context, final boolean blacklisted) {
+        if(!blacklisted) return;
+        final List<BotApiMethod> ban = new ArrayList<>();
+        ban.add(Bans.banForGood(context.getUserId(), context.getChatId()));
+        context.followUp(ban);
+    }
+
+    private static boolean bans(final List<BotApiMethod> actions) {
+        return actions.stream().anyMatch(action -> action instanceof KickChatMember);
+    }
+
+    /**
+     * Bans the user if the content is blacklisted, otherwise sends it for review. The message is deleted either way.
+     */
+    private ArrayList<BotApiMethod> review(final boolean blacklisted, final String feedbackData, final int userId,
+                                           final long chatId, final int messageId, final String preview){
         final ArrayList<BotApiMethod> result = new ArrayList<>();
-        final CRC32 crc32 = new CRC32();
-        crc32.update(data.getBytes());
-        final String hash = String.valueOf(crc32.getValue());
-        final Optional<Blacklist> blacklistOpt = blackListRepository.findFirstByHash(hash);
-        if(blacklistOpt.isEmpty()){
-            result.add(new ForwardMessage(verification, chatId, messageId));
-            result.add(new FeedbackKeyboard(userId, chatId, verification, hash, feedbackRepository).getBanKeyboard());
+        if(!blacklisted){
+            reviewDigest.review(userId, chatId, feedbackData, preview, result);
         } else {
-            result.add(getBan(userId, chatId));
+            result.add(Bans.banForGood(userId, chatId));
         }
         result.add(new DeleteMessage(chatId, messageId));
         return result;
     }
 
-    private KickChatMember getBan(final int userId, final long chatId){
-        KickChatMember ban = new KickChatMember();
-        ban.setUserId(userId);
-        ban.setChatId(chatId);
-        ban.setUntilDate(new BigDecimal(Instant.now().getEpochSecond()).intValue());
-        return ban;
-    }
-
 }
@@ -0,0 +1,120 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.strategy;
+
+import com.apex.addition.Bans;
+import com.apex.addition.SimHash;
+import com.apex.bot.ReviewDigest;
+import com.apex.cache.BlacklistIndex;
+import com.apex.cache.DuplicateTextIndex;
+import com.apex.store.IModerationStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.DeleteMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reviews and deletes the same text posted by duplicate.users different users within duplicate.window seconds.
+ */
+@Component
+public class DuplicateTextStrategy implements IStrategy {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    @Autowired
+    private IModerationStore moderationStore;
+
+    @Autowired
+    private BlacklistIndex blacklistIndex;
+
+    @Autowired
+    private ReviewDigest reviewDigest;
+
+    private final DuplicateTextIndex index;
+    private final int minUsers;
+    private final int minLength;
+
+    public DuplicateTextStrategy(@Value("${duplicate.users}") int minUsers, @Value("${duplicate.window}") int windowSeconds,
+                                 @Value("${duplicate.distance}") int maxDistance, @Value("${duplicate.bucket}") int bucketSize,
+                                 @Value("${duplicate.min-length}") int minLength) {
+        this.index = new DuplicateTextIndex(windowSeconds * 1000L, maxDistance, bucketSize);
+        this.minUsers = minUsers;
+        this.minLength = minLength;
+    }
+
+    @Override
+    public ArrayList<BotApiMethod> runStrategy(MessageContext context) {
+        final ArrayList<BotApiMethod> result = new ArrayList<>();
+        if (minUsers <= 0) return result;
+        final String text = context.getTextOrCaption();
+        if (text.length() < minLength) return result;
+        final int userId = context.getUserId();
+        final String normalized = SimHash.normalize(text);
+        if (normalized.length() < minLength) return result;
+
+        final long chatId = context.getChatId();
+        final int messageId = context.getMessageId();
+        final long hash = SimHash.of(normalized);
+        if (blacklistIndex.isTextBlacklisted(hash)) {
+            result.add(Bans.banForGood(userId, chatId));
+            result.add(new DeleteMessage(chatId, messageId));
+            return result;
+        }
+
+        final DuplicateTextIndex.Cluster cluster = index.add(hash, userId, chatId, messageId, context.getDate() * 1000L);
+        final String reportedData = index.dataOf(cluster);
+        if (reportedData != null) {
+            if (!index.hadUser(cluster, userId)) moderationStore.createFeedback(userId, chatId, reportedData);
+            result.add(new DeleteMessage(chatId, messageId));
+            return result;
+        }
+        if (index.distinctUsers(cluster) < minUsers) return result;
+
+        final String data = BlacklistIndex.textFeedbackData(hash);
+        final List<DuplicateTextIndex.Entry> entries = index.report(cluster, data);
+        if (entries == null) {
+            result.add(new DeleteMessage(chatId, messageId));
+            return result;
+        }
+        log.info("Text posted by " + index.distinctUsers(cluster) + " users, sending it for review");
+        reviewDigest.review(userId, chatId, data, ReviewDigest.preview(context.getMessage()), result);
+        final List<Integer> others = new ArrayList<>();
+        for (DuplicateTextIndex.Entry entry : entries) {
+            if (entry.getUserId() != userId && !others.contains(entry.getUserId())) {
+                others.add(entry.getUserId());
+                moderationStore.createFeedback(entry.getUserId(), entry.getChatId(), data);
+            }
+            result.add(new DeleteMessage(entry.getChatId(), entry.getMessageId()));
+        }
+        return result;
+    }
+
+}
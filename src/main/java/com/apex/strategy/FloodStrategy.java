@@ -0,0 +1,92 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.strategy;
+
+import com.apex.cache.SlidingWindowCounters;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.methods.groupadministration.RestrictChatMember;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.DeleteMessage;
+
+import java.util.ArrayList;
+
+/**
+ * Mutes users that send more than flood.messages messages within flood.window seconds to a chat and
+ * deletes their recent messages.
+ */
+@Component
+public class FloodStrategy implements IStrategy {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private final SlidingWindowCounters counters;
+    private final int maxMessages;
+    private final int muteSeconds;
+
+    public FloodStrategy(@Value("${flood.messages}") int maxMessages, @Value("${flood.window}") int windowSeconds,
+                         @Value("${flood.mute}") int muteSeconds, @Value("${flood.capacity}") int capacity) {
+        this.counters = new SlidingWindowCounters(capacity, windowSeconds * 1000L);
+        this.maxMessages = maxMessages;
+        this.muteSeconds = muteSeconds;
+    }
+
+    /**
+     * Messages of the sender in the chat within the last flood.window seconds, including this one once it was
+     * counted by {@link #runStrategy(MessageContext)}.
+     */
+    public int rate(final MessageContext context) {
+        final int slot = counters.find(context.getChatId(), context.getUserId());
+        return slot < 0 ? 0 : counters.rate(slot, context.getDate() * 1000L);
+    }
+
+    @Override
+    public ArrayList<BotApiMethod> runStrategy(MessageContext context) {
+        final ArrayList<BotApiMethod> result = new ArrayList<>();
+        if (maxMessages <= 0) return result;
+        final long chatId = context.getChatId();
+        final int userId = context.getUserId();
+        final long now = context.getDate() * 1000L;
+        final int slot = counters.record(chatId, userId, context.getMessageId(), now);
+        if (slot < 0) return result;
+        final int rate = counters.rate(slot, now);
+        if (rate <= maxMessages) return result;
+
+        if (counters.flag(slot)) {
+            log.info("User " + userId + " flooded chat " + chatId + " with " + rate + " messages, muting");
+            final RestrictChatMember mute = new RestrictChatMember(chatId, userId);
+            mute.setUntilDate(context.getDate() + muteSeconds);
+            mute.setCanSendMessages(false);
+            result.add(mute);
+            for (int messageId : counters.recentMessages(slot, rate)) result.add(new DeleteMessage(chatId, messageId));
+        } else {
+            result.add(new DeleteMessage(chatId, context.getMessageId()));
+        }
+        return result;
+    }
+
+}
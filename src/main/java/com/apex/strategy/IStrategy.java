@@ -25,11 +25,10 @@
 package com.apex.strategy;
 
 import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
-import org.telegram.telegrambots.meta.api.objects.Update;
 
 import java.util.ArrayList;
 
 @FunctionalInterface
 public interface IStrategy {
-    ArrayList<BotApiMethod> runStrategy(Update update);
+    ArrayList<BotApiMethod> runStrategy(MessageContext context);
 }
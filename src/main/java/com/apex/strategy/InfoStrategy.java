@@ -24,13 +24,12 @@
 
 package com.apex.strategy;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import com.apex.command.CommandRegistry;
+import com.apex.command.CommandScanner;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
-import org.telegram.telegrambots.meta.api.objects.Update;
 import java.util.ArrayList;
 
 import static java.lang.String.format;
@@ -38,35 +37,29 @@ import static java.lang.String.format;
 @Component
 public class InfoStrategy implements IStrategy {
 
-    private final Logger log = LoggerFactory.getLogger(this.getClass());
-
     @Value("${promo}")
     private String promo;
 
     @Value("${nextcommand}")
     private String nextCommand;
 
+    private final CommandScanner commands = new CommandRegistry()
+            .register("#promo", (context, argument, result) -> reply(context, promo, result))
+            .register("#nextcommand", (context, argument, result) -> reply(context, nextCommand, result))
+            .compile();
+
     @Override
-    public ArrayList<BotApiMethod> runStrategy(Update update) {
+    public ArrayList<BotApiMethod> runStrategy(MessageContext context) {
 
         final ArrayList<BotApiMethod> result = new ArrayList<>();
-        try {
-            if (update.hasMessage()) {
-                final String messageText = update.getMessage().getText();
-                final String userName = update.getMessage().getReplyToMessage().getFrom().getFirstName();
-                final SendMessage msg = new SendMessage();
-                msg.setChatId(update.getMessage().getChatId());
-                if (messageText.contains("#promo")) {
-                    msg.setText(format("Hey there, %s %s", userName, promo));
-                    result.add(msg);
-                } else if (messageText.contains("#nextcommand")) {
-                    msg.setText(format("Hey there, %s %s", userName, nextCommand));
-                    result.add(msg);
-                }
-            }
-        } catch (NullPointerException e) {
-            log.info("Had a Nullpointer in CommandStrategy");
-        }
+        if (context.hasReplyTarget()) commands.dispatch(context, context.getText(), result);
         return result;
     }
+
+    private static void reply(final MessageContext context, final String text, final ArrayList<BotApiMethod> result) {
+        final SendMessage msg = new SendMessage();
+        msg.setChatId(context.getChatId());
+        msg.setText(format("Hey there, %s %s", context.getReplyTarget().getFirstName(), text));
+        result.add(msg);
+    }
 }
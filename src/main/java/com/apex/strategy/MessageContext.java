@@ -0,0 +1,164 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.strategy;
+
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.api.objects.User;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * The parts of a message the strategies work with, read once per update. Immutable, and never null
+ * where Telegram leaves a field out: a missing text is empty and a missing reply has no target.
+ */
+public final class MessageContext {
+
+    private final Message message;
+    private final long chatId;
+    private final int userId;
+    private final int messageId;
+    private final int date;
+    private final String text;
+    private final String caption;
+    private final User replyTarget;
+    private final User forwardFrom;
+    private final boolean trusted;
+    private final int warnings;
+    private final Consumer<List<BotApiMethod>> followUps;
+
+    private MessageContext(final Message message, final boolean trusted, final int warnings,
+                           final Consumer<List<BotApiMethod>> followUps) {
+        this.message = message;
+        this.chatId = message.getChatId();
+        this.userId = message.getFrom().getId();
+        this.messageId = message.getMessageId();
+        this.date = message.getDate() == null ? 0 : message.getDate();
+        this.text = message.getText() == null ? "" : message.getText();
+        this.caption = message.getCaption() == null ? "" : message.getCaption();
+        this.replyTarget = message.getReplyToMessage() == null ? null : message.getReplyToMessage().getFrom();
+        this.forwardFrom = message.getForwardFrom();
+        this.trusted = trusted;
+        this.warnings = warnings;
+        this.followUps = followUps;
+    }
+
+    /**
+     * The context of the message in the update, null if the update carries no message from a user.
+     */
+    public static MessageContext of(final Update update) {
+        final Message message = update.getMessage();
+        if (message == null || message.getFrom() == null || message.getChat() == null) return null;
+        return new MessageContext(message, false, 0, actions -> { });
+    }
+
+    /**
+     * A copy that records whether the sender is trusted and how often they were warned.
+     */
+    public MessageContext withUser(final boolean trusted, final int warnings) {
+        return new MessageContext(message, trusted, warnings, followUps);
+    }
+
+    /**
+     * A copy that hands actions decided after the strategies ran to the given consumer, which sends them
+     * the way the actions returned for the update are sent.
+     */
+    public MessageContext withFollowUps(final Consumer<List<BotApiMethod>> followUps) {
+        return new MessageContext(message, trusted, warnings, followUps);
+    }
+
+    /**
+     * The raw message, for the media and entities the context does not cover.
+     */
+    public Message getMessage() {
+        return message;
+    }
+
+    public long getChatId() {
+        return chatId;
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    public int getMessageId() {
+        return messageId;
+    }
+
+    /**
+     * When Telegram received the message, in epoch seconds.
+     */
+    public int getDate() {
+        return date;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * The text, or the caption of a media message.
+     */
+    public String getTextOrCaption() {
+        return text.isEmpty() ? caption : text;
+    }
+
+    public boolean hasReplyTarget() {
+        return replyTarget != null;
+    }
+
+    /**
+     * The author of the message this one replies to, null if it is no reply.
+     */
+    public User getReplyTarget() {
+        return replyTarget;
+    }
+
+    /**
+     * The original author of a forwarded message, null if it is not forwarded or the author hides it.
+     */
+    public User getForwardFrom() {
+        return forwardFrom;
+    }
+
+    public boolean isTrusted() {
+        return trusted;
+    }
+
+    public int getWarnings() {
+        return warnings;
+    }
+
+    /**
+     * Sends actions decided later for this message, e.g. once a file of it is fingerprinted.
+     */
+    public void followUp(final List<BotApiMethod> actions) {
+        if (!actions.isEmpty()) followUps.accept(actions);
+    }
+
+}
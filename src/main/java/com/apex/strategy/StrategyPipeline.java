@@ -0,0 +1,71 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.strategy;
+
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Stages run in order until one of them decides on the message. A strategy decides by returning
+ * actions, a guard decides without actions, e.g. for trusted users, and a general stage returns a
+ * {@link Verdict}.
+ */
+public class StrategyPipeline {
+
+    private final List<Function<MessageContext, Verdict>> stages = new ArrayList<>();
+
+    public StrategyPipeline then(final IStrategy strategy) {
+        return decide(context -> {
+            final ArrayList<BotApiMethod> actions = strategy.runStrategy(context);
+            return actions.isEmpty() ? Verdict.pass() : Verdict.stop(actions);
+        });
+    }
+
+    /**
+     * Stops the run for messages matching the guard, the stages after it are skipped.
+     */
+    public StrategyPipeline stopIf(final Predicate<MessageContext> guard) {
+        final Verdict stop = Verdict.stop(new ArrayList<>());
+        return decide(context -> guard.test(context) ? stop : Verdict.pass());
+    }
+
+    public StrategyPipeline decide(final Function<MessageContext, Verdict> stage) {
+        stages.add(stage);
+        return this;
+    }
+
+    public ArrayList<BotApiMethod> run(final MessageContext context) {
+        for (Function<MessageContext, Verdict> stage : stages) {
+            final Verdict verdict = stage.apply(context);
+            if (verdict.isDecisive()) return verdict.getActions();
+        }
+        return new ArrayList<>();
+    }
+
+}
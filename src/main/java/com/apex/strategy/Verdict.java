@@ -0,0 +1,67 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.strategy;
+
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Outcome of a pipeline stage: pass the message on to the next stage, or stop with the given actions,
+ * which may be none.
+ */
+public final class Verdict {
+
+    private static final Verdict PASS = new Verdict(false, new ArrayList<>());
+
+    private final boolean decisive;
+    private final List<BotApiMethod> actions;
+
+    private Verdict(final boolean decisive, final List<BotApiMethod> actions) {
+        this.decisive = decisive;
+        this.actions = actions;
+    }
+
+    public static Verdict pass() {
+        return PASS;
+    }
+
+    public static Verdict stop(final List<BotApiMethod> actions) {
+        return new Verdict(true, actions);
+    }
+
+    public boolean isDecisive() {
+        return decisive;
+    }
+
+    /**
+     * A copy of the actions, so a verdict can be shared.
+     */
+    public ArrayList<BotApiMethod> getActions() {
+        return new ArrayList<>(actions);
+    }
+
+}
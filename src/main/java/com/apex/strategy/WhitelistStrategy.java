@@ -1,13 +1,12 @@
 package com.apex.strategy;
 
+import com.apex.cache.TGUserCache;
 import com.apex.entities.TGUser;
-import com.apex.repository.ITGUserRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
-import org.telegram.telegrambots.meta.api.objects.Update;
 import org.telegram.telegrambots.meta.api.objects.User;
 
 import java.util.ArrayList;
@@ -18,17 +17,17 @@ public class WhitelistStrategy implements IStrategy {
     private final Logger log = LoggerFactory.getLogger(this.getClass());
 
     @Autowired
-    private ITGUserRepository tgUserRepository;
+    private TGUserCache tgUserCache;
 
     @Override
-    public ArrayList<BotApiMethod> runStrategy(Update update) {
-        final User userToWhitelist = update.getMessage().getForwardFrom();
+    public ArrayList<BotApiMethod> runStrategy(MessageContext context) {
+        final User userToWhitelist = context.getForwardFrom();
         if(userToWhitelist != null) {
             final int userId = userToWhitelist.getId();
-            tgUserRepository.findById(userId).ifPresentOrElse(
+            tgUserCache.findById(userId).ifPresentOrElse(
                     user -> log.info("User is already known. Ignore"),
                     () -> {
-                        tgUserRepository.save(new TGUser(userToWhitelist.getId(), 0, true));
+                        tgUserCache.save(new TGUser(userToWhitelist.getId(), 0, true));
                         log.info("Whitelisted user " + userToWhitelist.getId());
                     });
         }
@@ -0,0 +1,81 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.addition;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class CanonicalLinkTest {
+
+    private static final List<String> SHARED = Arrays.asList("t.me", "github.io");
+
+    @Test
+    public void dropsWhatDoesNotIdentifyTheTarget() {
+        assertEquals("example.com/a/c?a=1&b=2",
+                CanonicalLink.parse("HTTPS://user@www.Example.com.:443/a/./b/../c?utm_source=x&b=2&a=1#top").toString());
+        assertEquals("example.com", CanonicalLink.parse("example.com/").toString());
+        assertEquals("example.com?a=1", CanonicalLink.parse("example.com?a=1&a=1&fbclid=z").toString());
+    }
+
+    @Test
+    public void rejectsLinksWithoutHttpHost() {
+        assertNull(CanonicalLink.parse("ftp://example.com/file"));
+        assertNull(CanonicalLink.parse("mailto:someone@example.com"));
+        assertNull(CanonicalLink.parse("http://localhost/admin"));
+    }
+
+    @Test
+    public void readsItsOwnString() {
+        final CanonicalLink link = CanonicalLink.parse("https://t.me/spam/42?start=x&ref=y");
+        assertEquals(link.toString(), CanonicalLink.fromString(link.toString()).toString());
+    }
+
+    @Test
+    public void bansTheHostOfOtherLinks() {
+        assertEquals("shop.example.com", CanonicalLink.parse("https://shop.example.com/deal/1").blacklistRule(SHARED).toString());
+        assertEquals("spam.net", CanonicalLink.parse("spam.net/a/b").blacklistRule(SHARED).toString());
+    }
+
+    @Test
+    public void bansAtLeastTwoSegmentsOnSharedHosts() {
+        assertNull(CanonicalLink.parse("https://t.me/spamchannel").blacklistRule(SHARED));
+        assertNull(CanonicalLink.parse("https://t.me/").blacklistRule(SHARED));
+        assertEquals("t.me/spamchannel/123", CanonicalLink.parse("https://t.me/spamchannel/123").blacklistRule(SHARED).toString());
+        assertEquals("t.me/joinchat/abc", CanonicalLink.parse("https://t.me/joinchat/abc/5/6").blacklistRule(SHARED).toString());
+        assertEquals("user.github.io/scam/7", CanonicalLink.parse("https://user.github.io/scam/7").blacklistRule(SHARED).toString());
+        assertEquals("user.github.io/scam/page", CanonicalLink.parse("https://user.github.io/scam/page/7").blacklistRule(SHARED).toString());
+    }
+
+    @Test
+    public void keepsTheChannelOfPrivatePostLinks() {
+        assertEquals("t.me/c/1207452648", CanonicalLink.parse("https://t.me/c/1207452648/99").blacklistRule(SHARED).toString());
+    }
+
+}
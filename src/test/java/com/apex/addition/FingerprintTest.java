@@ -0,0 +1,67 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.addition;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+public class FingerprintTest {
+
+    @Test
+    public void matchesTheXxh64TestVectors() {
+        assertEquals(0xEF46DB3751D8E999L, Fingerprint.of(""));
+        assertEquals(0xD24EC4F1A98C6E5BL, Fingerprint.of("a"));
+        assertEquals(0x44BC2CF5AD770999L, Fingerprint.of("abc"));
+        assertEquals(0xFBCEA83C8A378BF1L, Fingerprint.of("Nobody inspects the spammish repetition"));
+    }
+
+    @Test
+    public void hashesTheUtf8Bytes() {
+        final String text = "gr\u00fc\u00dfe \u2014 \uD83D\uDE00";
+        final Fingerprint fingerprint = new Fingerprint();
+        fingerprint.update(text.getBytes(StandardCharsets.UTF_8));
+        assertEquals(fingerprint.getValue(), Fingerprint.of(text));
+    }
+
+    @Test
+    public void givesTheSameValueWhenFedInPieces() {
+        final byte[] data = new byte[200];
+        for (int i = 0; i < data.length; i++) data[i] = (byte) (i * 7);
+        final Fingerprint whole = new Fingerprint();
+        whole.update(data);
+        for (int piece = 1; piece < 70; piece += 3) {
+            final Fingerprint pieces = new Fingerprint();
+            for (int from = 0; from < data.length; from += piece) {
+                pieces.update(Arrays.copyOfRange(data, from, Math.min(data.length, from + piece)));
+            }
+            assertEquals("pieces of " + piece, whole.getValue(), pieces.getValue());
+        }
+    }
+
+}
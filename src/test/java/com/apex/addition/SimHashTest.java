@@ -0,0 +1,49 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.addition;
+
+import com.apex.media.PerceptualHash;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SimHashTest {
+
+    @Test
+    public void normalizesCaseAndPunctuation() {
+        assertEquals("free crypto now 100", SimHash.normalize("  FREE crypto!!! now...\n100 "));
+    }
+
+    @Test
+    public void similarTextsHaveCloseHashes() {
+        final long original = SimHash.of(SimHash.normalize("Join our channel for free crypto signals every day, guaranteed profit"));
+        final long edited = SimHash.of(SimHash.normalize("Join our channel for free crypto signals every day, guaranteed profits!"));
+        final long unrelated = SimHash.of(SimHash.normalize("Does anybody know when the next meetup takes place?"));
+        assertTrue(PerceptualHash.distance(original, edited) <= 7);
+        assertTrue(PerceptualHash.distance(original, unrelated) > 7);
+    }
+
+}
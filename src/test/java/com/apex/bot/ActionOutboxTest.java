@@ -0,0 +1,113 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.bot;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.telegram.telegrambots.meta.api.methods.groupadministration.KickChatMember;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.DeleteMessage;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ActionOutboxTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static KickChatMember ban(final long chatId, final int userId) {
+        final KickChatMember ban = new KickChatMember();
+        ban.setChatId(chatId);
+        ban.setUserId(userId);
+        ban.setUntilDate(0);
+        return ban;
+    }
+
+    @Test
+    public void replaysTheActionsNotDone() throws IOException {
+        final Path path = folder.getRoot().toPath().resolve("outbox.log");
+        final ActionOutbox outbox = new ActionOutbox(path);
+        assertTrue(outbox.open().isEmpty());
+        final long[] ids = outbox.append(-100, 42, Arrays.asList(ban(-100, 42), new DeleteMessage(-100L, 7)));
+        outbox.append(new long[]{Long.MIN_VALUE}, Collections.singletonList(null),
+                Collections.singletonList(new DeleteMessage(-200L, 8)));
+        outbox.done(ids[0]);
+        outbox.close();
+
+        final ActionOutbox reopened = new ActionOutbox(path);
+        final List<ActionOutbox.Entry> entries = reopened.open();
+        assertEquals(2, entries.size());
+        assertEquals(ids[1], entries.get(0).getId());
+        assertEquals(-100, entries.get(0).getOrigin());
+        assertEquals(Integer.valueOf(42), entries.get(0).getSubject());
+        final DeleteMessage delete = (DeleteMessage) entries.get(0).getMethod();
+        assertEquals("-100", delete.getChatId());
+        assertEquals(Integer.valueOf(7), delete.getMessageId());
+        assertEquals(Long.MIN_VALUE, entries.get(1).getOrigin());
+        assertNull(entries.get(1).getSubject());
+        assertTrue(reopened.append(-100, null, Collections.singletonList(ban(-100, 1)))[0] > ids[1]);
+        reopened.close();
+    }
+
+    @Test
+    public void truncatesWhenNothingIsPending() throws IOException {
+        final Path path = folder.getRoot().toPath().resolve("outbox.log");
+        final ActionOutbox outbox = new ActionOutbox(path);
+        outbox.open();
+        final long[] ids = outbox.append(-100, 42, Collections.singletonList(ban(-100, 42)));
+        assertTrue(Files.size(path) > 0);
+        outbox.done(ids[0]);
+        assertEquals(0, Files.size(path));
+        outbox.close();
+    }
+
+    @Test
+    public void skipsATornLastRecord() throws IOException {
+        final Path path = folder.getRoot().toPath().resolve("outbox.log");
+        final ActionOutbox outbox = new ActionOutbox(path);
+        outbox.open();
+        outbox.append(-100, 42, Collections.singletonList(ban(-100, 42)));
+        outbox.close();
+        Files.write(path, "{\"id\":9,\"orig".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        final ActionOutbox reopened = new ActionOutbox(path);
+        final List<ActionOutbox.Entry> entries = reopened.open();
+        assertEquals(1, entries.size());
+        assertEquals(Integer.valueOf(42), ((KickChatMember) entries.get(0).getMethod()).getUserId());
+        reopened.close();
+    }
+
+}
@@ -0,0 +1,157 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.bot;
+
+import org.junit.After;
+import org.junit.Test;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.methods.groupadministration.KickChatMember;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.DeleteMessage;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ActionSchedulerTest {
+
+    private final RecordingSender sender = new RecordingSender();
+    private ActionScheduler scheduler;
+
+    @After
+    public void stop() {
+        if (scheduler != null) scheduler.stop();
+    }
+
+    private ActionScheduler start(final double chatPerMinute) {
+        scheduler = new ActionScheduler(30, chatPerMinute, 2, null);
+        scheduler.setSender(sender);
+        return scheduler;
+    }
+
+    static KickChatMember ban(final long chatId, final int userId, final int until) {
+        final KickChatMember ban = new KickChatMember();
+        ban.setChatId(chatId);
+        ban.setUserId(userId);
+        ban.setUntilDate(until);
+        return ban;
+    }
+
+    private static SendMessage review(final long verification) {
+        final SendMessage review = new SendMessage(verification, "This Post was shared: buy now");
+        review.setReplyMarkup(new InlineKeyboardMarkup());
+        return review;
+    }
+
+    @Test
+    public void sendsBansBeforeDeletesBeforeMessages() throws InterruptedException {
+        start(20);
+        final SendMessage notice = new SendMessage(-100L, "warned");
+        final DeleteMessage delete = new DeleteMessage(-100L, 5);
+        final KickChatMember ban = ban(-100L, 7, 0);
+        scheduler.submit(-100L, Arrays.asList(notice, delete, ban));
+        final SendMessage other = new SendMessage(-300L, "hello");
+        final KickChatMember otherBan = ban(-200L, 8, 0);
+        scheduler.submit(-300L, Collections.singletonList(other));
+        scheduler.submit(-200L, Collections.singletonList(otherBan));
+        scheduler.start();
+        final List<BotApiMethod<?>> sent = sender.await(5, 5000);
+        assertEquals(5, sent.size());
+        assertTrue(sent.indexOf(ban) < sent.indexOf(delete));
+        assertTrue(sent.indexOf(delete) < sent.indexOf(notice));
+        assertTrue(sent.indexOf(otherBan) < sent.indexOf(other));
+        assertTrue(sent.indexOf(otherBan) < sent.indexOf(notice));
+    }
+
+    @Test
+    public void retriesAfterTooManyRequests() throws InterruptedException {
+        start(20);
+        final SendMessage notice = new SendMessage(-100L, "warned");
+        sender.failWith(method -> sender.getSent().size() == 1 ? RecordingSender.tooManyRequests(1) : null);
+        scheduler.start();
+        scheduler.submit(-100L, Collections.singletonList(notice));
+        final List<BotApiMethod<?>> sent = sender.await(2, 5000);
+        assertEquals(Arrays.asList(notice, notice), sent);
+        final List<Long> times = sender.getTimes();
+        assertTrue(times.get(1) - times.get(0) >= TimeUnit.MILLISECONDS.toNanos(900));
+    }
+
+    @Test
+    public void keepsMessagesOfAChatWithinItsLimit() throws InterruptedException {
+        start(2);
+        scheduler.start();
+        scheduler.submit(-100L, Arrays.asList(new SendMessage(-100L, "1"), new SendMessage(-100L, "2"),
+                new SendMessage(-100L, "3")));
+        assertEquals(2, sender.await(3, 1000).size());
+    }
+
+    @Test
+    public void deletesWithoutWaitingForTheVerificationChat() throws InterruptedException {
+        start(1);
+        scheduler.start();
+        scheduler.submit(-200L, Collections.singletonList(new SendMessage(-200L, "digest")));
+        assertEquals(1, sender.await(1, 1000).size());
+        final SendMessage review = review(-200L);
+        final DeleteMessage delete = new DeleteMessage(-100L, 5);
+        scheduler.submit(-100L, 7, Arrays.asList(review, delete));
+        final List<BotApiMethod<?>> sent = sender.await(3, 1000);
+        assertTrue(sent.contains(delete));
+        assertFalse(sent.contains(review));
+    }
+
+    @Test
+    public void sendsEachDeleteOnceAndTheLongestBan() throws InterruptedException {
+        start(20);
+        final int hour = (int) Instant.now().getEpochSecond() + 3600;
+        final KickChatMember forGood = ban(-100L, 7, 0);
+        scheduler.submit(-100L, Arrays.asList(new DeleteMessage(-100L, 5), ban(-100L, 7, hour)));
+        scheduler.submit(-100L, Arrays.asList(new DeleteMessage(-100L, 5), forGood));
+        scheduler.submit(-100L, Collections.singletonList(ban(-100L, 7, hour)));
+        scheduler.start();
+        final List<BotApiMethod<?>> sent = sender.await(3, 1000);
+        assertEquals(2, sent.size());
+        assertTrue(sent.contains(forGood));
+        assertTrue(sent.stream().anyMatch(method -> method instanceof DeleteMessage));
+    }
+
+    @Test
+    public void dropsReviewsOfUsersBeingBanned() throws InterruptedException {
+        start(20);
+        final KickChatMember ban = ban(-100L, 7, 0);
+        scheduler.submit(-100L, 7, Collections.singletonList(review(-200L)));
+        scheduler.submit(-100L, 7, Collections.singletonList(ban));
+        scheduler.submit(-100L, 7, Collections.singletonList(review(-200L)));
+        scheduler.start();
+        assertEquals(Collections.singletonList(ban), sender.await(2, 1000));
+    }
+
+}
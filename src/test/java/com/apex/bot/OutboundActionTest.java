@@ -0,0 +1,74 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.bot;
+
+import org.junit.Test;
+import org.telegram.telegrambots.meta.api.methods.groupadministration.KickChatMember;
+import org.telegram.telegrambots.meta.api.methods.groupadministration.RestrictChatMember;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.DeleteMessage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class OutboundActionTest {
+
+    private static KickChatMember ban(final Integer until) {
+        final KickChatMember ban = new KickChatMember();
+        ban.setChatId(-100L);
+        ban.setUserId(42);
+        ban.setUntilDate(until);
+        return ban;
+    }
+
+    @Test
+    public void aBanCoversOnlyBansEndingNoLater() {
+        assertTrue(OutboundAction.covers(ban(0), ban(1000)));
+        assertTrue(OutboundAction.covers(ban(null), ban(0)));
+        assertTrue(OutboundAction.covers(ban(2000), ban(1000)));
+        assertFalse(OutboundAction.covers(ban(1000), ban(2000)));
+        assertFalse(OutboundAction.covers(ban(1000), ban(0)));
+        assertTrue(OutboundAction.covers(new DeleteMessage(-100L, 1), new DeleteMessage(-100L, 1)));
+    }
+
+    @Test
+    public void bansAndDeletesHaveKeys() {
+        assertEquals(OutboundAction.keyOf(ban(0)), OutboundAction.keyOf(ban(1000)));
+        assertEquals("delete:-100:7", OutboundAction.keyOf(new DeleteMessage(-100L, 7)));
+        assertNull(OutboundAction.keyOf(new RestrictChatMember(-100L, 42)));
+    }
+
+    @Test
+    public void onlyRestrictionsEndingSoonExpire() {
+        final long now = 1_000_000;
+        assertFalse(OutboundAction.isExpired(ban(0), now));
+        assertFalse(OutboundAction.isExpired(ban((int) now + 3600), now));
+        assertTrue(OutboundAction.isExpired(ban((int) now + 10), now));
+        assertTrue(OutboundAction.isExpired(ban((int) now - 10), now));
+        assertFalse(OutboundAction.isExpired(new DeleteMessage(-100L, 7), now));
+    }
+
+}
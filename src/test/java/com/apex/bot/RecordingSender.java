@@ -0,0 +1,184 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.bot;
+
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.methods.groupadministration.SetChatPhoto;
+import org.telegram.telegrambots.meta.api.methods.send.SendAnimation;
+import org.telegram.telegrambots.meta.api.methods.send.SendAudio;
+import org.telegram.telegrambots.meta.api.methods.send.SendDocument;
+import org.telegram.telegrambots.meta.api.methods.send.SendMediaGroup;
+import org.telegram.telegrambots.meta.api.methods.send.SendPhoto;
+import org.telegram.telegrambots.meta.api.methods.send.SendSticker;
+import org.telegram.telegrambots.meta.api.methods.send.SendVideo;
+import org.telegram.telegrambots.meta.api.methods.send.SendVideoNote;
+import org.telegram.telegrambots.meta.api.methods.send.SendVoice;
+import org.telegram.telegrambots.meta.api.methods.stickers.AddStickerToSet;
+import org.telegram.telegrambots.meta.api.methods.stickers.CreateNewStickerSet;
+import org.telegram.telegrambots.meta.api.methods.stickers.UploadStickerFile;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageMedia;
+import org.telegram.telegrambots.meta.api.objects.File;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.bots.AbsSender;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+import org.telegram.telegrambots.meta.updateshandlers.SentCallback;
+import org.json.JSONObject;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Answers every method sent through it at once and remembers them, optionally failing some.
+ */
+class RecordingSender extends AbsSender {
+
+    private final List<BotApiMethod<?>> sent = new ArrayList<>();
+    private final List<Long> times = new ArrayList<>();
+    private volatile Function<BotApiMethod<?>, TelegramApiRequestException> failure = method -> null;
+
+    static TelegramApiRequestException tooManyRequests(final int retryAfter) {
+        return new TelegramApiRequestException("Error sending", new JSONObject(
+                "{\"ok\":false,\"error_code\":429,\"description\":\"Too Many Requests\"," +
+                        "\"parameters\":{\"retry_after\":" + retryAfter + "}}"));
+    }
+
+    void failWith(final Function<BotApiMethod<?>, TelegramApiRequestException> failure) {
+        this.failure = failure;
+    }
+
+    synchronized List<BotApiMethod<?>> getSent() {
+        return new ArrayList<>(sent);
+    }
+
+    synchronized List<Long> getTimes() {
+        return new ArrayList<>(times);
+    }
+
+    /**
+     * Waits until at least count methods were sent and returns them.
+     */
+    synchronized List<BotApiMethod<?>> await(final int count, final long millis) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        while (sent.size() < count) {
+            final long left = deadline - System.nanoTime();
+            if (left <= 0) break;
+            TimeUnit.NANOSECONDS.timedWait(this, left);
+        }
+        return new ArrayList<>(sent);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected <T extends Serializable, Method extends BotApiMethod<T>, Callback extends SentCallback<T>> void sendApiMethodAsync(
+            final Method method, final Callback callback) {
+        synchronized (this) {
+            sent.add(method);
+            times.add(System.nanoTime());
+            notifyAll();
+        }
+        final TelegramApiRequestException error = failure.apply(method);
+        if (error != null) callback.onError(method, error);
+        else callback.onResult(method, (T) Boolean.TRUE);
+    }
+
+    @Override
+    protected <T extends Serializable, Method extends BotApiMethod<T>> T sendApiMethod(final Method method) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Message execute(final SendDocument sendDocument) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Message execute(final SendPhoto sendPhoto) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Message execute(final SendVideo sendVideo) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Message execute(final SendVideoNote sendVideoNote) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Message execute(final SendSticker sendSticker) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Message execute(final SendAudio sendAudio) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Message execute(final SendVoice sendVoice) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<Message> execute(final SendMediaGroup sendMediaGroup) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Boolean execute(final SetChatPhoto setChatPhoto) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Boolean execute(final AddStickerToSet addStickerToSet) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Boolean execute(final CreateNewStickerSet createNewStickerSet) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public File execute(final UploadStickerFile uploadStickerFile) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Serializable execute(final EditMessageMedia editMessageMedia) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Message execute(final SendAnimation sendAnimation) {
+        throw new UnsupportedOperationException();
+    }
+
+}
@@ -0,0 +1,187 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.bot;
+
+import com.apex.Fields;
+import com.apex.store.MemoryModerationStore;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.After;
+import org.junit.Test;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageText;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ReviewDigestTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final long CHAT = -100L;
+    private static final long VERIFICATION = -200L;
+
+    private final MemoryModerationStore store = new MemoryModerationStore();
+    private final RecordingSender sender = new RecordingSender();
+    private ActionScheduler scheduler;
+
+    @After
+    public void tearDown() {
+        if (scheduler != null) scheduler.stop();
+    }
+
+    private ReviewDigest digest(final long window, final int pageSize) {
+        scheduler = new ActionScheduler(30, 20, 2, null);
+        scheduler.setSender(sender);
+        scheduler.start();
+        final ReviewDigest digest = Fields.set(new ReviewDigest(), "moderationStore", store);
+        Fields.set(digest, "actionScheduler", scheduler);
+        Fields.set(digest, "tenantRegistry", Tenants.single(CHAT, VERIFICATION));
+        Fields.set(digest, "window", window);
+        Fields.set(digest, "pageSize", pageSize);
+        digest.listen();
+        return digest;
+    }
+
+    /**
+     * Sends the posts collected so far as a digest and returns it.
+     */
+    private SendMessage flush(final ReviewDigest digest) throws InterruptedException {
+        digest.start();
+        digest.stop();
+        final List<BotApiMethod<?>> sent = sender.await(1, 5000);
+        assertEquals(1, sent.size());
+        return (SendMessage) sent.get(0);
+    }
+
+    private static List<String> buttons(final InlineKeyboardMarkup markup) {
+        final List<String> buttons = new ArrayList<>();
+        for (List<InlineKeyboardButton> row : markup.getKeyboard()) {
+            for (InlineKeyboardButton button : row) buttons.add(button.getText() + "=" + button.getCallbackData());
+        }
+        return buttons;
+    }
+
+    private static Message message(final String fields) throws IOException {
+        final String json = "{'message_id':7,'date':1,'chat':{'id':" + CHAT + ",'type':'supergroup'}," +
+                "'from':{'id':42,'first_name':'a','is_bot':false}," + fields + "}";
+        return MAPPER.readValue(json.replace('\'', '"'), Message.class);
+    }
+
+    @Test
+    public void previewsTextShortAndMediaByKind() throws IOException {
+        final StringBuilder longText = new StringBuilder();
+        for (int i = 0; i < 20; i++) longText.append("spam  ");
+        final String preview = ReviewDigest.preview(message("'text':'" + longText + "'"));
+        assertEquals(60, preview.length());
+        assertTrue(preview.startsWith("spam spam "));
+        assertTrue(preview.endsWith("\u2026"));
+        assertEquals("document a.pdf", ReviewDigest.preview(message(
+                "'document':{'file_id':'f','file_name':'a.pdf'}")));
+        assertEquals("look", ReviewDigest.preview(message("'caption':' look ','photo':[]")));
+    }
+
+    @Test
+    public void sendsEachPostOnItsOwnWithoutAWindow() {
+        final ReviewDigest digest = digest(0, 5);
+        final List<BotApiMethod> result = new ArrayList<>();
+        digest.review(42, CHAT, "f:1", "buy now", result);
+        assertEquals(1, result.size());
+        final SendMessage review = (SendMessage) result.get(0);
+        assertEquals(String.valueOf(VERIFICATION), review.getChatId());
+        assertEquals("This Post was shared: buy now", review.getText());
+        assertTrue(buttons((InlineKeyboardMarkup) review.getReplyMarkup()).contains("Blacklist content and ban=ban,1"));
+        assertEquals("f:1", store.findFeedback(1).get().getData());
+    }
+
+    @Test
+    public void groupsPostsThatAreBlacklistedTogether() throws InterruptedException {
+        final ReviewDigest digest = digest(60, 5);
+        final List<BotApiMethod> result = new ArrayList<>();
+        digest.review(1, CHAT, "f:1", "buy now", result);
+        digest.review(2, CHAT, "f:2", "hello", result);
+        digest.review(3, CHAT, "f:1", "buy now!", result);
+        assertTrue(result.isEmpty());
+
+        final SendMessage sent = flush(digest);
+        assertEquals(String.valueOf(VERIFICATION), sent.getChatId());
+        assertTrue(sent.getText(), sent.getText().startsWith("3 posts to review in 2 groups\n\n1. 2 posts\n" +
+                " - user 1 in -100: buy now\n - user 3 in -100: buy now!\n\n2. 1 post"));
+        final List<String> buttons = buttons((InlineKeyboardMarkup) sent.getReplyMarkup());
+        assertEquals("Ban group 1 (2)=ban,1,all", buttons.get(0));
+        assertEquals(Arrays.asList(1L, 3L), digest.group(1));
+        assertEquals(Arrays.asList(2L), digest.group(2));
+    }
+
+    @Test
+    public void pagesThroughTheGroups() throws InterruptedException {
+        final ReviewDigest digest = digest(60, 2);
+        final List<BotApiMethod> result = new ArrayList<>();
+        for (int user = 1; user <= 3; user++) digest.review(user, CHAT, "f:" + user, "post " + user, result);
+        final SendMessage sent = flush(digest);
+        assertTrue(sent.getText().startsWith("3 posts to review in 3 groups, page 1/2"));
+        final List<String> buttons = buttons((InlineKeyboardMarkup) sent.getReplyMarkup());
+        final String next = buttons.get(buttons.size() - 1);
+        assertTrue(next, next.startsWith("\u25B6=page,"));
+        final long digestId = Long.parseLong(next.split(",")[1]);
+
+        assertTrue(digest.page(digestId, 1, VERIFICATION, 50, result));
+        final EditMessageText edit = (EditMessageText) result.get(0);
+        assertEquals(Integer.valueOf(50), edit.getMessageId());
+        assertTrue(edit.getText(), edit.getText().contains("page 2/2\n\n3. 1 post\n - user 3 in -100: post 3"));
+        final List<String> back = buttons(edit.getReplyMarkup());
+        assertTrue(back.get(back.size() - 1).startsWith("\u25C0=page,"));
+        assertFalse(digest.page(digestId, 0, VERIFICATION, 51, result));
+        assertFalse(digest.page(digestId + 1, 0, VERIFICATION, 50, result));
+    }
+
+    @Test
+    public void removesAnsweredPostsFromTheDigest() throws InterruptedException {
+        final ReviewDigest digest = digest(60, 5);
+        final List<BotApiMethod> result = new ArrayList<>();
+        digest.review(1, CHAT, "f:1", "buy now", result);
+        digest.review(2, CHAT, "f:1", "buy now", result);
+        digest.review(3, CHAT, "f:2", "hello", result);
+        flush(digest);
+
+        assertTrue(digest.answered(VERIFICATION, 50, digest.group(1), result));
+        assertEquals(1, result.size());
+        assertTrue(((EditMessageText) result.get(0)).getText().startsWith("1 post to review in 1 group"));
+
+        result.clear();
+        assertFalse(digest.answered(VERIFICATION, 50, Arrays.asList(3L), result));
+        assertTrue(result.isEmpty());
+        assertEquals(Arrays.asList(3L), digest.group(3));
+    }
+
+}
@@ -0,0 +1,116 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.bot;
+
+import org.junit.After;
+import org.junit.Test;
+import org.telegram.telegrambots.meta.api.objects.Chat;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class UpdateDispatcherTest {
+
+    private final UpdateDispatcher dispatcher = new UpdateDispatcher(4, 2);
+
+    @After
+    public void stop() {
+        dispatcher.stop();
+    }
+
+    private static Update update(final int updateId, final long chatId) throws ReflectiveOperationException {
+        final Chat chat = new Chat();
+        set(chat, "id", chatId);
+        final Message message = new Message();
+        set(message, "chat", chat);
+        final Update update = new Update();
+        set(update, "updateId", updateId);
+        set(update, "message", message);
+        return update;
+    }
+
+    private static void set(final Object target, final String name, final Object value) throws ReflectiveOperationException {
+        final Field field = target.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+
+    @Test
+    public void keepsTheOrderWithinAChat() throws Exception {
+        dispatcher.start();
+        final Map<Long, List<Integer>> seen = new ConcurrentHashMap<>();
+        final CountDownLatch done = new CountDownLatch(300);
+        for (int i = 0; i < 300; i++) {
+            dispatcher.dispatch(update(i, -100 - i % 3), update -> {
+                seen.computeIfAbsent(update.getMessage().getChatId(), chat -> Collections.synchronizedList(new ArrayList<>()))
+                        .add(update.getUpdateId());
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        for (List<Integer> ids : seen.values()) {
+            final List<Integer> sorted = new ArrayList<>(ids);
+            Collections.sort(sorted);
+            assertEquals(sorted, ids);
+        }
+    }
+
+    @Test
+    public void rejectsUpdatesOnceStopped() throws Exception {
+        dispatcher.start();
+        dispatcher.stop();
+        final List<Integer> handled = new ArrayList<>();
+        try {
+            dispatcher.dispatch(update(1, -100), update -> handled.add(update.getUpdateId()));
+            fail("dispatched after stop");
+        } catch (RejectedExecutionException expected) {
+            assertTrue(handled.isEmpty());
+        }
+    }
+
+    @Test
+    public void rejectsUpdatesBeforeStart() throws Exception {
+        try {
+            dispatcher.dispatch(update(1, -100), update -> fail("handled before start"));
+            fail("dispatched before start");
+        } catch (RejectedExecutionException expected) {
+            // left to redelivery
+        }
+    }
+
+}
@@ -0,0 +1,59 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.bot;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class UpdateWatermarkTest {
+
+    @Test
+    public void staysBelowUpdatesStillRunning() {
+        final UpdateWatermark.Mark mark = new UpdateWatermark.Mark(10);
+        mark.begin(11);
+        mark.begin(12);
+        mark.begin(13);
+        mark.done(13);
+        assertEquals(10, mark.processed());
+        mark.done(11);
+        assertEquals(11, mark.processed());
+        mark.done(12);
+        assertEquals(13, mark.processed());
+    }
+
+    @Test
+    public void advancesWithUpdatesThatWereNeverDispatched() {
+        final UpdateWatermark.Mark mark = new UpdateWatermark.Mark(0);
+        mark.done(5);
+        assertEquals(5, mark.processed());
+        mark.begin(7);
+        mark.done(6);
+        assertEquals(6, mark.processed());
+        mark.done(7);
+        assertEquals(7, mark.processed());
+    }
+
+}
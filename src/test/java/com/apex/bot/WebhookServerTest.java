@@ -0,0 +1,148 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.bot;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.generics.BotOptions;
+import org.telegram.telegrambots.meta.generics.LongPollingBot;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class WebhookServerTest {
+
+    private static final String SECRET = "s3cret";
+
+    private final List<Update> received = new CopyOnWriteArrayList<>();
+    private final List<Update> receivedBySecond = new CopyOnWriteArrayList<>();
+    private WebhookServer server;
+    private int port;
+
+    @Before
+    public void start() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        server = new WebhookServer("127.0.0.1", port, "hook", 2, SECRET);
+        server.setBot(bot(received));
+        server.addBot("/second", bot(receivedBySecond));
+        server.addBot("/stopped", bot(null));
+        server.start();
+    }
+
+    @After
+    public void stop() {
+        server.stop();
+    }
+
+    private static LongPollingBot bot(final List<Update> updates) {
+        return new LongPollingBot() {
+            @Override
+            public void onUpdateReceived(final Update update) {
+                if (updates == null) throw new RejectedExecutionException("stopped");
+                updates.add(update);
+            }
+
+            @Override
+            public String getBotUsername() {
+                return "bot";
+            }
+
+            @Override
+            public String getBotToken() {
+                return "token";
+            }
+
+            @Override
+            public BotOptions getOptions() {
+                return null;
+            }
+
+            @Override
+            public void clearWebhook() {
+            }
+        };
+    }
+
+    private int post(final String path, final String secret, final String body) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + port + path).openConnection();
+        connection.setRequestMethod(body == null ? "GET" : "POST");
+        if (secret != null) connection.setRequestProperty("X-Telegram-Bot-Api-Secret-Token", secret);
+        if (body != null) {
+            connection.setDoOutput(true);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        try {
+            return connection.getResponseCode();
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    @Test
+    public void handsPostedUpdatesToTheBotOfThePath() throws IOException {
+        assertEquals(200, post("/hook", SECRET, "{\"update_id\":5}"));
+        assertEquals(200, post("/hook/second", SECRET, "{\"update_id\":6,\"unknown\":true}"));
+        assertEquals(1, received.size());
+        assertEquals(Integer.valueOf(5), received.get(0).getUpdateId());
+        assertEquals(1, receivedBySecond.size());
+        assertEquals(Integer.valueOf(6), receivedBySecond.get(0).getUpdateId());
+    }
+
+    @Test
+    public void asksForRedeliveryOfRejectedUpdates() throws IOException {
+        assertEquals(503, post("/hook/stopped", SECRET, "{\"update_id\":7}"));
+    }
+
+    @Test
+    public void rejectsPostsWithoutTheSecret() throws IOException {
+        assertEquals(403, post("/hook", null, "{\"update_id\":5}"));
+        assertEquals(403, post("/hook", "guess", "{\"update_id\":5}"));
+        assertTrue(received.isEmpty());
+    }
+
+    @Test
+    public void rejectsOtherRequests() throws IOException {
+        assertEquals(405, post("/hook", SECRET, null));
+        assertEquals(400, post("/hook", SECRET, "not json"));
+        assertTrue(received.isEmpty());
+    }
+
+}
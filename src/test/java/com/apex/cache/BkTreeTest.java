@@ -0,0 +1,64 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.cache;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BkTreeTest {
+
+    @Test
+    public void findsHashesWithinTheRadius() {
+        final BkTree tree = new BkTree();
+        tree.add(0L);
+        tree.add(0xFFL);
+        tree.add(-1L);
+        assertTrue(tree.containsWithin(0b111L, 3));
+        assertFalse(tree.containsWithin(0b111L, 2));
+        assertTrue(tree.containsWithin(0xFFFL, 4));
+        assertTrue(tree.containsWithin(-2L, 1));
+        assertFalse(tree.containsWithin(0xFFFF_FFFFL, 20));
+    }
+
+    @Test
+    public void keepsEveryHashOnce() {
+        final BkTree tree = new BkTree();
+        assertFalse(tree.containsWithin(42L, 64));
+        assertTrue(tree.add(1L));
+        assertTrue(tree.add(2L));
+        assertFalse(tree.add(1L));
+        assertEquals(2, tree.size());
+        final long[] hashes = tree.toArray();
+        Arrays.sort(hashes);
+        assertArrayEquals(new long[]{1L, 2L}, hashes);
+    }
+
+}
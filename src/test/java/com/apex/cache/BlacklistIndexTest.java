@@ -0,0 +1,154 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.cache;
+
+import com.apex.Fields;
+import com.apex.addition.CanonicalLink;
+import com.apex.addition.Fingerprint;
+import com.apex.store.IBlacklistVisitor;
+import com.apex.store.MemoryModerationStore;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BlacklistIndexTest {
+
+    private final MemoryModerationStore store = new MemoryModerationStore();
+
+    private BlacklistIndex index(final boolean matchLegacy) {
+        final BlacklistIndex index = new BlacklistIndex();
+        Fields.set(index, "moderationStore", store);
+        Fields.set(index, "matchLegacy", matchLegacy);
+        Fields.set(index, "imageDistance", 4);
+        Fields.set(index, "textDistance", 3);
+        return index;
+    }
+
+    private static long crc(final String content) {
+        final CRC32 crc = new CRC32();
+        crc.update(content.getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+
+    @Test
+    public void blacklistsFingerprintsAndWritesNewOnesOnce() {
+        final BlacklistIndex index = index(false);
+        final List<String> added = new ArrayList<>();
+        index.setListener(added::add);
+        final long spam = Fingerprint.of("buy now");
+        index.add(BlacklistIndex.feedbackData(spam));
+        index.add(BlacklistIndex.feedbackData(spam));
+        assertTrue(index.isBlacklisted("buy now", spam));
+        assertFalse(index.isBlacklisted("hello", Fingerprint.of("hello")));
+        assertEquals(1, added.size());
+        assertEquals(1, index.size());
+        final List<Long> stored = new ArrayList<>();
+        store.forEachBlacklist(visitor(stored));
+        assertEquals(1, stored.size());
+    }
+
+    @Test
+    public void matchesLegacyHashesOnlyWhenEnabled() {
+        store.addLegacyBlacklist(crc("old spam"));
+        final BlacklistIndex legacy = index(true);
+        legacy.load();
+        assertTrue(legacy.isBlacklisted("old spam", Fingerprint.of("old spam")));
+        final BlacklistIndex strict = index(false);
+        strict.load();
+        assertFalse(strict.isBlacklisted("old spam", Fingerprint.of("old spam")));
+    }
+
+    @Test
+    public void matchesLinksImagesAndTextsByRule() {
+        final BlacklistIndex index = index(false);
+        index.add(BlacklistIndex.feedbackData(CanonicalLink.fromString("spam.net")));
+        index.add(BlacklistIndex.imageFeedbackData(0xF0L));
+        index.add(BlacklistIndex.textFeedbackData(0xFF00L));
+        assertTrue(index.isBlacklisted(CanonicalLink.parse("https://www.shop.spam.net/x")));
+        assertFalse(index.isBlacklisted(CanonicalLink.parse("https://example.com/spam.net")));
+        assertTrue(index.isImageBlacklisted(0xFFL));
+        assertFalse(index.isImageBlacklisted(0xF0FL << 8));
+        assertTrue(index.isTextBlacklisted(0xFF07L));
+        assertFalse(index.isTextBlacklisted(0xFF0FL));
+    }
+
+    @Test
+    public void warmingKeepsEntriesAddedBefore() {
+        final BlacklistIndex index = index(false);
+        index.add(BlacklistIndex.feedbackData(1L));
+        index.warm(visitor -> {
+            visitor.fingerprint(2L);
+            visitor.linkRule("spam.net");
+        });
+        store.addBlacklist(3L);
+        index.load();
+        assertTrue(index.contains(1L));
+        assertTrue(index.contains(2L));
+        assertTrue(index.contains(3L));
+        assertEquals(1, index.getLinkRules().size());
+        assertEquals(4, index.size());
+    }
+
+    @Test
+    public void growsTheBloomFilterWithTheFingerprints() {
+        final BlacklistIndex index = index(false);
+        for (long fingerprint = 1; fingerprint <= 5000; fingerprint++) index.add(BlacklistIndex.feedbackData(fingerprint));
+        for (long fingerprint = 1; fingerprint <= 5000; fingerprint++) assertTrue(index.contains(fingerprint));
+        assertFalse(index.contains(5001L));
+    }
+
+    private static IBlacklistVisitor visitor(final List<Long> fingerprints) {
+        return new IBlacklistVisitor() {
+            @Override
+            public void fingerprint(final long fingerprint) {
+                fingerprints.add(fingerprint);
+            }
+
+            @Override
+            public void legacyCrc(final long crc) {
+            }
+
+            @Override
+            public void linkRule(final String rule) {
+            }
+
+            @Override
+            public void imageHash(final long hash) {
+            }
+
+            @Override
+            public void textHash(final long hash) {
+            }
+        };
+    }
+
+}
@@ -0,0 +1,80 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.cache;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class DuplicateTextIndexTest {
+
+    private static final long HASH = 0x0123_4567_89AB_CDEFL;
+
+    @Test
+    public void groupsHashesWithinTheDistance() {
+        for (int distance = 0; distance <= 7; distance++) {
+            final DuplicateTextIndex index = new DuplicateTextIndex(60_000, distance, 16);
+            final DuplicateTextIndex.Cluster first = index.add(HASH, 1, -100, 1, 0);
+            final DuplicateTextIndex.Cluster near = index.add(HASH ^ ((1L << distance) - 1), 2, -100, 2, 1);
+            final DuplicateTextIndex.Cluster far = index.add(~HASH, 3, -100, 3, 2);
+            assertSame("distance " + distance, first, near);
+            assertNotSame("distance " + distance, first, far);
+            assertEquals(2, index.distinctUsers(first));
+        }
+    }
+
+    @Test
+    public void keepsDistanceZeroTextsApart() {
+        final DuplicateTextIndex index = new DuplicateTextIndex(60_000, 0, 16);
+        final DuplicateTextIndex.Cluster first = index.add(HASH, 1, -100, 1, 0);
+        assertNotSame(first, index.add(HASH ^ 1L, 2, -100, 2, 1));
+        assertNotSame(first, index.add(HASH ^ Long.MIN_VALUE, 3, -100, 3, 2));
+    }
+
+    @Test
+    public void forgetsMessagesOutsideTheWindow() {
+        final DuplicateTextIndex index = new DuplicateTextIndex(1_000, 3, 16);
+        final DuplicateTextIndex.Cluster first = index.add(HASH, 1, -100, 1, 0);
+        assertNotSame(first, index.add(HASH, 2, -100, 2, 5_000));
+    }
+
+    @Test
+    public void reportsAClusterOnce() {
+        final DuplicateTextIndex index = new DuplicateTextIndex(60_000, 3, 16);
+        final DuplicateTextIndex.Cluster cluster = index.add(HASH, 1, -100, 1, 0);
+        index.add(HASH, 1, -200, 2, 1);
+        assertEquals(true, index.hadUser(cluster, 1));
+        final List<DuplicateTextIndex.Entry> reported = index.report(cluster, "txt:1");
+        assertEquals(2, reported.size());
+        assertEquals("txt:1", index.dataOf(cluster));
+        assertNull(index.report(cluster, "txt:1"));
+    }
+
+}
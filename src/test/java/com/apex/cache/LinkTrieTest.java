@@ -0,0 +1,90 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.cache;
+
+import com.apex.addition.CanonicalLink;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LinkTrieTest {
+
+    private static CanonicalLink link(final String link) {
+        return CanonicalLink.parse(link);
+    }
+
+    @Test
+    public void hostRuleMatchesTheHostAndItsSubDomains() {
+        final LinkTrie trie = new LinkTrie();
+        trie.add(link("spam.net"));
+        assertTrue(trie.matches(link("https://spam.net/a/b?c=d")));
+        assertTrue(trie.matches(link("http://cdn.spam.net")));
+        assertFalse(trie.matches(link("https://notspam.net")));
+        assertFalse(trie.matches(link("https://net.com")));
+    }
+
+    @Test
+    public void pathRuleMatchesLinksBelowIt() {
+        final LinkTrie trie = new LinkTrie();
+        trie.add(link("t.me/spamchannel/1"));
+        assertTrue(trie.matches(link("https://t.me/spamchannel/1")));
+        assertTrue(trie.matches(link("https://t.me/spamchannel/1/x")));
+        assertFalse(trie.matches(link("https://t.me/spamchannel")));
+        assertFalse(trie.matches(link("https://t.me/otherchannel/1")));
+    }
+
+    @Test
+    public void queryRuleMatchesLinksWithMoreParameters() {
+        final LinkTrie trie = new LinkTrie();
+        trie.add(link("youtube.com/watch?v=x"));
+        assertTrue(trie.matches(link("https://www.youtube.com/watch?v=x")));
+        assertTrue(trie.matches(link("https://youtube.com/watch?v=x&t=1")));
+        assertTrue(trie.matches(link("https://youtube.com/watch?t=1&list=y&v=x")));
+        assertFalse(trie.matches(link("https://youtube.com/watch?v=y&t=1")));
+        assertFalse(trie.matches(link("https://youtube.com/watch")));
+        assertFalse(trie.matches(link("https://youtube.com/watch/more?v=x")));
+    }
+
+    @Test
+    public void queryRuleNeedsAllItsParameters() {
+        final LinkTrie trie = new LinkTrie();
+        trie.add(link("example.com/p?a=1&c=3"));
+        assertTrue(trie.matches(link("https://example.com/p?c=3&b=2&a=1")));
+        assertFalse(trie.matches(link("https://example.com/p?a=1&b=2")));
+        assertFalse(trie.matches(link("https://example.com/p?c=3")));
+    }
+
+    @Test
+    public void addsEveryRuleOnce() {
+        final LinkTrie trie = new LinkTrie();
+        assertTrue(trie.add(link("spam.net")));
+        assertFalse(trie.add(link("www.spam.net")));
+        assertTrue(trie.add(link("t.me/a/b")));
+        assertEquals(2, trie.size());
+    }
+
+}
@@ -0,0 +1,80 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.cache;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SlidingWindowCountersTest {
+
+    private static final long WINDOW = 10_000;
+
+    @Test
+    public void countsMessagesPerChatAndUser() {
+        final SlidingWindowCounters counters = new SlidingWindowCounters(64, WINDOW);
+        final int slot = counters.record(-100, 1, 10, 0);
+        counters.record(-100, 1, 11, 1);
+        counters.record(-100, 1, 12, 2);
+        final int other = counters.record(-100, 2, 13, 3);
+        assertNotEquals(slot, other);
+        assertEquals(slot, counters.find(-100, 1));
+        assertEquals(-1, counters.find(-200, 1));
+        assertEquals(3, counters.rate(slot, 3));
+        assertEquals(1, counters.rate(other, 3));
+    }
+
+    @Test
+    public void weighsThePreviousWindow() {
+        final SlidingWindowCounters counters = new SlidingWindowCounters(64, WINDOW);
+        int slot = -1;
+        for (int i = 0; i < 4; i++) slot = counters.record(-100, 1, i, WINDOW - 10);
+        // a quarter into the next window three quarters of the previous one still count
+        assertEquals(3, counters.rate(slot, WINDOW + WINDOW / 4));
+        assertEquals(0, counters.rate(slot, 3 * WINDOW));
+    }
+
+    @Test
+    public void flagsOnlyOnce() {
+        final SlidingWindowCounters counters = new SlidingWindowCounters(64, WINDOW);
+        final int slot = counters.record(-100, 1, 1, 0);
+        assertTrue(counters.flag(slot));
+        assertFalse(counters.flag(slot));
+    }
+
+    @Test
+    public void keepsTheLatestMessagesNewestFirst() {
+        final SlidingWindowCounters counters = new SlidingWindowCounters(64, WINDOW);
+        int slot = -1;
+        for (int id = 1; id <= SlidingWindowCounters.RECENT + 2; id++) slot = counters.record(-100, 1, id, id);
+        assertArrayEquals(new int[]{18, 17, 16}, counters.recentMessages(slot, 3));
+        assertEquals(SlidingWindowCounters.RECENT, counters.recentMessages(slot, 100).length);
+    }
+
+}
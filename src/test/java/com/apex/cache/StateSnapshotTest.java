@@ -0,0 +1,125 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.cache;
+
+import com.apex.Fields;
+import com.apex.addition.CanonicalLink;
+import com.apex.entities.TGUser;
+import com.apex.store.MemoryModerationStore;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class StateSnapshotTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path file;
+    private MemoryModerationStore store;
+    private TGUserCache cache;
+    private BlacklistIndex index;
+
+    @Before
+    public void writeSnapshot() throws IOException {
+        file = folder.newFolder().toPath().resolve("state.snapshot");
+        final StateSnapshot snapshot = snapshot(new MemoryModerationStore());
+        cache.save(new TGUser(1, 2, true));
+        cache.save(new TGUser(2, 0, false));
+        index.add(BlacklistIndex.feedbackData(42L));
+        index.add("12345");
+        index.add(BlacklistIndex.feedbackData(CanonicalLink.fromString("spam.net/promo")));
+        index.add(BlacklistIndex.imageFeedbackData(0xF0L));
+        index.add(BlacklistIndex.textFeedbackData(0xFF00L));
+        snapshot.start();
+        snapshot.stop();
+    }
+
+    private StateSnapshot snapshot(final MemoryModerationStore moderationStore) {
+        store = moderationStore;
+        cache = Fields.set(new TGUserCache(100, 600), "moderationStore", store);
+        index = new BlacklistIndex();
+        Fields.set(index, "moderationStore", store);
+        Fields.set(index, "matchLegacy", true);
+        Fields.set(index, "imageDistance", 4);
+        Fields.set(index, "textDistance", 3);
+        final StateSnapshot snapshot = new StateSnapshot();
+        Fields.set(snapshot, "tgUserCache", cache);
+        Fields.set(snapshot, "blacklistIndex", index);
+        Fields.set(snapshot, "fileName", file.toString());
+        Fields.set(snapshot, "interval", 0L);
+        return snapshot;
+    }
+
+    @Test
+    public void restoresWarmUsersAndTheBlacklist() {
+        snapshot(new MemoryModerationStore()).restore();
+        assertTrue(cache.isTrusted(1));
+        assertEquals(0, cache.findById(2).get().getCount());
+        assertEquals(0, store.getUserLookups());
+        assertEquals(2, cache.getHits());
+        assertTrue(index.contains(42L));
+        assertArrayEquals(new long[]{12345L}, index.getLegacyCrcs());
+        assertTrue(index.isBlacklisted(CanonicalLink.parse("https://spam.net/promo/today")));
+        assertTrue(index.isImageBlacklisted(0xF1L));
+        assertTrue(index.isTextBlacklisted(0xFF01L));
+    }
+
+    @Test
+    public void ignoresASnapshotWithABadChecksum() throws IOException {
+        final byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(file, bytes);
+        assertNothingRestored();
+    }
+
+    @Test
+    public void ignoresATruncatedSnapshot() throws IOException {
+        final byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 20));
+        assertNothingRestored();
+    }
+
+    private void assertNothingRestored() {
+        final MemoryModerationStore empty = new MemoryModerationStore();
+        snapshot(empty).restore();
+        assertFalse(index.contains(42L));
+        assertEquals(0, index.size());
+        assertFalse(cache.findById(1).isPresent());
+        assertEquals(1, empty.getUserLookups());
+    }
+
+}
@@ -0,0 +1,107 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.cache;
+
+import com.apex.Fields;
+import com.apex.entities.TGUser;
+import com.apex.store.MemoryModerationStore;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TGUserCacheTest {
+
+    private final MemoryModerationStore store = new MemoryModerationStore();
+
+    private TGUserCache cache(final int size, final long ttlSeconds) {
+        return Fields.set(new TGUserCache(size, ttlSeconds), "moderationStore", store);
+    }
+
+    @Test
+    public void readsEachUserOnceWithinTheTtl() {
+        store.saveUser(new TGUser(1, 2, true));
+        final TGUserCache cache = cache(10, 600);
+        assertEquals(2, cache.findById(1).get().getCount());
+        assertTrue(cache.isTrusted(1));
+        assertFalse(cache.findById(2).isPresent());
+        assertFalse(cache.isTrusted(2));
+        assertEquals(2, store.getUserLookups());
+        assertEquals(2, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void readsTheUserAgainAfterTheTtl() throws InterruptedException {
+        store.saveUser(new TGUser(1, 2, false));
+        final TGUserCache cache = cache(10, 1);
+        cache.findById(1);
+        store.saveUser(new TGUser(1, 3, false));
+        assertEquals(2, cache.findById(1).get().getCount());
+        Thread.sleep(1100);
+        assertEquals(3, cache.findById(1).get().getCount());
+        assertEquals(2, store.getUserLookups());
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUsedUser() {
+        final TGUserCache cache = cache(2, 600);
+        cache.findById(1);
+        cache.findById(2);
+        cache.findById(1);
+        cache.findById(3);
+        assertEquals(2, cache.size());
+        cache.findById(1);
+        assertEquals(3, store.getUserLookups());
+        cache.findById(2);
+        assertEquals(4, store.getUserLookups());
+    }
+
+    @Test
+    public void servesWarmedUsersWithoutTheStore() {
+        final TGUserCache cache = cache(10, 600);
+        cache.warm(new TGUser(1, 1, true));
+        cache.save(new TGUser(2, 3, false));
+        cache.warm(new TGUser(2, 0, false));
+        assertTrue(cache.isTrusted(1));
+        assertEquals(3, cache.findById(2).get().getCount());
+        assertEquals(0, store.getUserLookups());
+        assertEquals(2, cache.getHits());
+    }
+
+    @Test
+    public void writesThroughAndHandsOutCopies() {
+        final TGUserCache cache = cache(10, 600);
+        cache.save(new TGUser(1, 1, false));
+        assertEquals(1, store.findUser(1).get().getCount());
+        cache.findById(1).get().setCount(5);
+        assertEquals(1, cache.findById(1).get().getCount());
+        cache.delete(new TGUser(1, 1, false));
+        assertFalse(cache.findById(1).isPresent());
+        assertFalse(store.findUser(1).isPresent());
+    }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.cluster;
+
+import com.apex.entities.TGUser;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LoopbackTransportTest {
+
+    @Test
+    public void deliversToTheOtherWorkersOfTheCluster() {
+        final LoopbackTransport first = new LoopbackTransport("test-cluster");
+        final LoopbackTransport second = new LoopbackTransport("test-cluster");
+        final LoopbackTransport elsewhere = new LoopbackTransport("other-cluster");
+        final List<ReplicationEvent> atFirst = new CopyOnWriteArrayList<>();
+        final List<ReplicationEvent> atSecond = new CopyOnWriteArrayList<>();
+        final List<ReplicationEvent> atElsewhere = new CopyOnWriteArrayList<>();
+        first.setReceiver(atFirst::addAll);
+        second.setReceiver(atSecond::addAll);
+        elsewhere.setReceiver(atElsewhere::addAll);
+        first.start();
+        second.start();
+        elsewhere.start();
+        try {
+            first.publish(Arrays.asList(ReplicationEvent.blacklist(1, "fp:1"),
+                    ReplicationEvent.user(1, 42, new TGUser(42, 2, true)),
+                    ReplicationEvent.user(1, 43, null)));
+            assertTrue(atFirst.isEmpty());
+            assertTrue(atElsewhere.isEmpty());
+            assertEquals(3, atSecond.size());
+            assertEquals("fp:1", atSecond.get(0).getData());
+            assertEquals(2, atSecond.get(1).getUser().getCount());
+            assertTrue(atSecond.get(1).getUser().isTrusted());
+            assertEquals(ReplicationEvent.Type.USER_DELETED, atSecond.get(2).getType());
+            assertNull(atSecond.get(2).getUser());
+        } finally {
+            first.stop();
+            second.stop();
+            elsewhere.stop();
+        }
+    }
+
+    @Test
+    public void stoppedWorkersReceiveNothing() {
+        final LoopbackTransport first = new LoopbackTransport("stop-cluster");
+        final LoopbackTransport second = new LoopbackTransport("stop-cluster");
+        final List<ReplicationEvent> atSecond = new CopyOnWriteArrayList<>();
+        second.setReceiver(atSecond::addAll);
+        first.start();
+        second.start();
+        second.stop();
+        first.publish(Arrays.asList(ReplicationEvent.blacklist(1, "fp:1")));
+        first.stop();
+        assertTrue(atSecond.isEmpty());
+    }
+
+}
@@ -0,0 +1,96 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.command;
+
+import org.junit.Test;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class CommandScannerTest {
+
+    private final List<String> found = new ArrayList<>();
+
+    private ICommandHandler record(final String name) {
+        return (context, argument, result) -> found.add(argument == null ? name : name + "=" + argument);
+    }
+
+    private List<String> scan(final CommandScanner scanner, final String text) {
+        found.clear();
+        scanner.dispatch(null, text, new ArrayList<BotApiMethod>());
+        return found;
+    }
+
+    private CommandScanner moderation() {
+        return new CommandRegistry()
+                .register("!warn", record("warn"))
+                .registerWithArgument("!mute", record("mute"))
+                .register("!unmute", record("unmute"))
+                .compile();
+    }
+
+    @Test
+    public void passesTheNumberAfterAParameterizedCommand() {
+        final CommandScanner scanner = moderation();
+        assertEquals(List.of("mute=36"), scan(scanner, "!mute36"));
+        assertEquals(List.of("mute"), scan(scanner, "you've been !muted"));
+        assertEquals(List.of("mute=0"), scan(scanner, "!mute0"));
+        assertEquals(List.of("mute=123456789"), scan(scanner, "!mute1234567890"));
+    }
+
+    @Test
+    public void findsCommandsInsideWordsAndSentences() {
+        final CommandScanner scanner = moderation();
+        assertEquals(List.of("warn", "mute=24"), scan(scanner, "consider yourself !warned, and !mute24"));
+        assertEquals(List.of("unmute"), scan(scanner, "!unmute"));
+        assertEquals(List.of(), scan(scanner, "warn mute ! unmute"));
+    }
+
+    @Test
+    public void runsEachCommandOnce() {
+        assertEquals(List.of("warn"), scan(moderation(), "!warn !warn !warn"));
+    }
+
+    @Test
+    public void findsOverlappingCommands() {
+        final CommandScanner scanner = new CommandRegistry()
+                .register("he", record("he"))
+                .register("she", record("she"))
+                .register("his", record("his"))
+                .register("hers", record("hers"))
+                .compile();
+        assertEquals(List.of("she", "he", "hers"), scan(scanner, "ushers"));
+        assertEquals(List.of("his"), scan(scanner, "ahis"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsACommandRegisteredTwice() {
+        new CommandRegistry().register("!warn", record("a")).register("!warn", record("b"));
+    }
+
+}
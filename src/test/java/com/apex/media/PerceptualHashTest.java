@@ -0,0 +1,96 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.media;
+
+import org.junit.Test;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PerceptualHashTest {
+
+    /**
+     * A horizontal gradient with a dark square on the left half, darker to the right.
+     */
+    private static BufferedImage picture(final int width, final int height, final int shift) {
+        final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int x = 0; x < width; x++) {
+            final int level = Math.min(255, Math.max(0, 255 - x * 255 / width + shift));
+            for (int y = 0; y < height; y++) image.setRGB(x, y, new Color(level, level, level).getRGB());
+        }
+        final Graphics2D graphics = image.createGraphics();
+        try {
+            graphics.setColor(Color.BLACK);
+            graphics.fillRect(width / 8, height / 4, width / 4, height / 2);
+        } finally {
+            graphics.dispose();
+        }
+        return image;
+    }
+
+    private static BufferedImage mirrored(final BufferedImage image) {
+        final BufferedImage mirror = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        for (int x = 0; x < image.getWidth(); x++) {
+            for (int y = 0; y < image.getHeight(); y++) mirror.setRGB(image.getWidth() - 1 - x, y, image.getRGB(x, y));
+        }
+        return mirror;
+    }
+
+    @Test
+    public void hashesAFallingGradientToAllOnes() {
+        final BufferedImage image = new BufferedImage(90, 80, BufferedImage.TYPE_INT_RGB);
+        for (int x = 0; x < 90; x++) {
+            for (int y = 0; y < 80; y++) image.setRGB(x, y, new Color(250 - x * 2, 250 - x * 2, 250 - x * 2).getRGB());
+        }
+        assertEquals(-1L, PerceptualHash.dHash(image));
+        assertEquals(0L, PerceptualHash.dHash(mirrored(image)));
+    }
+
+    @Test
+    public void keepsTheHashOfResizedAndBrightenedCopies() {
+        final long original = PerceptualHash.dHash(picture(640, 480, 0));
+        assertTrue(PerceptualHash.distance(original, PerceptualHash.dHash(picture(320, 240, 0))) <= 4);
+        assertTrue(PerceptualHash.distance(original, PerceptualHash.dHash(picture(1024, 768, 0))) <= 4);
+        assertTrue(PerceptualHash.distance(original, PerceptualHash.dHash(picture(640, 480, -20))) <= 4);
+    }
+
+    @Test
+    public void separatesDifferentPictures() {
+        final BufferedImage picture = picture(640, 480, 0);
+        assertTrue(PerceptualHash.distance(PerceptualHash.dHash(picture), PerceptualHash.dHash(mirrored(picture))) > 20);
+    }
+
+    @Test
+    public void countsDifferentBits() {
+        assertEquals(0, PerceptualHash.distance(0x5AL, 0x5AL));
+        assertEquals(3, PerceptualHash.distance(0b1011L, 0b0000L));
+        assertEquals(64, PerceptualHash.distance(0L, -1L));
+    }
+
+}
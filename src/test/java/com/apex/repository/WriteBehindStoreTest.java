@@ -0,0 +1,154 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.repository;
+
+import com.apex.Fields;
+import com.apex.entities.Feedback;
+import com.apex.entities.TGUser;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class WriteBehindStoreTest {
+
+    private static int databases;
+
+    private JdbcTemplate jdbcTemplate;
+    private WriteBehindStore store;
+
+    @Before
+    public void open() {
+        final DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:write-behind-" + ++databases + ";DB_CLOSE_DELAY=-1", "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE SEQUENCE hibernate_sequence");
+        jdbcTemplate.execute("CREATE TABLE tguser (user_id INT PRIMARY KEY, count INT NOT NULL, trusted BOOLEAN NOT NULL)");
+        jdbcTemplate.execute("CREATE TABLE feedback (feedback_id BIGINT PRIMARY KEY, user_id INT NOT NULL, " +
+                "chat_id BIGINT NOT NULL, data VARCHAR(255), created BIGINT DEFAULT 0 NOT NULL)");
+        jdbcTemplate.execute("CREATE TABLE blacklist (black_list_id BIGINT PRIMARY KEY, fingerprint BIGINT UNIQUE, " +
+                "legacy_crc BIGINT, link VARCHAR(255), image_hash BIGINT, text_hash BIGINT)");
+        store = new WriteBehindStore();
+        Fields.set(store, "jdbcTemplate", jdbcTemplate);
+        Fields.set(store, "transactionManager", new DataSourceTransactionManager(dataSource));
+        Fields.set(store, "feedbackRepository", empty(IFeedbackRepository.class));
+        Fields.set(store, "tgUserRepository", empty(ITGUserRepository.class));
+        Fields.set(store, "batchSize", 1000);
+        Fields.set(store, "flushInterval", 60_000L);
+        Fields.set(store, "flushAttempts", 2);
+    }
+
+    /**
+     * A repository that finds nothing.
+     */
+    private static <T> T empty(final Class<T> type) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            if (method.getReturnType() == Optional.class) return Optional.empty();
+            if (method.getReturnType() == List.class) return Collections.emptyList();
+            throw new UnsupportedOperationException(method.getName());
+        }));
+    }
+
+    @After
+    public void close() {
+        jdbcTemplate.execute("DROP ALL OBJECTS");
+    }
+
+    private int count(final String sql) {
+        return jdbcTemplate.queryForObject(sql, Integer.class);
+    }
+
+    @Test
+    public void showsPendingChangesAndWritesThemOnStop() {
+        store.saveUser(new TGUser(1, 2, true));
+        store.saveUser(new TGUser(2, 1, false));
+        store.deleteUser(2);
+        final Feedback feedback = store.createFeedback(1, -100, "fp:1");
+        store.addBlacklist(42L);
+        store.addLegacyBlacklist(7L);
+        assertEquals(2, store.findUser(1).get().getCount());
+        assertFalse(store.findUser(2).isPresent());
+        assertEquals("fp:1", store.findFeedback(feedback.getFeedbackId()).get().getData());
+        assertEquals(0, count("SELECT COUNT(*) FROM tguser"));
+
+        store.stop();
+
+        assertEquals(1, count("SELECT COUNT(*) FROM tguser WHERE user_id = 1 AND count = 2 AND trusted"));
+        assertEquals(1, count("SELECT COUNT(*) FROM tguser"));
+        assertEquals(1, count("SELECT COUNT(*) FROM feedback WHERE data = 'fp:1'"));
+        assertEquals(1, count("SELECT COUNT(*) FROM blacklist WHERE fingerprint = 42"));
+        assertEquals(1, count("SELECT COUNT(*) FROM blacklist WHERE legacy_crc = 7"));
+    }
+
+    @Test
+    public void dropsFeedbackDeletedBeforeItWasWritten() {
+        final Feedback feedback = store.createFeedback(1, -100, "fp:1");
+        store.deleteFeedback(feedback);
+        assertFalse(store.findFeedback(feedback.getFeedbackId()).isPresent());
+        store.stop();
+        assertEquals(0, count("SELECT COUNT(*) FROM feedback"));
+    }
+
+    @Test
+    public void takesIdsFromTheSequenceInBlocks() {
+        final Set<Long> ids = new HashSet<>();
+        for (int i = 0; i < 120; i++) ids.add(store.createFeedback(1, -100, "fp:" + i).getFeedbackId());
+        assertEquals(120, ids.size());
+        assertEquals(151L, (long) jdbcTemplate.queryForObject("SELECT NEXT VALUE FOR hibernate_sequence", Long.class));
+    }
+
+    @Test
+    public void retriesAFailingBatchAndThenWritesRowByRow() {
+        // the first id of the sequence is taken already, so the batch insert fails
+        jdbcTemplate.update("INSERT INTO feedback (feedback_id, user_id, chat_id, data, created) VALUES (1, 9, -9, 'old', 1)");
+        final Feedback clash = store.createFeedback(1, -100, "fp:clash");
+        final Feedback fine = store.createFeedback(2, -100, "fp:fine");
+        store.saveUser(new TGUser(3, 1, false));
+        assertEquals(1L, clash.getFeedbackId());
+
+        store.stop();
+        assertEquals(0, count("SELECT COUNT(*) FROM tguser"));
+        assertTrue(store.findUser(3).isPresent());
+
+        store.stop();
+        assertEquals(1, count("SELECT COUNT(*) FROM tguser"));
+        assertEquals(1, count("SELECT COUNT(*) FROM feedback WHERE feedback_id = " + fine.getFeedbackId()));
+        assertEquals("old", jdbcTemplate.queryForObject("SELECT data FROM feedback WHERE feedback_id = 1", String.class));
+    }
+
+}
@@ -0,0 +1,147 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.rules;
+
+import com.apex.Fields;
+import com.apex.strategy.FloodStrategy;
+import com.apex.strategy.MessageContext;
+import com.apex.strategy.Verdict;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.methods.groupadministration.KickChatMember;
+import org.telegram.telegrambots.meta.api.methods.groupadministration.RestrictChatMember;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.DeleteMessage;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RuleEngineTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private RuleEngine engine;
+
+    @After
+    public void tearDown() {
+        if (engine != null) engine.stop();
+    }
+
+    private RuleEngine start(final Path file) {
+        engine = Fields.set(new RuleEngine(), "floodStrategy", new FloodStrategy(10, 10, 60, 64));
+        Fields.set(engine, "fileName", file.toString());
+        Fields.set(engine, "reloadInterval", 1L);
+        Fields.set(engine, "maxChecks", 64);
+        engine.start();
+        return engine;
+    }
+
+    private static void write(final Path file, final String json, final long modifiedSeconds) throws IOException {
+        Files.write(file, json.replace('\'', '"').getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(file, FileTime.from(Instant.ofEpochSecond(modifiedSeconds)));
+    }
+
+    private static MessageContext message(final String text) throws IOException {
+        final String json = "{'update_id':1,'message':{'message_id':7,'date':1,'chat':{'id':-100,'type':'supergroup'}," +
+                "'from':{'id':42,'first_name':'a','is_bot':false},'text':'" + text + "'," +
+                "'entities':[{'type':'url','offset':0,'length':" + text.length() + "}]}}";
+        return MessageContext.of(MAPPER.readValue(json.replace('\'', '"'), Update.class));
+    }
+
+    /**
+     * Waits for the watcher to pick up a changed file, it checks once a second.
+     */
+    private Verdict awaitChange(final Verdict before) throws Exception {
+        final long deadline = System.currentTimeMillis() + 5000;
+        Verdict verdict = before;
+        while (System.currentTimeMillis() < deadline) {
+            verdict = engine.decide(message("x.com"));
+            if (verdict.isDecisive() != before.isDecisive() || verdict.getActions().size() != before.getActions().size()) {
+                return verdict;
+            }
+            Thread.sleep(50);
+        }
+        return verdict;
+    }
+
+    @Test
+    public void appliesTheActionsOfTheMatchingRule() throws IOException {
+        final Path file = folder.newFile("rules.json").toPath();
+        write(file, "{'chats':{'default':[{'name':'links','when':{'entities':['url']}," +
+                "'then':['delete','mute:3600','ban']}]}}", 1_000);
+        start(file);
+        final Verdict verdict = engine.decide(message("x.com"));
+        assertTrue(verdict.isDecisive());
+        final List<BotApiMethod> actions = verdict.getActions();
+        assertEquals(3, actions.size());
+        assertTrue(actions.get(0) instanceof DeleteMessage);
+        final int until = ((RestrictChatMember) actions.get(1)).getUntilDate();
+        assertTrue(Math.abs(until - (Instant.now().getEpochSecond() + 3600)) < 5);
+        assertEquals(Integer.valueOf(0), ((KickChatMember) actions.get(2)).getUntilDate());
+    }
+
+    @Test
+    public void reloadsAChangedFileAndKeepsTheRulesOfABrokenOne() throws Exception {
+        final Path file = folder.newFile("rules.json").toPath();
+        write(file, "{'chats':{'default':[{'name':'links','when':{'entities':['url']},'then':['delete']}]}}", 1_000);
+        start(file);
+        final Verdict first = engine.decide(message("x.com"));
+        assertEquals(1, first.getActions().size());
+
+        write(file, "{'chats':{'default':[", 2_000);
+        Thread.sleep(1500);
+        assertEquals(1, engine.decide(message("x.com")).getActions().size());
+
+        write(file, "{'chats':{'default':[{'name':'links','when':{'entities':['url']},'then':['delete','ban']}]}}", 3_000);
+        assertEquals(2, awaitChange(first).getActions().size());
+
+        Files.delete(file);
+        Thread.sleep(1500);
+        assertEquals(2, engine.decide(message("x.com")).getActions().size());
+    }
+
+    @Test
+    public void passesEverythingWithoutAFile() throws IOException {
+        start(folder.getRoot().toPath().resolve("missing.json"));
+        assertFalse(engine.decide(message("x.com")).isDecisive());
+    }
+
+}
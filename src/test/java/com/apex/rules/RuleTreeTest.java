@@ -0,0 +1,133 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.rules;
+
+import com.apex.strategy.MessageContext;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RuleTreeTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private RuleTree compile(final String json, final int maxChecks) throws IOException {
+        final Path file = folder.newFile().toPath();
+        Files.write(file, json.replace('\'', '"').getBytes(StandardCharsets.UTF_8));
+        return RuleTree.compile(RuleFile.read(file), maxChecks);
+    }
+
+    private static MessageContext message(final long chatId, final String text, final String entity,
+                                          final boolean trusted, final int warnings) throws IOException {
+        final String entities = entity == null ? "" :
+                ",'entities':[{'type':'" + entity + "','offset':0,'length':" + text.length() + "}]";
+        final String json = "{'update_id':1,'message':{'message_id':7,'date':1,'chat':{'id':" + chatId +
+                ",'type':'supergroup'},'from':{'id':42,'first_name':'a','is_bot':false},'text':'" + text + "'" +
+                entities + "}}";
+        return MessageContext.of(MAPPER.readValue(json.replace('\'', '"'), Update.class)).withUser(trusted, warnings);
+    }
+
+    @Test
+    public void chatRulesComeBeforeDefaultOnes() throws IOException {
+        final RuleTree tree = compile("{'chats':{" +
+                "'default':[{'name':'links','when':{'entities':['url']},'then':['delete']}]," +
+                "'-100':[{'name':'trusted-links','when':{'trusted':true,'entities':['url']},'then':['allow']}]}}", 10);
+        assertEquals(2, tree.size());
+        assertEquals("trusted-links", tree.match(message(-100, "x.com", "url", true, 0), () -> 0).name);
+        assertEquals("links", tree.match(message(-100, "x.com", "url", false, 0), () -> 0).name);
+        assertEquals("links", tree.match(message(-200, "x.com", "url", true, 0), () -> 0).name);
+        assertNull(tree.match(message(-200, "hello", null, false, 0), () -> 0));
+    }
+
+    @Test
+    public void checksWarningsAndMedia() throws IOException {
+        final RuleTree tree = compile("{'chats':{'default':[" +
+                "{'name':'photos','when':{'media':['photo']},'then':['delete']}," +
+                "{'name':'warned','when':{'minWarnings':2},'then':['mute:3600']}]}}", 10);
+        assertNull(tree.match(message(-100, "hi", null, false, 1), () -> 0));
+        final RuleTree.CompiledRule warned = tree.match(message(-100, "hi", null, false, 2), () -> 0);
+        assertEquals("warned", warned.name);
+        assertEquals(RuleAction.Type.MUTE, warned.actions.get(0).type);
+        assertEquals(3600, warned.actions.get(0).seconds);
+    }
+
+    @Test
+    public void asksForTheRateOnlyWhenARuleNeedsIt() throws IOException {
+        final RuleTree tree = compile("{'chats':{'default':[" +
+                "{'name':'flood','when':{'media':['text'],'minRate':5},'then':['delete']}]}}", 10);
+        final AtomicInteger asked = new AtomicInteger();
+        assertNull(tree.match(message(-100, "hi", null, false, 0), () -> asked.incrementAndGet()));
+        assertEquals(1, asked.get());
+        assertEquals("flood", tree.match(message(-100, "hi", null, false, 0), () -> 5).name);
+        final RuleTree plain = compile("{'chats':{'default':[{'name':'any','then':['review']}]}}", 10);
+        plain.match(message(-100, "hi", null, false, 0), () -> {
+            throw new AssertionError("rate asked for");
+        });
+    }
+
+    @Test
+    public void rejectsDurationsTelegramTakesAsForever() throws IOException {
+        assertEquals(30, compile("{'chats':{'default':[{'name':'a','then':['ban:30']}]}}", 10)
+                .match(message(-100, "hi", null, false, 0), () -> 0).actions.get(0).seconds);
+        try {
+            compile("{'chats':{'default':[{'name':'a','then':['mute:29']}]}}", 10);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("30 seconds"));
+        }
+    }
+
+    @Test
+    public void rejectsMoreChecksThanAllowed() throws IOException {
+        try {
+            compile("{'chats':{'default':[{'name':'a','then':['delete']},{'name':'b','then':['delete']}]}}", 1);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("at most 1"));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownChats() throws IOException {
+        compile("{'chats':{'group':[{'name':'a','then':['delete']}]}}", 10);
+    }
+
+}
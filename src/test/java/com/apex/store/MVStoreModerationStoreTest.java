@@ -0,0 +1,163 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.store;
+
+import com.apex.Fields;
+import com.apex.entities.Feedback;
+import com.apex.entities.TGUser;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MVStoreModerationStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MVStoreModerationStore open(final String fileName) {
+        final MVStoreModerationStore store = new MVStoreModerationStore();
+        Fields.set(store, "fileName", fileName);
+        Fields.set(store, "commitDelay", 1000);
+        Fields.set(store, "migrate", false);
+        store.open();
+        return store;
+    }
+
+    @Test
+    public void keepsUsersFeedbackAndBlacklistAcrossRestarts() throws IOException {
+        final String file = folder.newFolder().toPath().resolve("state.mv").toString();
+        final MVStoreModerationStore store = open(file);
+        store.saveUser(new TGUser(1, 3, true));
+        store.saveUser(new TGUser(2, 1, false));
+        store.deleteUser(2);
+        final Feedback first = store.createFeedback(1, -100, "fp:1");
+        store.addBlacklist(42L);
+        store.addLegacyBlacklist(7L);
+        store.addLinkBlacklist("spam.net");
+        store.addImageBlacklist(0xF0L);
+        store.addTextBlacklist(0xFF00L);
+        store.stop();
+
+        final MVStoreModerationStore reopened = open(file);
+        try {
+            final TGUser user = reopened.findUser(1).get();
+            assertEquals(3, user.getCount());
+            assertTrue(user.isTrusted());
+            assertFalse(reopened.findUser(2).isPresent());
+            assertEquals("fp:1", reopened.findFeedback(first.getFeedbackId()).get().getData());
+            assertTrue(reopened.createFeedback(1, -100, "fp:2").getFeedbackId() > first.getFeedbackId());
+            final List<String> visited = new ArrayList<>();
+            reopened.forEachBlacklist(recorder(visited));
+            assertEquals(Arrays.asList("fp:42", "crc:7", "url:spam.net", "img:240", "txt:65280"), visited);
+        } finally {
+            reopened.stop();
+        }
+    }
+
+    @Test
+    public void takesAndExpiresFeedback() {
+        final MVStoreModerationStore store = open(null);
+        try {
+            final Feedback first = store.createFeedback(1, -100, "fp:1");
+            final Feedback second = store.createFeedback(2, -200, "fp:1");
+            final Feedback other = store.createFeedback(3, -100, "fp:2");
+            assertEquals(2, store.takeFeedbackWithData("fp:1").size());
+            assertTrue(store.takeFeedbackWithData("fp:1").isEmpty());
+            assertFalse(store.findFeedback(first.getFeedbackId()).isPresent());
+            assertFalse(store.findFeedback(second.getFeedbackId()).isPresent());
+            assertTrue(store.deleteFeedbackCreatedBefore(other.getCreated()).isEmpty());
+            assertEquals(Arrays.asList(other.getFeedbackId()), store.deleteFeedbackCreatedBefore(other.getCreated() + 1));
+            assertFalse(store.findFeedback(other.getFeedbackId()).isPresent());
+        } finally {
+            store.stop();
+        }
+    }
+
+    @Test
+    public void migratesOldHashesAndStampsFeedbackWithoutCreationTime() throws IOException {
+        final String file = folder.newFolder().toPath().resolve("old.mv").toString();
+        final MVStore old = new MVStore.Builder().fileName(file).open();
+        final MVMap<String, Boolean> hashes = old.openMap("blacklist");
+        hashes.put("12345", Boolean.TRUE);
+        hashes.put("not a hash", Boolean.TRUE);
+        final MVMap<Long, Object[]> feedback = old.openMap("feedback");
+        feedback.put(5L, new Object[]{1, -100L, "fp:1", 0L});
+        old.close();
+
+        final long before = Instant.now().getEpochSecond();
+        final MVStoreModerationStore store = open(file);
+        try {
+            final List<String> visited = new ArrayList<>();
+            store.forEachBlacklist(recorder(visited));
+            assertEquals(Arrays.asList("crc:12345"), visited);
+            assertTrue(store.findFeedback(5L).get().getCreated() >= before);
+            assertEquals(6L, store.createFeedback(1, -100, "fp:2").getFeedbackId());
+        } finally {
+            store.stop();
+        }
+    }
+
+    private static IBlacklistVisitor recorder(final List<String> visited) {
+        return new IBlacklistVisitor() {
+            @Override
+            public void fingerprint(final long fingerprint) {
+                visited.add("fp:" + fingerprint);
+            }
+
+            @Override
+            public void legacyCrc(final long crc) {
+                visited.add("crc:" + crc);
+            }
+
+            @Override
+            public void linkRule(final String rule) {
+                visited.add("url:" + rule);
+            }
+
+            @Override
+            public void imageHash(final long hash) {
+                visited.add("img:" + hash);
+            }
+
+            @Override
+            public void textHash(final long hash) {
+                visited.add("txt:" + hash);
+            }
+        };
+    }
+
+}
@@ -0,0 +1,151 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.store;
+
+import com.apex.entities.Feedback;
+import com.apex.entities.TGUser;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Moderation state in plain maps, counting the user lookups.
+ */
+public class MemoryModerationStore implements IModerationStore {
+
+    private final Map<Integer, TGUser> users = new LinkedHashMap<>();
+    private final Map<Long, Feedback> feedback = new LinkedHashMap<>();
+    private final Set<Long> fingerprints = new LinkedHashSet<>();
+    private final Set<Long> legacyCrcs = new LinkedHashSet<>();
+    private final Set<String> linkRules = new LinkedHashSet<>();
+    private final Set<Long> imageHashes = new LinkedHashSet<>();
+    private final Set<Long> textHashes = new LinkedHashSet<>();
+    private final AtomicInteger userLookups = new AtomicInteger();
+    private long nextFeedbackId;
+
+    public int getUserLookups() {
+        return userLookups.get();
+    }
+
+    @Override
+    public synchronized Optional<TGUser> findUser(final int userId) {
+        userLookups.incrementAndGet();
+        final TGUser user = users.get(userId);
+        return user == null ? Optional.empty() : Optional.of(new TGUser(userId, user.getCount(), user.isTrusted()));
+    }
+
+    @Override
+    public synchronized void saveUser(final TGUser user) {
+        users.put(user.getUserId(), new TGUser(user.getUserId(), user.getCount(), user.isTrusted()));
+    }
+
+    @Override
+    public synchronized void deleteUser(final int userId) {
+        users.remove(userId);
+    }
+
+    @Override
+    public synchronized Feedback createFeedback(final int userId, final long chatId, final String data) {
+        final Feedback created = new Feedback(userId, chatId, data);
+        created.setFeedbackId(++nextFeedbackId);
+        created.setCreated(Instant.now().getEpochSecond());
+        feedback.put(created.getFeedbackId(), created);
+        return created;
+    }
+
+    @Override
+    public synchronized Optional<Feedback> findFeedback(final long feedbackId) {
+        return Optional.ofNullable(feedback.get(feedbackId));
+    }
+
+    @Override
+    public synchronized void deleteFeedback(final Feedback deleted) {
+        feedback.remove(deleted.getFeedbackId());
+    }
+
+    @Override
+    public synchronized List<Feedback> takeFeedbackWithData(final String data) {
+        final List<Feedback> taken = new ArrayList<>();
+        feedback.values().removeIf(f -> data.equals(f.getData()) && taken.add(f));
+        return taken;
+    }
+
+    @Override
+    public synchronized List<Long> deleteFeedbackCreatedBefore(final long epochSecond) {
+        final List<Long> expired = new ArrayList<>();
+        feedback.values().removeIf(f -> f.getCreated() < epochSecond && expired.add(f.getFeedbackId()));
+        return expired;
+    }
+
+    @Override
+    public synchronized void addBlacklist(final long fingerprint) {
+        fingerprints.add(fingerprint);
+    }
+
+    @Override
+    public synchronized void addLegacyBlacklist(final long crc) {
+        legacyCrcs.add(crc);
+    }
+
+    @Override
+    public synchronized void addLinkBlacklist(final String rule) {
+        linkRules.add(rule);
+    }
+
+    @Override
+    public synchronized void addImageBlacklist(final long hash) {
+        imageHashes.add(hash);
+    }
+
+    @Override
+    public synchronized void addTextBlacklist(final long hash) {
+        textHashes.add(hash);
+    }
+
+    @Override
+    public synchronized void forEachBlacklist(final IBlacklistVisitor visitor) {
+        fingerprints.forEach(visitor::fingerprint);
+        legacyCrcs.forEach(visitor::legacyCrc);
+        linkRules.forEach(visitor::linkRule);
+        imageHashes.forEach(visitor::imageHash);
+        textHashes.forEach(visitor::textHash);
+    }
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public void stop() {
+    }
+
+}
@@ -0,0 +1,128 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.strategy;
+
+import com.apex.Fields;
+import com.apex.cache.TGUserCache;
+import com.apex.entities.TGUser;
+import com.apex.store.MemoryModerationStore;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Before;
+import org.junit.Test;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.methods.groupadministration.KickChatMember;
+import org.telegram.telegrambots.meta.api.methods.groupadministration.RestrictChatMember;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CommandStrategyTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final int TARGET = 7;
+
+    private final MemoryModerationStore store = new MemoryModerationStore();
+    private CommandStrategy strategy;
+
+    @Before
+    public void setUp() {
+        final TGUserCache cache = Fields.set(new TGUserCache(100, 60), "moderationStore", store);
+        strategy = Fields.set(new CommandStrategy(), "tgUserCache", cache);
+        Fields.set(strategy, "firstWarning", "first");
+        Fields.set(strategy, "secondWarning", "second");
+        Fields.set(strategy, "thirdWarning", "third");
+    }
+
+    private static MessageContext reply(final String text) throws IOException {
+        final String json = "{'update_id':1,'message':{'message_id':9,'date':1,'chat':{'id':-100,'type':'supergroup'}," +
+                "'from':{'id':1,'first_name':'admin','is_bot':false},'text':'" + text + "'," +
+                "'reply_to_message':{'message_id':8,'date':1,'chat':{'id':-100,'type':'supergroup'}," +
+                "'from':{'id':" + TARGET + ",'first_name':'Bob','is_bot':false},'text':'spam'}}}";
+        return MessageContext.of(MAPPER.readValue(json.replace('\'', '"'), Update.class));
+    }
+
+    private static String text(final List<BotApiMethod> actions) {
+        return ((SendMessage) actions.get(actions.size() - 1)).getText();
+    }
+
+    @Test
+    public void warnsTwiceAndBansOnTheThirdWarning() throws IOException {
+        assertEquals("Bob, first", text(strategy.runStrategy(reply("!warn"))));
+        final TGUser warned = store.findUser(TARGET).get();
+        assertEquals(1, warned.getCount());
+        assertFalse(warned.isTrusted());
+        assertEquals("Bob, second", text(strategy.runStrategy(reply("!warn"))));
+        final List<BotApiMethod> third = strategy.runStrategy(reply("!warn"));
+        assertTrue(third.get(0) instanceof KickChatMember);
+        assertEquals("Bob third", text(third));
+    }
+
+    @Test
+    public void countsConcurrentWarnings() throws Exception {
+        final MessageContext warn = reply("!warn");
+        final ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<?>> warnings = new ArrayList<>();
+            for (int i = 0; i < 40; i++) warnings.add(pool.submit(() -> strategy.runStrategy(warn)));
+            for (Future<?> warning : warnings) warning.get();
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(40, store.findUser(TARGET).get().getCount());
+    }
+
+    @Test
+    public void mutesForGoodWithoutHoursOrWithZero() throws IOException {
+        for (String command : new String[]{"!mute", "!mute0"}) {
+            final RestrictChatMember mute = (RestrictChatMember) strategy.runStrategy(reply(command)).get(0);
+            assertEquals(Integer.valueOf(0), mute.getUntilDate());
+            assertFalse(mute.getCanSendMessages());
+        }
+        final long now = Instant.now().getEpochSecond();
+        final RestrictChatMember mute = (RestrictChatMember) strategy.runStrategy(reply("!mute36")).get(0);
+        assertTrue(Math.abs(mute.getUntilDate() - (now + 36 * 3600)) < 5);
+    }
+
+    @Test
+    public void trustKeepsTheWarnings() throws IOException {
+        strategy.runStrategy(reply("!warn"));
+        strategy.runStrategy(reply("!trust"));
+        final TGUser trusted = store.findUser(TARGET).get();
+        assertTrue(trusted.isTrusted());
+        assertEquals(1, trusted.getCount());
+    }
+
+}
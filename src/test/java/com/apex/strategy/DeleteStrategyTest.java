@@ -0,0 +1,163 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.strategy;
+
+import com.apex.Fields;
+import com.apex.addition.Fingerprint;
+import com.apex.bot.ReviewDigest;
+import com.apex.bot.TenantRegistry;
+import com.apex.bot.Tenants;
+import com.apex.cache.BlacklistIndex;
+import com.apex.media.DocumentFingerprinter;
+import com.apex.media.IFileFetcher;
+import com.apex.store.MemoryModerationStore;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.methods.groupadministration.KickChatMember;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.DeleteMessage;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DeleteStrategyTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final long CHAT = -100L;
+    private static final String CONTENT = "spam file";
+
+    private final MemoryModerationStore store = new MemoryModerationStore();
+    private final CountDownLatch download = new CountDownLatch(1);
+    private final LinkedBlockingQueue<List<BotApiMethod>> followUps = new LinkedBlockingQueue<>();
+    private BlacklistIndex blacklistIndex;
+    private DocumentFingerprinter fingerprinter;
+    private DeleteStrategy strategy;
+
+    @Before
+    public void setUp() {
+        final TenantRegistry tenants = Tenants.single(CHAT, -200L);
+
+        blacklistIndex = Fields.set(new BlacklistIndex(), "moderationStore", store);
+        Fields.set(blacklistIndex, "imageDistance", 4);
+        Fields.set(blacklistIndex, "textDistance", 3);
+
+        final IFileFetcher fetcher = (token, fileId) -> {
+            try {
+                download.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new ByteArrayInputStream(CONTENT.getBytes(StandardCharsets.UTF_8));
+        };
+        fingerprinter = Fields.set(new DocumentFingerprinter(), "fileFetcher", fetcher);
+        Fields.set(fingerprinter, "enabled", true);
+        Fields.set(fingerprinter, "maxSize", 1024L);
+        Fields.set(fingerprinter, "threads", 1);
+        Fields.set(fingerprinter, "queueDepth", 4);
+        Fields.set(fingerprinter, "cacheSize", 16);
+        fingerprinter.start();
+
+        final ReviewDigest reviewDigest = Fields.set(new ReviewDigest(), "moderationStore", store);
+        Fields.set(reviewDigest, "tenantRegistry", tenants);
+
+        strategy = Fields.set(new DeleteStrategy(), "blacklistIndex", blacklistIndex);
+        Fields.set(strategy, "mimeTypes", Arrays.asList("video/mp4"));
+        Fields.set(strategy, "fileNames", Arrays.asList("mp4"));
+        Fields.set(strategy, "sharedHosts", Arrays.asList("t.me"));
+        Fields.set(strategy, "tenantRegistry", tenants);
+        Fields.set(strategy, "documentFingerprinter", fingerprinter);
+        Fields.set(strategy, "reviewDigest", reviewDigest);
+    }
+
+    @After
+    public void tearDown() {
+        download.countDown();
+        fingerprinter.stop();
+    }
+
+    private MessageContext document(final String fileName) throws IOException {
+        final String json = "{'update_id':1,'message':{'message_id':7,'date':1,'chat':{'id':" + CHAT +
+                ",'type':'supergroup'},'from':{'id':42,'first_name':'a','is_bot':false}," +
+                "'document':{'file_id':'f1','file_name':'" + fileName + "','mime_type':'application/octet-stream'," +
+                "'file_size':" + CONTENT.length() + "}}}";
+        return MessageContext.of(MAPPER.readValue(json.replace('\'', '"'), Update.class)).withFollowUps(followUps::add);
+    }
+
+    private static boolean bans(final List<BotApiMethod> actions) {
+        return actions.stream().anyMatch(action -> action instanceof KickChatMember);
+    }
+
+    private static boolean deletes(final List<BotApiMethod> actions) {
+        return actions.stream().anyMatch(action -> action instanceof DeleteMessage);
+    }
+
+    @Test
+    public void deletesBeforeTheFileIsFingerprintedAndBansAfterwards() throws Exception {
+        blacklistIndex.add(BlacklistIndex.feedbackData(Fingerprint.of(CONTENT)));
+        final List<BotApiMethod> actions = strategy.runStrategy(document("renamed.exe"));
+        assertTrue(deletes(actions));
+        assertFalse(bans(actions));
+        assertNull(followUps.poll(100, TimeUnit.MILLISECONDS));
+        download.countDown();
+        final List<BotApiMethod> later = followUps.poll(5, TimeUnit.SECONDS);
+        assertEquals(1, later.size());
+        assertEquals(Integer.valueOf(42), ((KickChatMember) later.get(0)).getUserId());
+    }
+
+    @Test
+    public void bansAtOnceOnceTheFileIsKnown() throws Exception {
+        download.countDown();
+        strategy.runStrategy(document("first.exe"));
+        assertNull(followUps.poll(500, TimeUnit.MILLISECONDS));
+        blacklistIndex.add(BlacklistIndex.feedbackData(Fingerprint.of(CONTENT)));
+        final List<BotApiMethod> actions = strategy.runStrategy(document("second.exe"));
+        assertTrue(bans(actions));
+        assertTrue(deletes(actions));
+        assertNull(followUps.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void leavesAllowedMediaAlone() throws Exception {
+        final String json = "{'update_id':1,'message':{'message_id':7,'date':1,'chat':{'id':" + CHAT +
+                ",'type':'supergroup'},'from':{'id':42,'first_name':'a','is_bot':false}," +
+                "'document':{'file_id':'f2','file_name':'clip.mp4','mime_type':'video/mp4','file_size':9}}}";
+        assertTrue(strategy.runStrategy(MessageContext.of(MAPPER.readValue(json.replace('\'', '"'), Update.class))).isEmpty());
+    }
+
+}
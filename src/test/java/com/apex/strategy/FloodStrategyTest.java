@@ -0,0 +1,102 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 - 2019
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.apex.strategy;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.methods.groupadministration.RestrictChatMember;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.DeleteMessage;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FloodStrategyTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final long CHAT = -100L;
+    private static final int START = 1_600_000_000;
+
+    private static MessageContext message(final int userId, final int messageId, final int date) throws IOException {
+        final String json = "{'update_id':1,'message':{'message_id':" + messageId + ",'date':" + date +
+                ",'chat':{'id':" + CHAT + ",'type':'supergroup'},'from':{'id':" + userId +
+                ",'first_name':'a','is_bot':false},'text':'hi'}}";
+        return MessageContext.of(MAPPER.readValue(json.replace('\'', '"'), Update.class));
+    }
+
+    private static List<Integer> deleted(final List<BotApiMethod> actions) {
+        final List<Integer> ids = new ArrayList<>();
+        for (BotApiMethod action : actions) {
+            if (action instanceof DeleteMessage) ids.add(((DeleteMessage) action).getMessageId());
+        }
+        return ids;
+    }
+
+    @Test
+    public void mutesOnceAndDeletesTheFlood() throws IOException {
+        final FloodStrategy strategy = new FloodStrategy(3, 10, 300, 64);
+        for (int i = 1; i <= 3; i++) assertTrue(strategy.runStrategy(message(42, i, START)).isEmpty());
+        assertEquals(3, strategy.rate(message(42, 0, START)));
+
+        final List<BotApiMethod> flood = strategy.runStrategy(message(42, 4, START + 1));
+        assertTrue(flood.get(0) instanceof RestrictChatMember);
+        final RestrictChatMember mute = (RestrictChatMember) flood.get(0);
+        assertEquals(Integer.valueOf(START + 1 + 300), mute.getUntilDate());
+        assertFalse(mute.getCanSendMessages());
+        final List<Integer> ids = deleted(flood);
+        assertEquals(4, ids.size());
+        assertTrue(ids.containsAll(Arrays.asList(1, 2, 3, 4)));
+
+        final List<BotApiMethod> more = strategy.runStrategy(message(42, 5, START + 2));
+        assertEquals(1, more.size());
+        assertEquals(Integer.valueOf(5), ((DeleteMessage) more.get(0)).getMessageId());
+    }
+
+    @Test
+    public void countsUsersApartAndForgetsOldMessages() throws IOException {
+        final FloodStrategy strategy = new FloodStrategy(2, 10, 300, 64);
+        assertTrue(strategy.runStrategy(message(1, 1, START)).isEmpty());
+        assertTrue(strategy.runStrategy(message(2, 2, START)).isEmpty());
+        assertTrue(strategy.runStrategy(message(1, 3, START + 1)).isEmpty());
+        assertTrue(strategy.runStrategy(message(2, 4, START + 1)).isEmpty());
+        assertTrue(strategy.runStrategy(message(1, 5, START + 30)).isEmpty());
+        assertEquals(1, strategy.rate(message(1, 0, START + 30)));
+        assertEquals(0, strategy.rate(message(3, 0, START + 30)));
+    }
+
+    @Test
+    public void isOffWithoutALimit() throws IOException {
+        final FloodStrategy strategy = new FloodStrategy(0, 10, 300, 64);
+        for (int i = 1; i <= 5; i++) assertTrue(strategy.runStrategy(message(42, i, START)).isEmpty());
+    }
+
+}